@@ -0,0 +1,105 @@
+package com.mosect.lib.easygl;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * 无锁动作队列，多个线程提交动作，绘制线程每帧取出并执行
+ * 提交时只进行CAS操作，不会等待绘制线程
+ */
+final class GLActionQueue {
+
+    private final AtomicReference<Node> head = new AtomicReference<>(); // 最后提交的动作
+
+    /**
+     * 提交动作
+     *
+     * @param action 动作
+     * @return 动作节点，用于{@link #cancel(Node) 取消}
+     */
+    Node offer(Runnable action) {
+        Node node = new Node(action);
+        Node current;
+        do {
+            current = head.get();
+            node.next = current;
+        } while (!head.compareAndSet(current, node));
+        return node;
+    }
+
+    /**
+     * 取消动作，与执行竞争，只有一方成功
+     *
+     * @param node 提交时返回的节点
+     * @return true，取消成功，动作不会执行；false，动作已经执行或者正在执行
+     */
+    boolean cancel(Node node) {
+        return null != node.take();
+    }
+
+    /**
+     * 取出当前所有动作，并按提交顺序执行；执行期间提交的动作，留到下一次执行
+     *
+     * @return 执行的动作数量
+     */
+    int drain() {
+        Node node = head.getAndSet(null);
+        if (null == node) return 0;
+        // 反转链表，恢复提交顺序
+        Node first = null;
+        while (null != node) {
+            Node next = node.next;
+            node.next = first;
+            first = node;
+            node = next;
+        }
+        int count = 0;
+        while (null != first) {
+            Runnable action = first.take();
+            first = first.next;
+            if (null != action) {
+                action.run();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 清空动作，不执行
+     */
+    void clear() {
+        head.set(null);
+    }
+
+    /**
+     * 判断队列是否为空
+     *
+     * @return true，为空；false，存在动作
+     */
+    boolean isEmpty() {
+        return null == head.get();
+    }
+
+    static final class Node {
+
+        private static final AtomicReferenceFieldUpdater<Node, Runnable> ACTION =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Runnable.class, "action");
+
+        private volatile Runnable action; // 动作，执行或者取消后为null
+        private Node next;
+
+        private Node(Runnable action) {
+            this.action = action;
+        }
+
+        /**
+         * 取走动作，执行和取消都通过此方法，保证只有一方得到动作
+         *
+         * @return 动作；已被取走时为null
+         */
+        private Runnable take() {
+            return ACTION.getAndSet(this, null);
+        }
+    }
+}
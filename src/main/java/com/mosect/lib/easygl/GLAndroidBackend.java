@@ -0,0 +1,539 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.EGL14;
+import android.opengl.EGL15;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.EGLSync;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+
+import java.nio.Buffer;
+
+/**
+ * 基于Android EGL14及GLES20、GLES30的后端实现，GLES30相关方法需要GLES3环境，{@link GLEnv GLEnv}默认使用此后端
+ */
+public class GLAndroidBackend implements GLBackend {
+
+    @Override
+    public Object eglGetDisplay() {
+        EGLDisplay display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        return display == EGL14.EGL_NO_DISPLAY ? null : display;
+    }
+
+    @Override
+    public boolean eglInitialize(Object display, int[] version) {
+        return EGL14.eglInitialize((EGLDisplay) display, version, 0, version, 1);
+    }
+
+    @Override
+    public void eglTerminate(Object display) {
+        EGL14.eglTerminate((EGLDisplay) display);
+    }
+
+    @Override
+    public Object eglChooseConfig(Object display, int[] attribList) {
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        if (!EGL14.eglChooseConfig((EGLDisplay) display, attribList, 0, configs,
+                0, configs.length, numConfigs, 0) || numConfigs[0] <= 0) {
+            return null;
+        }
+        return configs[0];
+    }
+
+    @Override
+    public Object eglCreateContext(Object display, Object config, Object shareContext, int[] attribList) {
+        EGLContext share = null == shareContext ? EGL14.EGL_NO_CONTEXT : (EGLContext) shareContext;
+        EGLContext context = EGL14.eglCreateContext((EGLDisplay) display, (EGLConfig) config,
+                share, attribList, 0);
+        return context == EGL14.EGL_NO_CONTEXT ? null : context;
+    }
+
+    @Override
+    public void eglDestroyContext(Object display, Object context) {
+        EGL14.eglDestroyContext((EGLDisplay) display, (EGLContext) context);
+    }
+
+    @Override
+    public Object eglCreateWindowSurface(Object display, Object config, Object window, int[] attribList) {
+        EGLSurface surface = EGL14.eglCreateWindowSurface((EGLDisplay) display, (EGLConfig) config,
+                window, attribList, 0);
+        return surface == EGL14.EGL_NO_SURFACE ? null : surface;
+    }
+
+    @Override
+    public Object eglCreatePbufferSurface(Object display, Object config, int[] attribList) {
+        EGLSurface surface = EGL14.eglCreatePbufferSurface((EGLDisplay) display, (EGLConfig) config,
+                attribList, 0);
+        return surface == EGL14.EGL_NO_SURFACE ? null : surface;
+    }
+
+    @Override
+    public void eglDestroySurface(Object display, Object surface) {
+        EGL14.eglDestroySurface((EGLDisplay) display, (EGLSurface) surface);
+    }
+
+    @Override
+    public boolean eglMakeCurrent(Object display, Object draw, Object read, Object context) {
+        return EGL14.eglMakeCurrent((EGLDisplay) display,
+                null == draw ? EGL14.EGL_NO_SURFACE : (EGLSurface) draw,
+                null == read ? EGL14.EGL_NO_SURFACE : (EGLSurface) read,
+                null == context ? EGL14.EGL_NO_CONTEXT : (EGLContext) context);
+    }
+
+    @Override
+    public boolean eglSwapBuffers(Object display, Object surface) {
+        return EGL14.eglSwapBuffers((EGLDisplay) display, (EGLSurface) surface);
+    }
+
+    @Override
+    public String eglQueryString(Object display, int name) {
+        return EGL14.eglQueryString((EGLDisplay) display, name);
+    }
+
+    @Override
+    public boolean eglQuerySurface(Object display, Object surface, int attribute, int[] value) {
+        return EGL14.eglQuerySurface((EGLDisplay) display, (EGLSurface) surface, attribute, value, 0);
+    }
+
+    /**
+     * Android SDK没有EGL_KHR_partial_update的Java绑定，返回false，环境按未指定修改区域处理；需要时可通过自定义后端（JNI）实现
+     */
+    @Override
+    public boolean eglSetDamageRegion(Object display, Object surface, int[] rects, int count) {
+        return false;
+    }
+
+    /**
+     * Android SDK没有eglSwapBuffersWithDamageKHR的Java绑定，直接交换整个缓冲区；需要时可通过自定义后端（JNI）实现
+     */
+    @Override
+    public boolean eglSwapBuffersWithDamage(Object display, Object surface, int[] rects, int count) {
+        return EGL14.eglSwapBuffers((EGLDisplay) display, (EGLSurface) surface);
+    }
+
+    @Override
+    public boolean isSwapBuffersWithDamageSupported() {
+        return false;
+    }
+
+    @Override
+    public Object eglCreateFenceSync(Object display) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return null;
+        EGLSync sync = EGL15.eglCreateSync((EGLDisplay) display, EGL15.EGL_SYNC_FENCE,
+                new long[]{EGL14.EGL_NONE}, 0);
+        return sync == EGL15.EGL_NO_SYNC ? null : sync;
+    }
+
+    @Override
+    public boolean eglWaitSync(Object display, Object sync) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return false;
+        return EGL15.eglWaitSync((EGLDisplay) display, (EGLSync) sync, 0);
+    }
+
+    @Override
+    public boolean eglDestroySync(Object display, Object sync) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return false;
+        return EGL15.eglDestroySync((EGLDisplay) display, (EGLSync) sync);
+    }
+
+    @Override
+    public int eglGetError() {
+        return EGL14.eglGetError();
+    }
+
+    @Override
+    public void glFlush() {
+        GLES20.glFlush();
+    }
+
+    @Override
+    public void glFinish() {
+        GLES20.glFinish();
+    }
+
+    @Override
+    public void glWaitSync(long sync, int flags, long timeout) {
+        GLES30.glWaitSync(sync, flags, timeout);
+    }
+
+    @Override
+    public int glGetError() {
+        return GLES20.glGetError();
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return GLES20.glGetString(name);
+    }
+
+    @Override
+    public void glGetIntegerv(int name, int[] params, int offset) {
+        GLES20.glGetIntegerv(name, params, offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        GLES20.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        GLES20.glUseProgram(program);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        GLES20.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        GLES20.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        GLES20.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        GLES20.glBindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        GLES20.glEnable(cap);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        GLES20.glDisable(cap);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        GLES20.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public void glDepthFunc(int func) {
+        GLES20.glDepthFunc(func);
+    }
+
+    @Override
+    public void glDepthMask(boolean flag) {
+        GLES20.glDepthMask(flag);
+    }
+
+    @Override
+    public void glCullFace(int mode) {
+        GLES20.glCullFace(mode);
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        GLES20.glScissor(x, y, width, height);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        GLES20.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        GLES20.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        GLES20.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glPixelStorei(int pname, int param) {
+        GLES20.glPixelStorei(pname, param);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+        GLES20.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels) {
+        GLES20.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        GLES20.glGenFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        GLES20.glDeleteFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+        GLES20.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        return GLES20.glCheckFramebufferStatus(target);
+    }
+
+    @Override
+    public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+        GLES20.glGenRenderbuffers(n, renderbuffers, offset);
+    }
+
+    @Override
+    public void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset) {
+        GLES20.glDeleteRenderbuffers(n, renderbuffers, offset);
+    }
+
+    @Override
+    public void glBindRenderbuffer(int target, int renderbuffer) {
+        GLES20.glBindRenderbuffer(target, renderbuffer);
+    }
+
+    @Override
+    public void glRenderbufferStorage(int target, int internalformat, int width, int height) {
+        GLES20.glRenderbufferStorage(target, internalformat, width, height);
+    }
+
+    @Override
+    public void glFramebufferRenderbuffer(int target, int attachment, int renderbuffertarget, int renderbuffer) {
+        GLES20.glFramebufferRenderbuffer(target, attachment, renderbuffertarget, renderbuffer);
+    }
+
+    @Override
+    public void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height) {
+        GLES20.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width, height);
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+        GLES20.glReadPixels(x, y, width, height, format, type, pixels);
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, int offset) {
+        GLES30.glReadPixels(x, y, width, height, format, type, offset);
+    }
+
+    @Override
+    public void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1,
+                                  int dstX0, int dstY0, int dstX1, int dstY1, int mask, int filter) {
+        GLES30.glBlitFramebuffer(srcX0, srcY0, srcX1, srcY1, dstX0, dstY0, dstX1, dstY1, mask, filter);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        GLES20.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        GLES20.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        GLES20.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        GLES20.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        GLES20.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        GLES20.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        GLES20.glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        GLES20.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        GLES30.glVertexAttribDivisor(index, divisor);
+    }
+
+    @Override
+    public void glDrawArraysInstanced(int mode, int first, int count, int instanceCount) {
+        GLES30.glDrawArraysInstanced(mode, first, count, instanceCount);
+    }
+
+    @Override
+    public Buffer glMapBufferRange(int target, int offset, int length, int access) {
+        return GLES30.glMapBufferRange(target, offset, length, access);
+    }
+
+    @Override
+    public boolean glUnmapBuffer(int target) {
+        return GLES30.glUnmapBuffer(target);
+    }
+
+    @Override
+    public long glFenceSync(int condition, int flags) {
+        return GLES30.glFenceSync(condition, flags);
+    }
+
+    @Override
+    public int glClientWaitSync(long sync, int flags, long timeout) {
+        return GLES30.glClientWaitSync(sync, flags, timeout);
+    }
+
+    @Override
+    public void glDeleteSync(long sync) {
+        GLES30.glDeleteSync(sync);
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return GLES20.glCreateShader(type);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        GLES20.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        GLES20.glCompileShader(shader);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int name, int[] params, int offset) {
+        GLES20.glGetShaderiv(shader, name, params, offset);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        GLES20.glDeleteShader(shader);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return GLES20.glCreateProgram();
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        GLES20.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        GLES20.glLinkProgram(program);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int name, int[] params, int offset) {
+        GLES20.glGetProgramiv(program, name, params, offset);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        GLES20.glDeleteProgram(program);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return GLES20.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return GLES20.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public String glGetActiveUniform(int program, int index, int[] size, int[] type) {
+        return GLES20.glGetActiveUniform(program, index, size, 0, type, 0);
+    }
+
+    @Override
+    public String glGetActiveAttrib(int program, int index, int[] size, int[] type) {
+        return GLES20.glGetActiveAttrib(program, index, size, 0, type, 0);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        GLES20.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        GLES20.glUniform1f(location, x);
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        GLES20.glUniform2f(location, x, y);
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        GLES20.glUniform3f(location, x, y, z);
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        GLES20.glUniform4f(location, x, y, z, w);
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, float[] value, int offset) {
+        GLES20.glUniformMatrix3fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int name, int value) {
+        GLES30.glProgramParameteri(program, name, value);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int[] binaryFormat, Buffer binary) {
+        GLES30.glGetProgramBinary(program, bufSize, length, 0, binaryFormat, 0, binary);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        GLES30.glProgramBinary(program, binaryFormat, binary, length);
+    }
+}
@@ -0,0 +1,99 @@
+package com.mosect.lib.easygl;
+
+/**
+ * 纹理图集中的一个区域，由{@link GLTextureAtlas GLTextureAtlas}分配
+ * 图集整理后区域可能移动到其他位置或者页面，绘制时应每次读取纹理id及纹理坐标，不要缓存
+ * 注意：只能在绘制线程使用
+ */
+public final class GLAtlasRegion {
+
+    private final GLTextureAtlas atlas; // 所属图集
+    private final int width; // 宽
+    private final int height; // 高
+    GLTextureAtlas.Page page; // 所在页面，null表示已释放
+    int x; // 左边，像素
+    int y; // 上边，像素
+
+    GLAtlasRegion(GLTextureAtlas atlas, int width, int height) {
+        this.atlas = atlas;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 上传像素
+     *
+     * @param pixels RGBA像素数据，行紧密排列，大小为width * height * 4
+     */
+    public void upload(java.nio.Buffer pixels) {
+        atlas.upload(this, 0, 0, width, height, pixels);
+    }
+
+    /**
+     * 释放区域，释放后空间可被重新分配
+     */
+    public void release() {
+        atlas.release(this);
+    }
+
+    /**
+     * 获取所在页面的纹理id
+     *
+     * @return 纹理id，已释放时为0
+     */
+    public int getTextureId() {
+        return null == page ? 0 : page.texture;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public float getU0() {
+        return null == page ? 0 : (float) x / page.width;
+    }
+
+    public float getV0() {
+        return null == page ? 0 : (float) y / page.height;
+    }
+
+    public float getU1() {
+        return null == page ? 0 : (float) (x + width) / page.width;
+    }
+
+    public float getV1() {
+        return null == page ? 0 : (float) (y + height) / page.height;
+    }
+
+    /**
+     * 判断是否已释放
+     *
+     * @return true，已释放；false，未释放
+     */
+    public boolean isReleased() {
+        return null == page;
+    }
+
+    @Override
+    public String toString() {
+        return "GLAtlasRegion{" +
+                "x=" + x +
+                ", y=" + y +
+                ", width=" + width +
+                ", height=" + height +
+                ", texture=" + getTextureId() +
+                '}';
+    }
+}
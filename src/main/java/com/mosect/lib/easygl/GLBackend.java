@@ -0,0 +1,393 @@
+package com.mosect.lib.easygl;
+
+import java.nio.Buffer;
+
+/**
+ * OpenGL/EGL调用后端，{@link GLEnv GLEnv}及其实体对象通过此接口调用EGL及GL函数
+ * 注意：EGL相关对象（display、config、context、surface）使用Object表示，null表示无对象
+ */
+public interface GLBackend {
+
+    /**
+     * 获取默认的EGLDisplay
+     *
+     * @return display对象，null表示不存在
+     */
+    Object eglGetDisplay();
+
+    /**
+     * 初始化EGLDisplay
+     *
+     * @param display display对象
+     * @param version 版本号输出，长度为2：0，主版本号；1，次版本号
+     * @return true，成功；false，失败
+     */
+    boolean eglInitialize(Object display, int[] version);
+
+    /**
+     * 释放EGLDisplay
+     *
+     * @param display display对象
+     */
+    void eglTerminate(Object display);
+
+    /**
+     * 选择EGLConfig
+     *
+     * @param display    display对象
+     * @param attribList 属性列表
+     * @return config对象，null表示失败
+     */
+    Object eglChooseConfig(Object display, int[] attribList);
+
+    /**
+     * 创建EGLContext
+     *
+     * @param display      display对象
+     * @param config       config对象
+     * @param shareContext 共享的上下文，null表示不共享
+     * @param attribList   属性列表
+     * @return context对象，null表示失败
+     */
+    Object eglCreateContext(Object display, Object config, Object shareContext, int[] attribList);
+
+    /**
+     * 销毁EGLContext
+     *
+     * @param display display对象
+     * @param context context对象
+     */
+    void eglDestroyContext(Object display, Object context);
+
+    /**
+     * 创建窗口EGLSurface
+     *
+     * @param display    display对象
+     * @param config     config对象
+     * @param window     窗口对象
+     * @param attribList 属性列表
+     * @return surface对象，null表示失败
+     */
+    Object eglCreateWindowSurface(Object display, Object config, Object window, int[] attribList);
+
+    /**
+     * 创建PBuffer EGLSurface
+     *
+     * @param display    display对象
+     * @param config     config对象
+     * @param attribList 属性列表
+     * @return surface对象，null表示失败
+     */
+    Object eglCreatePbufferSurface(Object display, Object config, int[] attribList);
+
+    /**
+     * 销毁EGLSurface
+     *
+     * @param display display对象
+     * @param surface surface对象
+     */
+    void eglDestroySurface(Object display, Object surface);
+
+    /**
+     * 切换当前上下文
+     *
+     * @param display display对象
+     * @param draw    绘制surface，null表示无
+     * @param read    读取surface，null表示无
+     * @param context 上下文，null表示无
+     * @return true，成功；false，失败
+     */
+    boolean eglMakeCurrent(Object display, Object draw, Object read, Object context);
+
+    /**
+     * 交换缓冲区，提交帧
+     *
+     * @param display display对象
+     * @param surface surface对象
+     * @return true，成功；false，失败
+     */
+    boolean eglSwapBuffers(Object display, Object surface);
+
+    /**
+     * 获取EGL字符串
+     *
+     * @param display display对象
+     * @param name    名称，例如：EGL_EXTENSIONS
+     * @return 字符串；失败时为null
+     */
+    String eglQueryString(Object display, int name);
+
+    /**
+     * 查询surface属性
+     *
+     * @param display   display对象
+     * @param surface   surface对象
+     * @param attribute 属性，例如：EGL_BUFFER_AGE_EXT(0x313D)
+     * @param value     输出属性值，长度至少为1
+     * @return true，成功；false，失败
+     */
+    boolean eglQuerySurface(Object display, Object surface, int attribute, int[] value);
+
+    /**
+     * 指定本帧将要修改的区域，需要EGL_KHR_partial_update扩展，必须在查询缓冲区年龄之后、第一次绘制之前调用
+     *
+     * @param display display对象
+     * @param surface surface对象
+     * @param rects   区域，每4个数为一个矩形：x, y, width, height，原点在左下角
+     * @param count   矩形数量
+     * @return true，成功；false，失败或者不支持
+     */
+    boolean eglSetDamageRegion(Object display, Object surface, int[] rects, int count);
+
+    /**
+     * 交换缓冲区，并告知合成器本帧修改的区域，需要EGL_KHR_swap_buffers_with_damage或者EGL_EXT_swap_buffers_with_damage扩展
+     * 修改区域只是提示，实现可以忽略并交换整个缓冲区
+     *
+     * @param display display对象
+     * @param surface surface对象
+     * @param rects   区域，每4个数为一个矩形：x, y, width, height，原点在左下角
+     * @param count   矩形数量
+     * @return true，成功；false，失败
+     */
+    boolean eglSwapBuffersWithDamage(Object display, Object surface, int[] rects, int count);
+
+    /**
+     * 判断{@link #eglSwapBuffersWithDamage(Object, Object, int[], int) eglSwapBuffersWithDamage}是否实际将修改区域传递给EGL
+     *
+     * @return true，传递；false，后端只交换整个缓冲区，此时环境直接调用eglSwapBuffers
+     */
+    boolean isSwapBuffersWithDamageSupported();
+
+    /**
+     * 在当前上下文的命令流中插入栅栏
+     *
+     * @param display display对象
+     * @return 栅栏对象；null表示不支持（需要EGL1.5）
+     */
+    Object eglCreateFenceSync(Object display);
+
+    /**
+     * 使当前上下文的后续命令在GPU上等待栅栏，不阻塞调用线程
+     *
+     * @param display display对象
+     * @param sync    栅栏对象
+     * @return true，成功；false，失败
+     */
+    boolean eglWaitSync(Object display, Object sync);
+
+    boolean eglDestroySync(Object display, Object sync);
+
+    /**
+     * 获取EGL错误
+     *
+     * @return 错误码
+     */
+    int eglGetError();
+
+    int glGetError();
+
+    void glFlush();
+
+    void glFinish();
+
+    /**
+     * 需要GLES3
+     */
+    void glWaitSync(long sync, int flags, long timeout);
+
+    String glGetString(int name);
+
+    void glGetIntegerv(int name, int[] params, int offset);
+
+    void glViewport(int x, int y, int width, int height);
+
+    void glUseProgram(int program);
+
+    void glActiveTexture(int texture);
+
+    void glBindTexture(int target, int texture);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBindFramebuffer(int target, int framebuffer);
+
+    void glEnable(int cap);
+
+    void glDisable(int cap);
+
+    void glBlendFunc(int sfactor, int dfactor);
+
+    void glDepthFunc(int func);
+
+    void glDepthMask(boolean flag);
+
+    void glCullFace(int mode);
+
+    void glScissor(int x, int y, int width, int height);
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glTexParameteri(int target, int pname, int param);
+
+    void glPixelStorei(int pname, int param);
+
+    void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels);
+
+    void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels);
+
+    void glGenFramebuffers(int n, int[] framebuffers, int offset);
+
+    void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+
+    void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level);
+
+    int glCheckFramebufferStatus(int target);
+
+    void glGenRenderbuffers(int n, int[] renderbuffers, int offset);
+
+    void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset);
+
+    void glBindRenderbuffer(int target, int renderbuffer);
+
+    void glRenderbufferStorage(int target, int internalformat, int width, int height);
+
+    void glFramebufferRenderbuffer(int target, int attachment, int renderbuffertarget, int renderbuffer);
+
+    void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height);
+
+    void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels);
+
+    /**
+     * 读取到当前绑定的GL_PIXEL_PACK_BUFFER，需要GLES3
+     */
+    void glReadPixels(int x, int y, int width, int height, int format, int type, int offset);
+
+    /**
+     * 需要GLES3
+     */
+    void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1,
+                           int dstX0, int dstY0, int dstX1, int dstY1, int mask, int filter);
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glDrawArrays(int mode, int first, int count);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    /**
+     * 需要GLES3
+     */
+    void glVertexAttribDivisor(int index, int divisor);
+
+    /**
+     * 需要GLES3
+     */
+    void glDrawArraysInstanced(int mode, int first, int count, int instanceCount);
+
+    /**
+     * 需要GLES3
+     */
+    Buffer glMapBufferRange(int target, int offset, int length, int access);
+
+    /**
+     * 需要GLES3
+     */
+    boolean glUnmapBuffer(int target);
+
+    /**
+     * 需要GLES3
+     */
+    long glFenceSync(int condition, int flags);
+
+    /**
+     * 需要GLES3
+     */
+    int glClientWaitSync(long sync, int flags, long timeout);
+
+    /**
+     * 需要GLES3
+     */
+    void glDeleteSync(long sync);
+
+    int glCreateShader(int type);
+
+    void glShaderSource(int shader, String source);
+
+    void glCompileShader(int shader);
+
+    void glGetShaderiv(int shader, int name, int[] params, int offset);
+
+    void glDeleteShader(int shader);
+
+    int glCreateProgram();
+
+    void glAttachShader(int program, int shader);
+
+    void glLinkProgram(int program);
+
+    void glGetProgramiv(int program, int name, int[] params, int offset);
+
+    void glDeleteProgram(int program);
+
+    int glGetUniformLocation(int program, String name);
+
+    int glGetAttribLocation(int program, String name);
+
+    String glGetActiveUniform(int program, int index, int[] size, int[] type);
+
+    String glGetActiveAttrib(int program, int index, int[] size, int[] type);
+
+    void glUniform1i(int location, int x);
+
+    void glUniform1f(int location, float x);
+
+    void glUniform2f(int location, float x, float y);
+
+    void glUniform3f(int location, float x, float y, float z);
+
+    void glUniform4f(int location, float x, float y, float z, float w);
+
+    void glUniformMatrix3fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    /**
+     * 设置程序参数，需要GLES3
+     */
+    void glProgramParameteri(int program, int name, int value);
+
+    /**
+     * 获取程序二进制数据，需要GLES3
+     *
+     * @param program      程序id
+     * @param bufSize      缓冲区大小
+     * @param length       输出数据长度
+     * @param binaryFormat 输出二进制格式
+     * @param binary       缓冲区
+     */
+    void glGetProgramBinary(int program, int bufSize, int[] length, int[] binaryFormat, Buffer binary);
+
+    /**
+     * 加载程序二进制数据，需要GLES3
+     *
+     * @param program      程序id
+     * @param binaryFormat 二进制格式
+     * @param binary       二进制数据
+     * @param length       数据长度
+     */
+    void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+}
@@ -0,0 +1,238 @@
+package com.mosect.lib.easygl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * 直接缓冲区池，由{@link GLEnv GLEnv}持有，按2的幂划分大小等级，复用已释放的缓冲区，
+ * 避免频繁allocateDirect带来的GC及Cleaner延迟
+ * 每帧结束时执行回收策略：长时间未使用或者空闲总量超出上限的缓冲区将被丢弃
+ * 线程安全，可在任意线程申请及释放
+ */
+public class GLBufferPool {
+
+    private static final int MIN_CLASS = 6; // 最小64字节
+    private static final int MAX_CLASS = 30; // 最大1GB
+
+    private final ArrayList<ArrayList<GLPooledBuffer>> freeLists = new ArrayList<>(MAX_CLASS + 1); // 下标为等级，每个等级的空闲缓冲区，末尾为最近释放
+    private int idleFrames = 120; // 空闲超过此帧数的缓冲区将被丢弃
+    private long maxIdleBytes = 4 * 1024 * 1024; // 空闲缓冲区总量上限
+    private long frameIndex = 0; // 帧序号，每次回收时递增
+
+    private long footprint = 0; // 池持有的总字节数，包括使用中及空闲
+    private long inUseBytes = 0; // 使用中的字节数
+    private long highWaterMark = 0; // 总字节数的最大值
+    private long allocateCount = 0; // 实际分配次数
+    private long reuseCount = 0; // 复用次数
+    private long trimmedBytes = 0; // 累计丢弃的字节数
+
+    GLBufferPool() {
+        for (int i = 0; i <= MAX_CLASS; i++) {
+            freeLists.add(i < MIN_CLASS ? null : new ArrayList<GLPooledBuffer>());
+        }
+    }
+
+    /**
+     * 申请缓冲区，内容未清零
+     *
+     * @param size 字节数
+     * @return 缓冲区，使用完毕后调用{@link GLPooledBuffer#release() release}归还
+     */
+    public synchronized GLPooledBuffer acquire(int size) {
+        if (size < 0) throw new IllegalArgumentException("Invalid size: " + size);
+        int sizeClass = sizeClass(size);
+        ArrayList<GLPooledBuffer> list = freeLists.get(sizeClass);
+        GLPooledBuffer buffer;
+        if (list.isEmpty()) {
+            ByteBuffer data = ByteBuffer.allocateDirect(1 << sizeClass).order(ByteOrder.nativeOrder());
+            buffer = new GLPooledBuffer(this, data);
+            footprint += data.capacity();
+            allocateCount++;
+            if (footprint > highWaterMark) {
+                highWaterMark = footprint;
+            }
+        } else {
+            buffer = list.remove(list.size() - 1);
+            reuseCount++;
+        }
+        inUseBytes += buffer.getCapacity();
+        buffer.reset(size);
+        return buffer;
+    }
+
+    /**
+     * 申请可容纳指定数量float的缓冲区
+     *
+     * @param count float数量
+     * @return 缓冲区
+     */
+    public GLPooledBuffer acquireFloats(int count) {
+        return acquire(count * 4);
+    }
+
+    /**
+     * 申请可容纳指定数量short的缓冲区
+     *
+     * @param count short数量
+     * @return 缓冲区
+     */
+    public GLPooledBuffer acquireShorts(int count) {
+        return acquire(count * 2);
+    }
+
+    /**
+     * 申请可容纳指定数量int的缓冲区
+     *
+     * @param count int数量
+     * @return 缓冲区
+     */
+    public GLPooledBuffer acquireInts(int count) {
+        return acquire(count * 4);
+    }
+
+    synchronized void release(GLPooledBuffer buffer) {
+        inUseBytes -= buffer.getCapacity();
+        buffer.releaseFrame = frameIndex;
+        freeLists.get(sizeClass(buffer.getCapacity())).add(buffer);
+    }
+
+    /**
+     * 执行回收策略，由环境在每帧结束时调用
+     */
+    synchronized void trim() {
+        frameIndex++;
+        long idleBytes = footprint - inUseBytes;
+        if (idleBytes == 0) return;
+        // 丢弃长时间未使用的缓冲区，每个等级最早释放的在前面
+        long expireFrame = frameIndex - idleFrames;
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            ArrayList<GLPooledBuffer> list = freeLists.get(i);
+            int count = 0;
+            while (count < list.size() && list.get(count).releaseFrame <= expireFrame) {
+                count++;
+            }
+            if (count > 0) {
+                list.subList(0, count).clear();
+                drop((long) count << i);
+            }
+        }
+        // 空闲总量超出上限时，从大到小丢弃
+        for (int i = MAX_CLASS; i >= MIN_CLASS && footprint - inUseBytes > maxIdleBytes; i--) {
+            ArrayList<GLPooledBuffer> list = freeLists.get(i);
+            while (!list.isEmpty() && footprint - inUseBytes > maxIdleBytes) {
+                list.remove(0);
+                drop(1L << i);
+            }
+        }
+    }
+
+    /**
+     * 丢弃所有空闲缓冲区
+     */
+    public synchronized void clear() {
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            ArrayList<GLPooledBuffer> list = freeLists.get(i);
+            drop((long) list.size() << i);
+            list.clear();
+        }
+    }
+
+    private void drop(long bytes) {
+        footprint -= bytes;
+        trimmedBytes += bytes;
+    }
+
+    private static int sizeClass(int size) {
+        if (size <= 1 << MIN_CLASS) return MIN_CLASS;
+        int sizeClass = 32 - Integer.numberOfLeadingZeros(size - 1);
+        if (sizeClass > MAX_CLASS) throw new IllegalArgumentException("Size too large: " + size);
+        return sizeClass;
+    }
+
+    /**
+     * 设置回收策略
+     *
+     * @param idleFrames   空闲超过此帧数的缓冲区将被丢弃，默认：120
+     * @param maxIdleBytes 空闲缓冲区总量上限，默认：4MB
+     */
+    public synchronized void setTrimPolicy(int idleFrames, long maxIdleBytes) {
+        this.idleFrames = idleFrames;
+        this.maxIdleBytes = maxIdleBytes;
+    }
+
+    /**
+     * 获取池持有的总字节数，包括使用中及空闲的缓冲区
+     *
+     * @return 总字节数
+     */
+    public synchronized long getFootprint() {
+        return footprint;
+    }
+
+    /**
+     * 获取使用中的字节数
+     *
+     * @return 使用中的字节数
+     */
+    public synchronized long getInUseBytes() {
+        return inUseBytes;
+    }
+
+    /**
+     * 获取空闲的字节数
+     *
+     * @return 空闲的字节数
+     */
+    public synchronized long getIdleBytes() {
+        return footprint - inUseBytes;
+    }
+
+    /**
+     * 获取总字节数的最大值
+     *
+     * @return 最大总字节数
+     */
+    public synchronized long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * 获取实际分配次数
+     *
+     * @return 分配次数
+     */
+    public synchronized long getAllocateCount() {
+        return allocateCount;
+    }
+
+    /**
+     * 获取复用次数
+     *
+     * @return 复用次数
+     */
+    public synchronized long getReuseCount() {
+        return reuseCount;
+    }
+
+    /**
+     * 获取累计丢弃的字节数
+     *
+     * @return 丢弃的字节数
+     */
+    public synchronized long getTrimmedBytes() {
+        return trimmedBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "GLBufferPool{" +
+                "footprint=" + footprint +
+                ", inUseBytes=" + inUseBytes +
+                ", highWaterMark=" + highWaterMark +
+                ", allocateCount=" + allocateCount +
+                ", reuseCount=" + reuseCount +
+                ", trimmedBytes=" + trimmedBytes +
+                '}';
+    }
+}
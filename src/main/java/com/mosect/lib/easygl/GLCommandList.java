@@ -0,0 +1,465 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 绘制命令列表，实体对象在{@link GLObject#onPrepare(GLCommandList) onPrepare}中记录命令，绘制线程绘制对象时回放
+ * 命令编码到整数、浮点及引用数组中，每帧重置后复用，容量足够时记录不分配内存
+ * 记录方法只保存参数，不调用GL，可在准备线程调用；每个准备线程使用自己的列表
+ * 注意：记录时传入的数组参数会被复制，之后可以修改
+ */
+public final class GLCommandList {
+
+    private static final int OP_USE_SHADER = 1;
+    private static final int OP_UNIFORM_INT = 2;
+    private static final int OP_UNIFORM_FLOAT = 3;
+    private static final int OP_UNIFORM_MAT3 = 4;
+    private static final int OP_UNIFORM_MAT4 = 5;
+    private static final int OP_BIND_TEXTURE = 6;
+    private static final int OP_BIND_BUFFER = 7;
+    private static final int OP_ATTRIB = 8;
+    private static final int OP_STREAM = 9;
+    private static final int OP_STREAM_ATTRIB = 10;
+    private static final int OP_DISABLE_ATTRIB = 11;
+    private static final int OP_CAP = 12;
+    private static final int OP_BLEND_FUNC = 13;
+    private static final int OP_DRAW_ARRAYS = 14;
+    private static final int OP_DRAW_ELEMENTS = 15;
+    private static final int OP_CALL = 16;
+
+    private static final int CAP_BLEND = 0;
+    private static final int CAP_DEPTH_TEST = 1;
+    private static final int CAP_CULL_FACE = 2;
+
+    private final GLEnv env; // 环境
+    private int[] ints = new int[256]; // 操作码及整数参数
+    private float[] floats = new float[256]; // 浮点参数
+    private Object[] refs = new Object[32]; // 引用参数
+    private int intCount = 0;
+    private int floatCount = 0;
+    private int refCount = 0;
+    private int generation = 0; // 每次重置递增，实体对象据此判断记录是否属于本帧
+
+    GLCommandList(GLEnv env) {
+        this.env = env;
+    }
+
+    /**
+     * 使用shader的程序
+     *
+     * @param shader shader
+     */
+    public void useShader(GLShader<?> shader) {
+        putInts(OP_USE_SHADER, putRef(shader));
+    }
+
+    public void setInt(GLUniform uniform, int x) {
+        putInts(OP_UNIFORM_INT, putRef(uniform), x);
+    }
+
+    public void setFloat(GLUniform uniform, float x) {
+        int offset = reserveFloats(1);
+        floats[offset] = x;
+        putInts(OP_UNIFORM_FLOAT, putRef(uniform), 1, offset);
+    }
+
+    public void setVec2(GLUniform uniform, float x, float y) {
+        int offset = reserveFloats(2);
+        floats[offset] = x;
+        floats[offset + 1] = y;
+        putInts(OP_UNIFORM_FLOAT, putRef(uniform), 2, offset);
+    }
+
+    public void setVec3(GLUniform uniform, float x, float y, float z) {
+        int offset = reserveFloats(3);
+        floats[offset] = x;
+        floats[offset + 1] = y;
+        floats[offset + 2] = z;
+        putInts(OP_UNIFORM_FLOAT, putRef(uniform), 3, offset);
+    }
+
+    public void setVec4(GLUniform uniform, float x, float y, float z, float w) {
+        int offset = reserveFloats(4);
+        floats[offset] = x;
+        floats[offset + 1] = y;
+        floats[offset + 2] = z;
+        floats[offset + 3] = w;
+        putInts(OP_UNIFORM_FLOAT, putRef(uniform), 4, offset);
+    }
+
+    public void setMat3(GLUniform uniform, float[] value, int offset) {
+        int start = reserveFloats(9);
+        System.arraycopy(value, offset, floats, start, 9);
+        putInts(OP_UNIFORM_MAT3, putRef(uniform), start);
+    }
+
+    public void setMat4(GLUniform uniform, float[] value, int offset) {
+        int start = reserveFloats(16);
+        System.arraycopy(value, offset, floats, start, 16);
+        putInts(OP_UNIFORM_MAT4, putRef(uniform), start);
+    }
+
+    /**
+     * 绑定纹理，参考{@link GLStateCache#bindTexture(int, int, int) GLStateCache.bindTexture}
+     */
+    public void bindTexture(int unit, int target, int texture) {
+        putInts(OP_BIND_TEXTURE, unit, target, texture);
+    }
+
+    /**
+     * 绑定缓冲区，参考{@link GLStateCache#bindBuffer(int, int) GLStateCache.bindBuffer}
+     */
+    public void bindBuffer(int target, int buffer) {
+        putInts(OP_BIND_BUFFER, target, buffer);
+    }
+
+    /**
+     * 设置并开启顶点属性，数据来自当前绑定的GL_ARRAY_BUFFER
+     */
+    public void vertexAttribPointer(int location, int size, int type, boolean normalized, int stride, int offset) {
+        putInts(OP_ATTRIB, location, size, type, normalized ? 1 : 0, stride, offset);
+    }
+
+    /**
+     * 将顶点数据写入{@link GLEnv#getStreamBuffer() 流式顶点缓冲区}，回放时写入，同一帧多次回放只写入一次；
+     * 之后的{@link #streamAttribPointer(int, int, int, int) streamAttribPointer}使用这段数据
+     * 当前帧区域空间不足时，跳过对象剩余的命令
+     *
+     * @param data   顶点数据
+     * @param offset 数据偏移
+     * @param count  浮点数量
+     */
+    public void streamVertices(float[] data, int offset, int count) {
+        int start = reserveFloats(count);
+        System.arraycopy(data, offset, floats, start, count);
+        putInts(OP_STREAM, start, count, -1);
+    }
+
+    /**
+     * 设置并开启浮点顶点属性，数据来自最近一次{@link #streamVertices(float[], int, int) streamVertices}写入的数据
+     *
+     * @param location 属性location
+     * @param size     分量数量
+     * @param stride   步长，单位：字节
+     * @param offset   相对写入数据开头的偏移，单位：字节
+     */
+    public void streamAttribPointer(int location, int size, int stride, int offset) {
+        putInts(OP_STREAM_ATTRIB, location, size, stride, offset);
+    }
+
+    public void disableVertexAttrib(int location) {
+        putInts(OP_DISABLE_ATTRIB, location);
+    }
+
+    public void setBlendEnabled(boolean enabled) {
+        putInts(OP_CAP, CAP_BLEND, enabled ? 1 : 0);
+    }
+
+    public void blendFunc(int src, int dst) {
+        putInts(OP_BLEND_FUNC, src, dst);
+    }
+
+    public void setDepthTestEnabled(boolean enabled) {
+        putInts(OP_CAP, CAP_DEPTH_TEST, enabled ? 1 : 0);
+    }
+
+    public void setCullFaceEnabled(boolean enabled) {
+        putInts(OP_CAP, CAP_CULL_FACE, enabled ? 1 : 0);
+    }
+
+    public void drawArrays(int mode, int first, int count) {
+        putInts(OP_DRAW_ARRAYS, mode, first, count);
+    }
+
+    public void drawElements(int mode, int count, int type, int offset) {
+        putInts(OP_DRAW_ELEMENTS, mode, count, type, offset);
+    }
+
+    /**
+     * 回放时调用记录对象的{@link GLObject#onGLReplay(int) onGLReplay}，用于命令列表不支持的GL操作
+     *
+     * @param tag 标记
+     */
+    public void call(int tag) {
+        putInts(OP_CALL, tag);
+    }
+
+    /**
+     * 获取已记录的整数数量，作为对象命令段的开始或者结束位置
+     */
+    int position() {
+        return intCount;
+    }
+
+    /**
+     * 获取已记录的浮点数数量，撤销命令时使用
+     */
+    int floatPosition() {
+        return floatCount;
+    }
+
+    /**
+     * 获取已记录的对象引用数量，撤销命令时使用
+     */
+    int refPosition() {
+        return refCount;
+    }
+
+    /**
+     * 撤销指定位置之后的命令，对象未使用记录时调用
+     *
+     * @param position      整数位置，{@link #position()}
+     * @param floatPosition 浮点数位置，{@link #floatPosition()}
+     * @param refPosition   对象引用位置，{@link #refPosition()}
+     */
+    void rollback(int position, int floatPosition, int refPosition) {
+        Arrays.fill(refs, refPosition, refCount, null);
+        intCount = position;
+        floatCount = floatPosition;
+        refCount = refPosition;
+    }
+
+    /**
+     * 清除所有命令，每帧准备前调用；之前记录的命令段失效
+     */
+    void reset() {
+        Arrays.fill(refs, 0, refCount, null);
+        intCount = 0;
+        floatCount = 0;
+        refCount = 0;
+        generation++;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 回放对象的命令段，只能在绘制线程调用
+     *
+     * @param object 记录的对象
+     * @param start  开始位置
+     * @param end    结束位置
+     */
+    void replay(GLObject<?> object, int start, int end) {
+        GLBackend backend = env.getBackend();
+        GLStateCache stateCache = env.getStateCache();
+        int[] ints = this.ints;
+        float[] floats = this.floats;
+        int streamOffset = -1;
+        int i = start;
+        while (i < end) {
+            switch (ints[i]) {
+                case OP_USE_SHADER:
+                    ((GLShader<?>) refs[ints[i + 1]]).useProgram();
+                    i += 2;
+                    break;
+                case OP_UNIFORM_INT:
+                    ((GLUniform) refs[ints[i + 1]]).setInt(ints[i + 2]);
+                    i += 3;
+                    break;
+                case OP_UNIFORM_FLOAT: {
+                    GLUniform uniform = (GLUniform) refs[ints[i + 1]];
+                    int o = ints[i + 3];
+                    switch (ints[i + 2]) {
+                        case 1:
+                            uniform.setFloat(floats[o]);
+                            break;
+                        case 2:
+                            uniform.setVec2(floats[o], floats[o + 1]);
+                            break;
+                        case 3:
+                            uniform.setVec3(floats[o], floats[o + 1], floats[o + 2]);
+                            break;
+                        default:
+                            uniform.setVec4(floats[o], floats[o + 1], floats[o + 2], floats[o + 3]);
+                            break;
+                    }
+                    i += 4;
+                    break;
+                }
+                case OP_UNIFORM_MAT3:
+                    ((GLUniform) refs[ints[i + 1]]).setMat3(floats, ints[i + 2]);
+                    i += 3;
+                    break;
+                case OP_UNIFORM_MAT4:
+                    ((GLUniform) refs[ints[i + 1]]).setMat4(floats, ints[i + 2]);
+                    i += 3;
+                    break;
+                case OP_BIND_TEXTURE:
+                    stateCache.bindTexture(ints[i + 1], ints[i + 2], ints[i + 3]);
+                    i += 4;
+                    break;
+                case OP_BIND_BUFFER:
+                    stateCache.bindBuffer(ints[i + 1], ints[i + 2]);
+                    i += 3;
+                    break;
+                case OP_ATTRIB:
+                    backend.glVertexAttribPointer(ints[i + 1], ints[i + 2], ints[i + 3], ints[i + 4] != 0,
+                            ints[i + 5], ints[i + 6]);
+                    backend.glEnableVertexAttribArray(ints[i + 1]);
+                    i += 7;
+                    break;
+                case OP_STREAM:
+                    if (ints[i + 3] < 0) {
+                        ints[i + 3] = writeStream(ints[i + 1], ints[i + 2]);
+                    }
+                    streamOffset = ints[i + 3];
+                    if (streamOffset < 0) {
+                        // 当前帧区域空间不足
+                        return;
+                    }
+                    i += 4;
+                    break;
+                case OP_STREAM_ATTRIB:
+                    env.getStreamBuffer().bind();
+                    backend.glVertexAttribPointer(ints[i + 1], ints[i + 2], GLES20.GL_FLOAT, false,
+                            ints[i + 3], streamOffset + ints[i + 4]);
+                    backend.glEnableVertexAttribArray(ints[i + 1]);
+                    i += 5;
+                    break;
+                case OP_DISABLE_ATTRIB:
+                    backend.glDisableVertexAttribArray(ints[i + 1]);
+                    i += 2;
+                    break;
+                case OP_CAP: {
+                    boolean enabled = ints[i + 2] != 0;
+                    switch (ints[i + 1]) {
+                        case CAP_BLEND:
+                            stateCache.setBlendEnabled(enabled);
+                            break;
+                        case CAP_DEPTH_TEST:
+                            stateCache.setDepthTestEnabled(enabled);
+                            break;
+                        default:
+                            stateCache.setCullFaceEnabled(enabled);
+                            break;
+                    }
+                    i += 3;
+                    break;
+                }
+                case OP_BLEND_FUNC:
+                    stateCache.blendFunc(ints[i + 1], ints[i + 2]);
+                    i += 3;
+                    break;
+                case OP_DRAW_ARRAYS:
+                    backend.glDrawArrays(ints[i + 1], ints[i + 2], ints[i + 3]);
+                    i += 4;
+                    break;
+                case OP_DRAW_ELEMENTS:
+                    backend.glDrawElements(ints[i + 1], ints[i + 2], ints[i + 3], ints[i + 4]);
+                    i += 5;
+                    break;
+                case OP_CALL:
+                    object.onGLReplay(ints[i + 1]);
+                    i += 2;
+                    break;
+                default:
+                    throw new RuntimeException("Invalid command: " + ints[i]);
+            }
+        }
+    }
+
+    /**
+     * 写入流式顶点缓冲区
+     *
+     * @return 偏移；-1表示空间不足
+     */
+    private int writeStream(int start, int count) {
+        GLStreamBuffer stream = env.getStreamBuffer();
+        ByteBuffer dst = stream.map(count * 4);
+        if (null == dst) return -1;
+        for (int i = 0; i < count; i++) {
+            dst.putFloat(floats[start + i]);
+        }
+        return stream.unmap();
+    }
+
+    private int reserveFloats(int count) {
+        int offset = floatCount;
+        if (offset + count > floats.length) {
+            floats = Arrays.copyOf(floats, Math.max(floats.length * 2, offset + count));
+        }
+        floatCount = offset + count;
+        return offset;
+    }
+
+    private int putRef(Object ref) {
+        if (refCount == refs.length) {
+            refs = Arrays.copyOf(refs, refs.length * 2);
+        }
+        refs[refCount] = ref;
+        return refCount++;
+    }
+
+    private int reserveInts(int count) {
+        int offset = intCount;
+        if (offset + count > ints.length) {
+            ints = Arrays.copyOf(ints, Math.max(ints.length * 2, offset + count));
+        }
+        intCount = offset + count;
+        return offset;
+    }
+
+    private void putInts(int op, int a) {
+        int o = reserveInts(2);
+        ints[o] = op;
+        ints[o + 1] = a;
+    }
+
+    private void putInts(int op, int a, int b) {
+        int o = reserveInts(3);
+        ints[o] = op;
+        ints[o + 1] = a;
+        ints[o + 2] = b;
+    }
+
+    private void putInts(int op, int a, int b, int c) {
+        int o = reserveInts(4);
+        ints[o] = op;
+        ints[o + 1] = a;
+        ints[o + 2] = b;
+        ints[o + 3] = c;
+    }
+
+    private void putInts(int op, int a, int b, int c, int d) {
+        int o = reserveInts(5);
+        ints[o] = op;
+        ints[o + 1] = a;
+        ints[o + 2] = b;
+        ints[o + 3] = c;
+        ints[o + 4] = d;
+    }
+
+    private void putInts(int op, int a, int b, int c, int d, int e, int f) {
+        int o = reserveInts(7);
+        ints[o] = op;
+        ints[o + 1] = a;
+        ints[o + 2] = b;
+        ints[o + 3] = c;
+        ints[o + 4] = d;
+        ints[o + 5] = e;
+        ints[o + 6] = f;
+    }
+
+    /**
+     * 获取已记录的整数数量，反映命令列表大小
+     *
+     * @return 数量
+     */
+    public int size() {
+        return intCount;
+    }
+
+    @Override
+    public String toString() {
+        return "GLCommandList{" +
+                "intCount=" + intCount +
+                ", floatCount=" + floatCount +
+                ", refCount=" + refCount +
+                '}';
+    }
+}
@@ -0,0 +1,246 @@
+package com.mosect.lib.easygl;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 绘制命令准备器，由{@link GLEnv GLEnv}持有，开启后每帧绘制前由准备线程及绘制线程并行调用实体对象的
+ * {@link GLObject#onPrepare(GLCommandList) onPrepare}，对象将矩阵计算、顶点生成、剔除等CPU工作的结果记录为命令，
+ * 绘制时只回放命令；每个线程使用自己的命令列表，按批次领取对象，列表之间不需要同步
+ * 注意：准备阶段绘制线程等待所有准备线程完成，期间实体对象不会被绘制线程访问
+ */
+public class GLCommandPreparer {
+
+    private static final String TAG = "GL/CommandPreparer";
+    private static final int BATCH_SIZE = 8; // 每次领取的对象数量
+
+    private final GLEnv env; // 环境
+    private final AtomicInteger cursor = new AtomicInteger(); // 下一个待准备对象的位置
+    private volatile boolean enabled = false; // 是否开启
+    private volatile int threadCount = Math.max(0, Runtime.getRuntime().availableProcessors() - 1); // 准备线程数量
+    private Worker[] workers = new Worker[0]; // 准备线程，只在绘制线程修改
+    private GLCommandList[] lists = new GLCommandList[0]; // 命令列表，最后一个为绘制线程使用
+    private GLObject<?>[] objects; // 本帧准备的对象
+    private int pending = 0; // 未完成的准备线程数量
+    private long round = 0; // 准备轮次
+
+    private volatile long prepareTime = 0; // 最近一帧的准备耗时
+    private volatile int recordedCount = 0; // 最近一帧记录命令的对象数量
+    private final AtomicInteger recording = new AtomicInteger(); // 本帧记录命令的对象数量
+
+    GLCommandPreparer(GLEnv env) {
+        this.env = env;
+    }
+
+    /**
+     * 设置是否开启，关闭后实体对象恢复在绘制时调用{@link GLObject#onGLDraw() onGLDraw}
+     *
+     * @param enabled true，开启；false，关闭，默认：false
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 设置准备线程数量，绘制线程也参与准备
+     *
+     * @param threadCount 线程数量，默认：CPU核心数 - 1
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 0) throw new IllegalArgumentException("Invalid threadCount: " + threadCount);
+        this.threadCount = threadCount;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * 准备一帧的命令，由环境在绘制前调用；未开启时释放命令列表
+     *
+     * @param objects 场景中的实体对象
+     */
+    void prepare(GLObject<?>[] objects) {
+        if (!enabled) {
+            if (lists.length > 0) {
+                // 使已记录的命令失效
+                for (GLCommandList list : lists) {
+                    list.reset();
+                }
+                release();
+                lists = new GLCommandList[0];
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        ensureWorkers();
+        for (GLCommandList list : lists) {
+            list.reset();
+        }
+        this.objects = objects;
+        cursor.set(0);
+        recording.set(0);
+        synchronized (this) {
+            pending = workers.length;
+            round++;
+            notifyAll();
+        }
+        try {
+            // 绘制线程同样参与准备
+            record(lists[lists.length - 1]);
+        } finally {
+            // 即使绘制线程准备失败，也要等待准备线程结束再返回
+            boolean interrupted = false;
+            synchronized (this) {
+                while (pending > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            this.objects = null;
+        }
+        recordedCount = recording.get();
+        prepareTime = System.nanoTime() - start;
+    }
+
+    private void record(GLCommandList list) {
+        GLObject<?>[] objects = this.objects;
+        int count = 0;
+        while (true) {
+            int start = cursor.getAndAdd(BATCH_SIZE);
+            if (start >= objects.length) break;
+            int end = Math.min(start + BATCH_SIZE, objects.length);
+            for (int i = start; i < end; i++) {
+                if (objects[i].dispatchPrepare(list)) {
+                    count++;
+                }
+            }
+        }
+        recording.addAndGet(count);
+    }
+
+    /**
+     * 按设置的数量创建或者停止准备线程
+     */
+    private void ensureWorkers() {
+        int count = threadCount;
+        if (workers.length == count && lists.length == count + 1 && isWorkersAlive()) return;
+        release();
+        for (GLCommandList list : lists) {
+            // 使旧列表记录的命令失效
+            list.reset();
+        }
+        workers = new Worker[count];
+        lists = new GLCommandList[count + 1];
+        for (int i = 0; i <= count; i++) {
+            lists[i] = new GLCommandList(env);
+        }
+        for (int i = 0; i < count; i++) {
+            workers[i] = new Worker(lists[i], round);
+            workers[i].start();
+        }
+        Log.d(TAG, "ensureWorkers: threadCount=" + count);
+    }
+
+    private boolean isWorkersAlive() {
+        for (Worker worker : workers) {
+            if (!worker.isAlive()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * 停止准备线程，由环境在销毁时调用
+     */
+    void release() {
+        synchronized (this) {
+            for (Worker worker : workers) {
+                worker.stopped = true;
+            }
+            notifyAll();
+        }
+        workers = new Worker[0];
+    }
+
+    /**
+     * 获取最近一帧的准备耗时，包括等待准备线程
+     *
+     * @return 耗时，单位：纳秒
+     */
+    public long getPrepareTime() {
+        return prepareTime;
+    }
+
+    /**
+     * 获取最近一帧记录命令的对象数量
+     *
+     * @return 数量
+     */
+    public int getRecordedCount() {
+        return recordedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "GLCommandPreparer{" +
+                "enabled=" + enabled +
+                ", threadCount=" + threadCount +
+                ", prepareTime=" + prepareTime +
+                ", recordedCount=" + recordedCount +
+                '}';
+    }
+
+    private final class Worker extends Thread {
+
+        private final GLCommandList list; // 此线程使用的命令列表
+        private long round; // 已完成的轮次
+        boolean stopped; // 是否停止，持有准备器的锁时访问
+
+        Worker(GLCommandList list, long round) {
+            super(TAG);
+            this.list = list;
+            this.round = round;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            GLCommandPreparer preparer = GLCommandPreparer.this;
+            while (true) {
+                synchronized (preparer) {
+                    while (!stopped && preparer.round == round) {
+                        try {
+                            preparer.wait();
+                        } catch (InterruptedException ignored) {
+                            // 只通过stopped停止，否则绘制线程会一直等待此线程
+                        }
+                    }
+                    if (stopped) return;
+                    round = preparer.round;
+                }
+                try {
+                    record(list);
+                } catch (Throwable e) {
+                    // 未领取的对象由其他线程准备，未准备的对象在绘制时调用onGLDraw
+                    Log.w(TAG, "record: ", e);
+                } finally {
+                    synchronized (preparer) {
+                        pending--;
+                        preparer.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.mosect.lib.easygl;
 
 /**
  * 素材内容，{@link com.mosect.lib.easygl.GLObject GLObject}
+ * 内容所需的直接缓冲区，可以通过{@link GLEnv#getBufferPool() GLEnv.getBufferPool}申请，在destroyContent中释放
  */
 public interface GLContent {
 
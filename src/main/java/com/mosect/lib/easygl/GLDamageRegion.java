@@ -0,0 +1,212 @@
+package com.mosect.lib.easygl;
+
+/**
+ * 输出的修改区域，由少量矩形组成，坐标为窗口坐标，原点在左下角
+ * 新矩形与已有矩形相交或者相邻时合并；超出数量上限时，合并到面积增加最少的矩形
+ * 注意：只能在绘制线程使用
+ */
+final class GLDamageRegion {
+
+    static final int MAX_RECTS = 4; // 矩形数量上限
+
+    private final int[] rects = new int[MAX_RECTS * 4]; // 每4个数为一个矩形：left, bottom, right, top
+    private int count = 0; // 矩形数量
+    private boolean full = false; // 是否为整个输出
+
+    /**
+     * 添加矩形
+     *
+     * @param x      左下角x
+     * @param y      左下角y
+     * @param width  宽
+     * @param height 高
+     */
+    void add(int x, int y, int width, int height) {
+        if (full || width <= 0 || height <= 0) return;
+        addRect(x, y, x + width, y + height);
+    }
+
+    private void addRect(int left, int bottom, int right, int top) {
+        // 合并相交或者相邻的矩形，合并后可能与其他矩形相交，重新检查
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < count; i++) {
+                int o = i * 4;
+                if (left <= rects[o + 2] && rects[o] <= right && bottom <= rects[o + 3] && rects[o + 1] <= top) {
+                    left = Math.min(left, rects[o]);
+                    bottom = Math.min(bottom, rects[o + 1]);
+                    right = Math.max(right, rects[o + 2]);
+                    top = Math.max(top, rects[o + 3]);
+                    remove(i);
+                    merged = true;
+                    break;
+                }
+            }
+        }
+        if (count == MAX_RECTS) {
+            // 合并到面积增加最少的矩形
+            int best = 0;
+            long bestCost = Long.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                int o = i * 4;
+                long union = (long) (Math.max(right, rects[o + 2]) - Math.min(left, rects[o]))
+                        * (Math.max(top, rects[o + 3]) - Math.min(bottom, rects[o + 1]));
+                long cost = union - (long) (rects[o + 2] - rects[o]) * (rects[o + 3] - rects[o + 1]);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    best = i;
+                }
+            }
+            int o = best * 4;
+            int l = Math.min(left, rects[o]);
+            int b = Math.min(bottom, rects[o + 1]);
+            int r = Math.max(right, rects[o + 2]);
+            int t = Math.max(top, rects[o + 3]);
+            remove(best);
+            addRect(l, b, r, t);
+            return;
+        }
+        int o = count * 4;
+        rects[o] = left;
+        rects[o + 1] = bottom;
+        rects[o + 2] = right;
+        rects[o + 3] = top;
+        count++;
+    }
+
+    private void remove(int index) {
+        count--;
+        if (index < count) {
+            System.arraycopy(rects, count * 4, rects, index * 4, 4);
+        }
+    }
+
+    /**
+     * 合并另一个区域
+     *
+     * @param other 区域
+     */
+    void union(GLDamageRegion other) {
+        if (other.full) {
+            setFull();
+            return;
+        }
+        for (int i = 0; i < other.count; i++) {
+            int o = i * 4;
+            if (full) return;
+            addRect(other.rects[o], other.rects[o + 1], other.rects[o + 2], other.rects[o + 3]);
+        }
+    }
+
+    /**
+     * 设置为与另一个区域相同
+     *
+     * @param other 区域
+     */
+    void set(GLDamageRegion other) {
+        System.arraycopy(other.rects, 0, rects, 0, other.count * 4);
+        count = other.count;
+        full = other.full;
+    }
+
+    /**
+     * 标记为整个输出
+     */
+    void setFull() {
+        full = true;
+        count = 0;
+    }
+
+    void clear() {
+        full = false;
+        count = 0;
+    }
+
+    /**
+     * 裁剪到输出大小，覆盖整个输出时标记为整个输出
+     *
+     * @param width  输出宽
+     * @param height 输出高
+     */
+    void clip(int width, int height) {
+        if (full) return;
+        for (int i = count - 1; i >= 0; i--) {
+            int o = i * 4;
+            rects[o] = Math.max(rects[o], 0);
+            rects[o + 1] = Math.max(rects[o + 1], 0);
+            rects[o + 2] = Math.min(rects[o + 2], width);
+            rects[o + 3] = Math.min(rects[o + 3], height);
+            if (rects[o] >= rects[o + 2] || rects[o + 1] >= rects[o + 3]) {
+                remove(i);
+            } else if (rects[o] == 0 && rects[o + 1] == 0 && rects[o + 2] == width && rects[o + 3] == height) {
+                setFull();
+                return;
+            }
+        }
+    }
+
+    boolean isEmpty() {
+        return !full && count == 0;
+    }
+
+    boolean isFull() {
+        return full;
+    }
+
+    int getRectCount() {
+        return count;
+    }
+
+    /**
+     * 获取外接矩形
+     *
+     * @param out 输出：x, y, width, height
+     */
+    void getBounds(int[] out) {
+        int left = Integer.MAX_VALUE, bottom = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE, top = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            left = Math.min(left, rects[o]);
+            bottom = Math.min(bottom, rects[o + 1]);
+            right = Math.max(right, rects[o + 2]);
+            top = Math.max(top, rects[o + 3]);
+        }
+        out[0] = left;
+        out[1] = bottom;
+        out[2] = right - left;
+        out[3] = top - bottom;
+    }
+
+    /**
+     * 转换成EGL矩形列表
+     *
+     * @param out 输出，每4个数为一个矩形：x, y, width, height；长度至少为{@link #MAX_RECTS MAX_RECTS} * 4
+     * @return 矩形数量
+     */
+    int toRects(int[] out) {
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            out[o] = rects[o];
+            out[o + 1] = rects[o + 1];
+            out[o + 2] = rects[o + 2] - rects[o];
+            out[o + 3] = rects[o + 3] - rects[o + 1];
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        if (full) return "GLDamageRegion{full}";
+        StringBuilder builder = new StringBuilder("GLDamageRegion{");
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            if (i > 0) builder.append(", ");
+            builder.append('[').append(rects[o]).append(',').append(rects[o + 1])
+                    .append(' ').append(rects[o + 2] - rects[o]).append('x').append(rects[o + 3] - rects[o + 1])
+                    .append(']');
+        }
+        return builder.append('}').toString();
+    }
+}
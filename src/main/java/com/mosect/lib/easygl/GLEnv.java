@@ -7,10 +7,13 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * OpenGL绘制环境
@@ -19,23 +22,75 @@ public class GLEnv {
 
     private static final String TAG = "GL/Env";
 
-    private final static long SECOND_LENGTH = 1000 * 1000 * 1000L;
+    /**
+     * 渲染模式：持续绘制，按帧率不断绘制，没有有效输出时挂起
+     */
+    public static final int RENDER_MODE_CONTINUOUSLY = 0;
+    /**
+     * 渲染模式：按需绘制，只有提交动作或者调用{@link #requestRender() requestRender}才绘制
+     */
+    public static final int RENDER_MODE_WHEN_DIRTY = 1;
 
     private String name; // 名称，仅作为标记使用
     private int fps = 24; // 帧率：大于0，控制帧率；否则，不限制帧率
-    private int state = 0; // 状态：0，未运行；1，运行中；2，已销毁
+    private volatile int state = 0; // 状态：0，未运行；1，运行中；2，已销毁
+    private volatile int renderMode = RENDER_MODE_CONTINUOUSLY; // 渲染模式
+    private volatile Thread loopThread; // 绘制线程
+    private final AtomicBoolean dirty = new AtomicBoolean(true); // 是否需要重新绘制
 
     private final byte[] lock = new byte[0]; // 资源锁
-    private final List<Runnable> actions = new ArrayList<>(); // 表示下一帧要执行的动作列表
+    private final GLActionQueue actions = new GLActionQueue(); // 表示下一帧要执行的动作队列
+    // 以下成员只在绘制线程修改，每帧动作执行后发布成快照
     private final List<GLObject<?>> objects = new ArrayList<>(); // 缓存的实体对象
     private final List<GLOutput<?>> outputs = new ArrayList<>(); // 缓存的输出对象
     private final HashSet<GLObject<?>> objectSet = new HashSet<>(); // 已缓存的实体对象
     private final Map<Class<?>, GLShader<?>> shaderMap = new HashMap<>(); // 缓存的Shader对象
+    private boolean sceneChanged = false; // 成员是否已改变，需要发布新快照
+    private final List<GLReadback> readbacks = new ArrayList<>(); // 像素回读，只在绘制线程访问
+    private volatile GLScene scene = GLScene.EMPTY; // 已发布的场景快照
+
+    private volatile GLOutput<?> currentOutput = null; // 当前输出
+    private volatile GLOutput<?> mainOutput; // 主输出
 
-    private GLOutput<?> currentOutput = null; // 当前输出
-    private GLOutput<?> mainOutput; // 主输出
+    private final GLFrameScheduler scheduler = new GLFrameScheduler(); // 帧调度器
+    private final GLFrameStats frameStats = new GLFrameStats(); // 帧耗时统计
+    private volatile boolean frameStatsEnabled = false; // 是否统计帧耗时
+    private volatile GLFrameStats.Listener frameStatsListener; // 帧耗时统计监听器
+    private volatile GLProgramCache programCache; // 程序二进制缓存
+    private volatile GLFrameGovernor frameGovernor; // 自适应帧率及分辨率控制器
+    private final GLRenderQueue renderQueue = new GLRenderQueue(); // 渲染队列
+    private volatile boolean renderQueueEnabled = false; // 是否使用渲染队列
+    private final GLBackend backend; // EGL及GL调用后端
+    private final GLStateCache stateCache; // OpenGL状态缓存
+    private volatile boolean foreignGLEnabled = false; // 实体对象是否直接调用OpenGL修改状态
+    private final GLBufferPool bufferPool = new GLBufferPool(); // 直接缓冲区池
+    private final GLStreamBuffer streamBuffer = new GLStreamBuffer(this); // 流式顶点缓冲区
+    private final GLTextureLoader textureLoader = new GLTextureLoader(this); // 异步纹理加载器
+    private final GLResourceThread resourceThread = new GLResourceThread(this); // 资源线程
+    private final GLRenderTargetPool renderTargetPool = new GLRenderTargetPool(this); // 离屏绘制目标池
+    private final GLPresenter presenter = new GLPresenter(this); // 单次绘制多输出呈现
+    private final GLCommandPreparer commandPreparer = new GLCommandPreparer(this); // 绘制命令准备器
+    private volatile boolean renderOnceEnabled = false; // 是否单次绘制多输出
+    private boolean presenterUsed = false; // 呈现器是否持有资源
+    private long commitTime = 0; // 本帧提交帧（交换缓冲区）的耗时，只在计时时统计
+    private int[] groupSizes = new int[0]; // 每个分组的有效输出数量，只在绘制线程使用
+    private int[] groupLeads = new int[0]; // 每个分组的绘制输出位置
+    private GLRenderTarget[] groupTargets = new GLRenderTarget[0]; // 每个分组本帧已绘制的离屏目标
+    private Object display; // OpenGL实现接口对象
+    private final HashSet<String> eglExtensions = new HashSet<>(); // display支持的EGL扩展
+    private GLEnvGroup group; // 所属环境组，null表示独立环境
+    private Object currentContext; // 当前EGLContext，用于判断状态缓存是否失效
+    private int glesVersion; // 当前上下文的GLES主版本号，0表示未检测
 
-    private EGLDisplay display; // OpenGL实现接口对象
+    public GLEnv() {
+        this(new GLAndroidBackend());
+    }
+
+    public GLEnv(GLBackend backend) {
+        this.backend = backend;
+        this.stateCache = new GLStateCache(backend);
+        scheduler.setFps(fps);
+    }
 
     /**
      * 开始绘制线程，环境将会初始化
@@ -44,102 +99,239 @@ public class GLEnv {
         synchronized (lock) {
             if (state == 0) {
                 state = 1;
-                new Thread(this::loop).start();
+                Thread thread = new Thread(this::loop);
+                loopThread = thread;
+                thread.start();
             }
         }
     }
 
     /**
-     * 在绘制线程执行动作
+     * 在绘制线程执行动作，此方法不会等待绘制线程，可在任意线程调用
      *
      * @param runnable 动作
      * @return true，已提交执行动作；false，未提交执行动作
      */
     public boolean runGLAction(Runnable runnable) {
-        synchronized (lock) {
-            if (state != 2) {
-                actions.add(runnable);
-                return true;
+        if (state != 2) {
+            GLActionQueue.Node node = actions.offer(runnable);
+            if (state == 2 && actions.cancel(node)) {
+                // 提交期间环境已销毁，动作不会再执行
+                return false;
             }
-            return false;
+            wakeUp();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 在资源线程创建资源，资源线程使用与主输出共享的上下文，第一次调用时启动；可在任意线程调用
+     * 资源创建完成后，绘制线程等待GPU完成资源创建命令，再执行发布动作；任务失败时同样执行发布动作
+     *
+     * @param work    在资源线程执行，只能直接通过{@link #getBackend() 后端}调用GL，不能使用状态缓存
+     * @param publish 在绘制线程执行，成功时资源已可用，失败时回收资源；可以为null
+     * @return true，已提交；false，环境已销毁
+     */
+    public boolean runResourceAction(Runnable work, GLResourceThread.Publisher publish) {
+        if (state == 2) return false;
+        return resourceThread.post(work, publish);
+    }
+
+    /**
+     * 获取绘制命令准备器，开启后实体对象在准备线程并行记录绘制命令，绘制线程只回放
+     *
+     * @return 命令准备器
+     */
+    public GLCommandPreparer getCommandPreparer() {
+        return commandPreparer;
+    }
+
+    /**
+     * 获取资源线程
+     *
+     * @return 资源线程
+     */
+    public GLResourceThread getResourceThread() {
+        return resourceThread;
+    }
+
+    /**
+     * 请求绘制一帧，{@link #RENDER_MODE_WHEN_DIRTY RENDER_MODE_WHEN_DIRTY}模式下使用，可在任意线程调用
+     */
+    public void requestRender() {
+        wakeUp();
+    }
+
+    /**
+     * 标记需要重新绘制，并唤醒挂起的绘制线程
+     */
+    private void wakeUp() {
+        dirty.set(true);
+        Thread thread = loopThread;
+        if (null != thread) {
+            LockSupport.unpark(thread);
         }
     }
 
     /**
-     * 依附实体对象到环境
+     * 判断场景中是否存在有效输出
+     *
+     * @param scene 场景快照
+     * @return true，存在有效输出；false，不存在有效输出
+     */
+    private static boolean hasValidOutput(GLScene scene) {
+        for (GLOutput<?> output : scene.outputs) {
+            if (output.isValid()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 依附实体对象到环境，只能在绘制线程调用，成员变化在下一次绘制前发布
      *
      * @param object 实体对象
      */
     protected void attach(GLObject<?> object) {
-        synchronized (lock) {
-            if (objectSet.contains(object)) return; // 已缓存，忽略
-            objectSet.add(object); // 记录对象
-            if (object instanceof GLOutput) {
-                GLOutput<?> output = (GLOutput<?>) object;
-                if (outputs.add(output)) {
-                    if (null != mainOutput && mainOutput.isValid()) {
-                        // 已存在有效的主输出，可以依附此实体对象
-                        output.dispatchAttached(true);
-                    }
+        if (objectSet.contains(object)) return; // 已缓存，忽略
+        objectSet.add(object); // 记录对象
+        sceneChanged = true;
+        if (object instanceof GLOutput) {
+            GLOutput<?> output = (GLOutput<?>) object;
+            if (outputs.add(output)) {
+                if (null != mainOutput && mainOutput.isValid()) {
+                    // 已存在有效的主输出，可以依附此实体对象
+                    output.dispatchAttached(true);
                 }
-            } else if (object instanceof GLShader) {
-                GLShader<?> shader = (GLShader<?>) object;
-                if (!shaderMap.containsKey(shader.getClass())) {
-                    shaderMap.put(shader.getClass(), shader);
-                    if (null != mainOutput && mainOutput.isValid()) {
-                        // 已存在有效的主输出，可以依附此实体对象
-                        if (null != mainOutput && mainOutput.isValid()) {
-                            shader.dispatchAttached(true);
-                        }
-                    }
+            }
+        } else if (object instanceof GLShader) {
+            GLShader<?> shader = (GLShader<?>) object;
+            if (!shaderMap.containsKey(shader.getClass())) {
+                shaderMap.put(shader.getClass(), shader);
+                if (null != mainOutput && mainOutput.isValid()) {
+                    // 已存在有效的主输出，可以依附此实体对象
+                    shader.dispatchAttached(true);
                 }
-            } else {
-                if (objects.add(object)) {
-                    if (null != mainOutput && mainOutput.isValid()) {
-                        // 已存在有效的主输出，可以依附此实体对象
-                        object.dispatchAttached(true);
-                    }
+            }
+        } else {
+            if (objects.add(object)) {
+                if (null != mainOutput && mainOutput.isValid()) {
+                    // 已存在有效的主输出，可以依附此实体对象
+                    object.dispatchAttached(true);
                 }
             }
         }
     }
 
     /**
-     * 卸载实体对象
+     * 卸载实体对象，只能在绘制线程调用，成员变化在下一次绘制前发布
      *
      * @param object 实体对象
      */
     protected void detach(GLObject<?> object) {
-        synchronized (lock) {
-            if (!objectSet.contains(object)) return; // 未记录此对象，忽略操作
-            objectSet.remove(object); // 移除实体对象记录
-            if (object instanceof GLOutput) {
-                GLOutput<?> output = (GLOutput<?>) object;
-                if (outputs.remove(output)) {
-                    // 卸载实体
-                    output.dispatchAttached(false);
-                    // 清空其他相关实体对象变量
-                    if (output == currentOutput) {
-                        currentOutput = null;
-                    }
-                    if (output == mainOutput) {
-                        setMainOutput(null);
-                    }
+        if (!objectSet.contains(object)) return; // 未记录此对象，忽略操作
+        objectSet.remove(object); // 移除实体对象记录
+        sceneChanged = true;
+        if (object instanceof GLOutput) {
+            GLOutput<?> output = (GLOutput<?>) object;
+            if (outputs.remove(output)) {
+                // 卸载实体
+                output.dispatchAttached(false);
+                // 清空其他相关实体对象变量
+                if (output == currentOutput) {
+                    currentOutput = null;
                 }
-            } else if (object instanceof GLShader) {
-                GLShader<?> shader = (GLShader<?>) object;
-                GLShader<?> existObj = shaderMap.get(shader.getClass());
-                if (existObj == shader) {
-                    shaderMap.remove(shader.getClass());
-                    // 卸载实体
-                    shader.dispatchAttached(false);
-                }
-            } else {
-                if (objects.remove(object)) {
-                    // 卸载实体
-                    object.dispatchAttached(false);
+                if (output == mainOutput) {
+                    setMainOutput(null);
                 }
             }
+        } else if (object instanceof GLShader) {
+            GLShader<?> shader = (GLShader<?>) object;
+            GLShader<?> existObj = shaderMap.get(shader.getClass());
+            if (existObj == shader) {
+                shaderMap.remove(shader.getClass());
+                // 卸载实体
+                shader.dispatchAttached(false);
+            }
+        } else {
+            if (objects.remove(object)) {
+                // 卸载实体
+                object.dispatchAttached(false);
+            }
+        }
+    }
+
+    /**
+     * 设置所属环境组，由环境组在启动前调用
+     */
+    void setGroup(GLEnvGroup group) {
+        this.group = group;
+    }
+
+    /**
+     * 获取所属环境组
+     *
+     * @return 环境组，null表示独立环境
+     */
+    public GLEnvGroup getGroup() {
+        return group;
+    }
+
+    /**
+     * 获取主输出创建上下文时共享的上下文
+     *
+     * @param config        主输出的EGLConfig
+     * @param clientVersion 主输出上下文的客户端版本
+     * @return 环境组开启共享上下文时为组内共享的上下文；否则为null
+     */
+    Object getShareContext(Object config, int clientVersion) {
+        return null == group ? null : group.obtainShareContext(display, config, clientVersion);
+    }
+
+    /**
+     * 判断display是否支持EGL扩展，只能在绘制线程调用
+     *
+     * @param name 扩展名称，例如：EGL_EXT_buffer_age
+     * @return true，支持；false，不支持或者环境未初始化
+     */
+    public boolean hasEGLExtension(String name) {
+        return eglExtensions.contains(name);
+    }
+
+    /**
+     * 记录实体对象修改的区域，合并到绘制该对象且开启局部更新的输出，只能在绘制线程调用
+     *
+     * @param object 实体对象
+     * @param x      左下角x，full为true时忽略
+     * @param y      左下角y，full为true时忽略
+     * @param width  宽，full为true时忽略
+     * @param height 高，full为true时忽略
+     * @param full   是否为整个输出
+     */
+    void addDamage(GLObject<?> object, int x, int y, int width, int height, boolean full) {
+        for (int i = 0; i < outputs.size(); i++) {
+            GLOutput<?> output = outputs.get(i);
+            if (!output.isPartialUpdateEnabled()) continue;
+            if (object == output || object.isDrawnTo(output)) {
+                output.addDamage(x, y, width, height, full);
+            }
+        }
+    }
+
+    /**
+     * 标记场景需要重新发布，实体对象的层掩码或者指定输出改变时调用，只能在绘制线程调用
+     */
+    void invalidateScene() {
+        sceneChanged = true;
+    }
+
+    /**
+     * 发布场景快照，成员未变化时不做处理
+     */
+    private void publishScene() {
+        if (sceneChanged) {
+            sceneChanged = false;
+            scene = scene.next(outputs, shaderMap, objects);
         }
     }
 
@@ -151,71 +343,108 @@ public class GLEnv {
 
         try {
             // 创建环境
-            display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
-            if (display == EGL14.EGL_NO_DISPLAY) {
+            display = backend.eglGetDisplay();
+            if (null == display) {
                 throw new RuntimeException("EGL_DEFAULT_DISPLAY not found");
             }
             int[] version = new int[2];
-            if (!EGL14.eglInitialize(display, version, 0, version, 1)) {
+            if (!backend.eglInitialize(display, version)) {
                 throw new RuntimeException("eglInitialize failed");
             }
             Log.d(TAG, String.format("%s/eglInitialize: version=%s.%s", getPrintName(), version[0], version[1]));
+            String extensions = backend.eglQueryString(display, EGL14.EGL_EXTENSIONS);
+            if (!TextUtils.isEmpty(extensions)) {
+                eglExtensions.addAll(Arrays.asList(extensions.trim().split("\\s+")));
+            }
 
-            long lastDrawTime = -1;
             while (state == 1) {
-                synchronized (lock) {
-                    if (null != mainOutput && mainOutput.isValid()) {
-                        // 主输出可用，切换成主输出
-                        makeCurrent(mainOutput);
-                    }
-                    if (actions.size() > 0) {
-                        for (Runnable action : actions) {
-                            action.run();
-                        }
-                        actions.clear();
-                    }
+                // 先清除标记再执行动作，执行期间的新请求会保留到下一轮
+                boolean dirty = this.dirty.getAndSet(false);
+                GLFrameStats.Listener statsListener = frameStatsListener;
+                GLFrameStats stats = frameStatsEnabled || null != statsListener ? frameStats : null;
+                GLFrameGovernor governor = frameGovernor;
+                boolean timing = null != stats || null != governor;
+                if (null != mainOutput && mainOutput.isValid()) {
+                    // 主输出可用，切换成主输出
+                    makeCurrent(mainOutput);
+                    resourceThread.prepare(mainOutput);
                 }
-                // 帧率控制
-                int fps = this.fps;
-                if (fps > 0 && lastDrawTime >= 0) {
-                    long framePartTime = SECOND_LENGTH / fps;
-                    long partTime = System.nanoTime() - lastDrawTime;
-                    if (partTime > 0 && partTime < framePartTime) {
-                        long timeOffset = framePartTime - partTime;
-                        long mills = timeOffset / 1000000;
-                        int nanos = (int) (timeOffset % 1000000);
-                        try {
-                            //noinspection BusyWait
-                            Thread.sleep(mills, nanos);
-                        } catch (InterruptedException ignored) {
+                long actionStart = timing ? System.nanoTime() : 0;
+                int actionCount = actions.drain();
+                if (textureLoader.upload()) {
+                    // 超出本帧上传预算，下一轮继续
+                    this.dirty.set(true);
+                }
+                long actionTime = timing ? System.nanoTime() - actionStart : 0;
+                publishScene();
+                GLScene scene = this.scene;
+                if (!hasValidOutput(scene) || (renderMode == RENDER_MODE_WHEN_DIRTY && !dirty)) {
+                    // 无需绘制，挂起直到提交动作、请求绘制或者销毁环境
+                    if (state == 1 && !this.dirty.get()) {
+                        // 挂起前交付未完成的像素回读
+                        pollReadbacks(true);
+                        LockSupport.park(this);
+                        scheduler.reset();
+                        for (GLOutput<?> output : scene.outputs) {
+                            output.resetFrameSchedule();
                         }
                     }
+                    continue;
                 }
+                // 帧率控制
+                if (!awaitOutputs(scene)) continue;
+                // 按实际绘制的帧统计实测帧率，包括只有独立帧率输出到期的帧
+                scheduler.countFrame(scheduler.now());
                 // 绘制帧
-                lastDrawTime = System.nanoTime();
-                synchronized (lock) {
-                    dispatchFrame(false);
-                    if (outputs.size() > 0) {
-                        for (GLOutput<?> output : outputs) {
-                            if (!output.isValid()) continue;
-                            makeCurrent(output);
-                            output.dispatchDraw();
-                            for (GLShader<?> shader : shaderMap.values()) {
-                                shader.dispatchDraw();
-                            }
-                            for (GLObject<?> obj : objects) {
-                                obj.dispatchDraw();
-                            }
-                            output.dispatchCommit();
-                        }
+                if (null != stats) {
+                    stats.begin(scene);
+                    stats.actionTime = actionTime;
+                    stats.actionCount = actionCount;
+                }
+                long drawStart = timing ? System.nanoTime() : 0;
+                commitTime = 0;
+                float scale = null == governor ? 1 : governor.getResolutionScale();
+                dispatchFrame(scene, false);
+                commandPreparer.prepare(scene.objects);
+                drawScene(scene, stats, scale, timing);
+                dispatchFrame(scene, true);
+                if (null != governor) {
+                    // 根据帧耗时调整帧率及分辨率，不包括交换缓冲区时等待显示的耗时
+                    governor.setMaxFps(fps);
+                    governor.update(actionTime + (System.nanoTime() - drawStart) - commitTime);
+                    scheduler.setFps(governor.getTargetFps());
+                }
+                pollReadbacks(false);
+                streamBuffer.nextFrame();
+                renderTargetPool.trim();
+                bufferPool.trim();
+                if (null != stats) {
+                    stats.frameTime = actionTime + (System.nanoTime() - drawStart);
+                    stats.end();
+                    if (null != statsListener) {
+                        statsListener.onFrameStats(stats);
                     }
-                    dispatchFrame(true);
+                    stats.frameIndex++;
                 }
             }
         } finally {
             // 销毁
+            resourceThread.stop();
+            commandPreparer.release();
             synchronized (lock) {
+                actions.clear();
                 currentOutput = null;
+                currentContext = null;
+                streamBuffer.release();
+                textureLoader.release();
+                presenter.release();
+                presenterUsed = false;
+                renderTargetPool.clear();
+                for (GLReadback readback : readbacks) {
+                    readback.destroy();
+                }
+                readbacks.clear();
+                glesVersion = 0;
                 for (GLOutput<?> output : outputs) {
                     output.dispatchAttached(false);
                 }
@@ -228,32 +457,351 @@ public class GLEnv {
                 }
                 shaderMap.clear();
                 objects.clear();
-                if (display != EGL14.EGL_NO_DISPLAY) {
-                    EGL14.eglMakeCurrent(getDisplay(), EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
-                    EGL14.eglTerminate(display);
-                    display = EGL14.EGL_NO_DISPLAY;
+                objectSet.clear();
+                scene = GLScene.EMPTY;
+                bufferPool.clear();
+                if (null != display) {
+                    backend.eglMakeCurrent(display, null, null, null);
+                    if (null == group) {
+                        backend.eglTerminate(display);
+                    }
+                }
+                if (null != group) {
+                    // display由环境组共享，最后一个结束的环境负责终止
+                    group.onEnvEnded(display);
                 }
+                display = null;
+                eglExtensions.clear();
+                loopThread = null;
             }
         }
 
         Log.d(TAG, getPrintName() + "/loop: end");
     }
 
+    /**
+     * 等待下一帧，并计算每个输出本轮是否需要绘制
+     * 存在独立帧率的输出时，在最早到期的时间唤醒（环境帧或者独立帧率输出的下一帧），只绘制到期的输出
+     *
+     * @param scene 场景快照
+     * @return true，存在需要绘制的输出；false，没有
+     */
+    private boolean awaitOutputs(GLScene scene) {
+        GLOutput<?>[] outputs = scene.outputs;
+        boolean independent = false; // 是否存在独立帧率的输出
+        boolean envRate = false; // 是否存在跟随环境帧率的输出
+        for (GLOutput<?> output : outputs) {
+            if (!output.isValid()) continue;
+            if (output.getFps() > 0) {
+                independent = true;
+            } else {
+                envRate = true;
+            }
+        }
+        if (renderMode == RENDER_MODE_WHEN_DIRTY || !independent) {
+            scheduler.advanceFrame();
+            boolean due = false;
+            for (GLOutput<?> output : outputs) {
+                if (!output.isValid()) continue;
+                if (renderMode == RENDER_MODE_WHEN_DIRTY) {
+                    output.frameDue = true;
+                    due = true;
+                } else {
+                    due |= output.updateFrameDue(0, true);
+                }
+            }
+            return due;
+        }
+        long now = scheduler.now();
+        long wakeTime = envRate ? scheduler.getNextFrameTime(now) : Long.MAX_VALUE;
+        for (GLOutput<?> output : outputs) {
+            if (!output.isValid() || output.getFps() <= 0) continue;
+            long time = output.getNextFrameTime(now);
+            if (time - wakeTime < 0) wakeTime = time;
+        }
+        now = scheduler.sleepUntil(wakeTime);
+        boolean envTick = envRate && scheduler.getNextFrameTime(now) - now <= 0;
+        if (envTick) {
+            // 已到期，不会等待，只推进环境帧
+            scheduler.advanceFrame();
+        }
+        boolean due = false;
+        for (GLOutput<?> output : outputs) {
+            if (!output.isValid()) continue;
+            due |= output.updateFrameDue(now, envTick);
+        }
+        return due;
+    }
+
+    /**
+     * 检查像素回读，交付已完成的读取
+     *
+     * @param finish true，等待所有读取完成；false，只交付已完成的读取
+     */
+    private void pollReadbacks(boolean finish) {
+        for (int i = 0; i < readbacks.size(); i++) {
+            GLReadback readback = readbacks.get(i);
+            if (!finish || readback.hasPending()) {
+                readback.poll(finish);
+            }
+        }
+    }
+
+    /**
+     * 添加像素回读，只能在绘制线程调用
+     */
+    void addReadback(GLReadback readback) {
+        if (!readbacks.contains(readback)) {
+            readbacks.add(readback);
+        }
+    }
+
+    /**
+     * 移除像素回读，只能在绘制线程调用
+     */
+    void removeReadback(GLReadback readback) {
+        readbacks.remove(readback);
+    }
+
+    /**
+     * 将场景绘制到所有有效输出，每个输出只绘制其绘制列表中的shader及实体对象
+     * 单次绘制模式下，绘制列表相同的多个有效输出只绘制一次到离屏目标，再呈现到每个输出
+     *
+     * 分辨率缩放小于1时，先绘制到缩小的离屏目标，再放大呈现到输出
+     * 开启局部更新的输出只重绘修改区域，没有修改时跳过
+     *
+     * @param scene 场景快照
+     * @param stats 帧耗时统计，null表示不统计
+     * @param scale 分辨率缩放
+     */
+    private void drawScene(GLScene scene, GLFrameStats stats, float scale, boolean timing) {
+        GLOutput<?>[] outputs = scene.outputs;
+        GLRenderQueue queue = renderQueueEnabled ? renderQueue : null;
+        if (null != queue) {
+            // 每帧收集并排序一次，所有输出共用
+            queue.collect(scene.objects);
+        }
+        boolean renderOnce = renderOnceEnabled && prepareGroups(scene);
+        for (int i = 0; i < outputs.length; i++) {
+            GLOutput<?> output = outputs[i];
+            if (!output.isValid() || !output.frameDue) continue;
+            // 输出负载只在环境组分配输出或者统计耗时时需要
+            boolean timed = timing || null != this.group;
+            long outputStart = timed ? System.nanoTime() : 0;
+            int group = scene.views[i].group;
+            if (renderOnce && groupSizes[group] > 1) {
+                presentOutput(scene, i, stats, queue, scale, timing);
+                if (timed) {
+                    output.recordDrawTime(System.nanoTime() - outputStart, true);
+                }
+                continue;
+            }
+            long time = null == stats ? 0 : System.nanoTime();
+            makeCurrent(output);
+            if (null != stats) {
+                stats.outputMakeCurrentTimes[i] += System.nanoTime() - time;
+            }
+            GLRenderTarget target = null;
+            if (scale < 1) {
+                target = acquireScaledTarget(output, scale);
+            }
+            if (null != target) {
+                target.bind();
+            } else if (!output.beginPartialFrame(scene.version)) {
+                // 局部更新没有修改，跳过绘制及交换
+                if (timed) {
+                    output.recordDrawTime(System.nanoTime() - outputStart, false);
+                }
+                continue;
+            }
+            output.dispatchDraw();
+            drawView(scene, scene.views[i], stats, queue);
+            if (null != target) {
+                GLSurface surface = output.getContent();
+                presenter.present(target, surface.getWindowWidth(), surface.getWindowHeight());
+                target.release();
+            }
+            commitOutput(output, timing);
+            if (timed) {
+                output.recordDrawTime(System.nanoTime() - outputStart, true);
+            }
+            if (null != stats) {
+                stats.outputSwapTimes[i] += output.getSwapTime();
+            }
+        }
+        if (null != queue) {
+            queue.clear();
+        }
+        if (renderOnce) {
+            presenter.trim(scene.groupCount);
+        } else if (presenterUsed && scale >= 1) {
+            // 不再需要离屏目标
+            presenter.release();
+            presenterUsed = false;
+        }
+    }
+
+    /**
+     * 统计每个分组的有效输出数量，并选择尺寸最大的输出作为绘制输出
+     *
+     * @param scene 场景快照
+     * @return true，存在多个有效输出的分组；false，不存在
+     */
+    private boolean prepareGroups(GLScene scene) {
+        int groupCount = scene.groupCount;
+        if (groupSizes.length < groupCount) {
+            groupSizes = new int[groupCount];
+            groupLeads = new int[groupCount];
+            groupTargets = new GLRenderTarget[groupCount];
+        }
+        Arrays.fill(groupSizes, 0, groupCount, 0);
+        Arrays.fill(groupTargets, 0, groupCount, null);
+        boolean shared = false;
+        GLOutput<?>[] outputs = scene.outputs;
+        for (int i = 0; i < outputs.length; i++) {
+            GLOutput<?> output = outputs[i];
+            if (!output.isValid() || !output.frameDue) continue;
+            int group = scene.views[i].group;
+            if (groupSizes[group]++ == 0 || area(output) > area(outputs[groupLeads[group]])) {
+                groupLeads[group] = i;
+            }
+            if (groupSizes[group] > 1) shared = true;
+        }
+        return shared;
+    }
+
+    /**
+     * 申请缩小的离屏目标
+     *
+     * @return 离屏目标；输出大小无效或者创建失败时为null，直接绘制到输出
+     */
+    private GLRenderTarget acquireScaledTarget(GLOutput<?> output, float scale) {
+        GLSurface surface = output.getContent();
+        if (null == surface || surface.getWindowWidth() <= 0 || surface.getWindowHeight() <= 0) return null;
+        try {
+            GLRenderTarget target = renderTargetPool.acquire(
+                    Math.max(1, Math.round(surface.getWindowWidth() * scale)),
+                    Math.max(1, Math.round(surface.getWindowHeight() * scale)));
+            presenterUsed = true;
+            return target;
+        } catch (Exception e) {
+            Log.w(TAG, getPrintName() + "/acquireScaledTarget: ", e);
+            return null;
+        }
+    }
+
+    private static long area(GLOutput<?> output) {
+        GLSurface surface = output.getContent();
+        return null == surface ? 0 : (long) surface.getWindowWidth() * surface.getWindowHeight();
+    }
+
+    /**
+     * 单次绘制模式下呈现输出，分组第一次呈现时先将场景绘制到离屏目标
+     */
+    private void presentOutput(GLScene scene, int index, GLFrameStats stats, GLRenderQueue queue, float scale,
+                               boolean timing) {
+        GLOutput<?> output = scene.outputs[index];
+        int group = scene.views[index].group;
+        GLRenderTarget target = groupTargets[group];
+        long time = null == stats ? 0 : System.nanoTime();
+        if (null == target) {
+            int leadIndex = groupLeads[group];
+            GLOutput<?> lead = scene.outputs[leadIndex];
+            makeCurrent(lead);
+            if (null != stats) {
+                stats.outputMakeCurrentTimes[leadIndex] += System.nanoTime() - time;
+            }
+            GLSurface surface = lead.getContent();
+            try {
+                target = presenter.obtainTarget(group,
+                        Math.max(1, Math.round(surface.getWindowWidth() * scale)),
+                        Math.max(1, Math.round(surface.getWindowHeight() * scale)));
+            } catch (Exception e) {
+                Log.w(TAG, getPrintName() + "/presentOutput: ", e);
+                renderOnceEnabled = false;
+                return;
+            }
+            presenterUsed = true;
+            target.bind();
+            lead.dispatchDraw();
+            drawView(scene, scene.views[leadIndex], stats, queue);
+            stateCache.bindFramebuffer(0);
+            groupTargets[group] = target;
+            presenter.onDrawSaved(groupSizes[group] - 1);
+            time = null == stats ? 0 : System.nanoTime();
+        }
+        makeCurrent(output);
+        if (null != stats) {
+            stats.outputMakeCurrentTimes[index] += System.nanoTime() - time;
+        }
+        GLSurface surface = output.getContent();
+        presenter.present(target, surface.getWindowWidth(), surface.getWindowHeight());
+        commitOutput(output, timing);
+        if (null != stats) {
+            stats.outputSwapTimes[index] += output.getSwapTime();
+        }
+    }
+
+    /**
+     * 提交输出的帧，计时时累计提交耗时
+     */
+    private void commitOutput(GLOutput<?> output, boolean timing) {
+        long start = timing ? System.nanoTime() : 0;
+        output.dispatchCommit();
+        if (timing) {
+            commitTime += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * 绘制输出的绘制列表
+     */
+    private void drawView(GLScene scene, GLScene.View view, GLFrameStats stats, GLRenderQueue queue) {
+        GLShader<?>[] shaders = scene.shaders;
+        GLObject<?>[] objects = scene.objects;
+        long time = null == stats ? 0 : System.nanoTime();
+        for (int index : view.shaders) {
+            shaders[index].dispatchDraw();
+            if (null != stats) {
+                time = stats.lapObject(index, time);
+            }
+        }
+        if (null != queue) {
+            queue.dispatch(stats, shaders.length, view.objectVisible);
+        } else {
+            for (int index : view.objects) {
+                objects[index].dispatchDraw();
+                if (null != stats) {
+                    time = stats.lapObject(shaders.length + index, time);
+                }
+            }
+        }
+        if (foreignGLEnabled) {
+            // 实体直接调用OpenGL修改了状态，之后的呈现、回读等内部绘制不能使用缓存
+            stateCache.invalidate();
+        }
+    }
+
     /**
      * 通知帧是否开始绘制
      *
+     * @param scene    场景快照
      * @param finished false，开始绘制；true，结束绘制
      */
-    private void dispatchFrame(boolean finished) {
-        for (GLOutput<?> output : outputs) {
+    private void dispatchFrame(GLScene scene, boolean finished) {
+        for (GLOutput<?> output : scene.outputs) {
             output.dispatchFrame(finished);
         }
-        for (GLShader<?> shader : shaderMap.values()) {
+        for (GLShader<?> shader : scene.shaders) {
             shader.dispatchFrame(finished);
         }
-        for (GLObject<?> obj : objects) {
+        for (GLObject<?> obj : scene.objects) {
             obj.dispatchFrame(finished);
         }
+        if (foreignGLEnabled) {
+            // 动作及帧回调直接修改了OpenGL状态
+            stateCache.invalidate();
+        }
     }
 
     /**
@@ -263,12 +811,13 @@ public class GLEnv {
         synchronized (lock) {
             if (state != 2) {
                 state = 2;
+                wakeUp();
             }
         }
     }
 
     /**
-     * 请求一个shader对象
+     * 请求一个shader对象，只能在绘制线程调用；读取当前成员，同一批动作中依附的shader也能获取
      *
      * @param type shader类型
      * @param <T>  shader内容类型
@@ -293,6 +842,13 @@ public class GLEnv {
         if (currentOutput != output) {
             try {
                 if (null != output) {
+                    Object context = output.getEGLContext();
+                    if (context != currentContext) {
+                        // 上下文改变，状态缓存失效；共享同一上下文的输出之间状态保持不变
+                        stateCache.invalidate();
+                        currentContext = context;
+                        glesVersion = 0;
+                    }
                     output.makeCurrent();
                 }
                 currentOutput = output;
@@ -308,7 +864,10 @@ public class GLEnv {
     private void clearCurrent() {
         Log.d(TAG, getPrintName() + "/clearCurrent: ");
         currentOutput = null;
-        EGL14.eglMakeCurrent(getDisplay(), EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        currentContext = null;
+        glesVersion = 0;
+        stateCache.invalidate();
+        backend.eglMakeCurrent(display, null, null, null);
     }
 
     /**
@@ -318,6 +877,27 @@ public class GLEnv {
      */
     public void setFps(int fps) {
         this.fps = fps;
+        scheduler.setFps(fps);
+    }
+
+    /**
+     * 设置渲染模式，{@link #RENDER_MODE_CONTINUOUSLY RENDER_MODE_CONTINUOUSLY}或者
+     * {@link #RENDER_MODE_WHEN_DIRTY RENDER_MODE_WHEN_DIRTY}
+     *
+     * @param renderMode 渲染模式
+     */
+    public void setRenderMode(int renderMode) {
+        this.renderMode = renderMode;
+        wakeUp();
+    }
+
+    /**
+     * 获取渲染模式
+     *
+     * @return 渲染模式
+     */
+    public int getRenderMode() {
+        return renderMode;
     }
 
     /**
@@ -329,15 +909,259 @@ public class GLEnv {
         return fps;
     }
 
+    /**
+     * 获取实测帧率，即绘制线程每秒实际绘制的帧数，每秒统计一次
+     *
+     * @return 实测帧率
+     */
+    public float getMeasuredFps() {
+        return scheduler.getMeasuredFps();
+    }
+
+    /**
+     * 获取帧调度器，可设置自旋阈值及查询跳帧数量
+     *
+     * @return 帧调度器
+     */
+    public GLFrameScheduler getFrameScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * 设置是否统计帧耗时，设置监听器后也会统计
+     *
+     * @param enabled true，统计；false，不统计
+     */
+    public void setFrameStatsEnabled(boolean enabled) {
+        this.frameStatsEnabled = enabled;
+    }
+
+    /**
+     * 设置帧耗时统计监听器，在绘制线程每帧结束时回调
+     *
+     * @param listener 监听器，null表示移除
+     */
+    public void setFrameStatsListener(GLFrameStats.Listener listener) {
+        this.frameStatsListener = listener;
+    }
+
+    /**
+     * 获取帧耗时统计，单帧数据只能在绘制线程读取，滚动分位数统计可在任意线程查询
+     *
+     * @return 帧耗时统计
+     */
+    public GLFrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    /**
+     * 设置是否使用渲染队列；使用时，实体对象通过{@link GLObject#onGLSubmit(GLRenderQueue) onGLSubmit}
+     * 提交带排序键的绘制项，环境每帧排序后按shader、纹理等分组绘制
+     *
+     * @param enabled true，使用；false，不使用，按实体加入顺序绘制
+     */
+    public void setRenderQueueEnabled(boolean enabled) {
+        this.renderQueueEnabled = enabled;
+    }
+
+    /**
+     * 判断是否使用渲染队列
+     *
+     * @return true，使用；false，不使用
+     */
+    public boolean isRenderQueueEnabled() {
+        return renderQueueEnabled;
+    }
+
+    /**
+     * 设置是否单次绘制多输出；开启后，绘制列表相同的多个输出（参考{@link GLObject#setLayerMask(int) 层掩码}）
+     * 每帧只绘制一次场景到离屏目标（大小为其中尺寸最大的输出），再缩放呈现到每个输出，
+     * 绘制开销与输出数量无关；GLES3使用glBlitFramebuffer，GLES2绘制纹理四边形
+     * 注意：绘制时的当前输出为分组中尺寸最大的输出，其内容的drawContent绘制到离屏目标
+     *
+     * @param enabled true，开启；false，每个输出分别绘制
+     */
+    public void setRenderOnceEnabled(boolean enabled) {
+        this.renderOnceEnabled = enabled;
+    }
+
+    /**
+     * 判断是否单次绘制多输出
+     *
+     * @return true，开启；false，关闭
+     */
+    public boolean isRenderOnceEnabled() {
+        return renderOnceEnabled;
+    }
+
+    /**
+     * 获取单次绘制模式下节省的场景绘制次数，用于评估效果
+     *
+     * @return 累计次数
+     */
+    public long getRenderOnceSavedCount() {
+        return presenter.getSavedDrawCount();
+    }
+
+    /**
+     * 设置自适应帧率及分辨率控制器，控制器根据实测帧耗时在{@link #setFps(int) 最大帧率}以下调整帧率，
+     * 并可缩小绘制分辨率，先绘制到离屏目标，提交帧时再放大到输出
+     *
+     * @param governor 控制器，null表示移除，恢复最大帧率及原分辨率
+     */
+    public void setFrameGovernor(GLFrameGovernor governor) {
+        this.frameGovernor = governor;
+        if (null == governor) {
+            scheduler.setFps(fps);
+        }
+    }
+
+    /**
+     * 获取自适应帧率及分辨率控制器
+     *
+     * @return 控制器，null表示未设置
+     */
+    public GLFrameGovernor getFrameGovernor() {
+        return frameGovernor;
+    }
+
+    /**
+     * 设置程序二进制缓存，之后创建的shader会优先从缓存加载
+     *
+     * @param programCache 程序二进制缓存，null表示不使用缓存
+     */
+    public void setProgramCache(GLProgramCache programCache) {
+        this.programCache = programCache;
+    }
+
+    /**
+     * 获取程序二进制缓存
+     *
+     * @return 程序二进制缓存，null表示不使用缓存
+     */
+    public GLProgramCache getProgramCache() {
+        return programCache;
+    }
+
     /**
      * 获取EGLDisplay对象
      *
-     * @return EGLDisplay对象
+     * @return EGLDisplay对象，非Android后端时返回null
      */
     public EGLDisplay getDisplay() {
+        return display instanceof EGLDisplay ? (EGLDisplay) display : null;
+    }
+
+    /**
+     * 获取后端display对象
+     *
+     * @return display对象，未初始化时返回null
+     */
+    Object getDisplayObject() {
         return display;
     }
 
+    /**
+     * 获取OpenGL状态缓存，只能在绘制线程使用
+     *
+     * @return 状态缓存
+     */
+    public GLStateCache getStateCache() {
+        return stateCache;
+    }
+
+    /**
+     * 设置实体对象是否直接调用OpenGL修改状态；开启后，每个输出绘制完以及每帧回调之后使状态缓存失效，
+     * 关闭时状态在输出及帧之间保持，直接修改状态的对象需要自己调用{@link GLStateCache#invalidate() invalidate}
+     *
+     * @param enabled true，开启；false，关闭，默认：false
+     */
+    public void setForeignGLEnabled(boolean enabled) {
+        this.foreignGLEnabled = enabled;
+    }
+
+    /**
+     * 判断实体对象是否直接调用OpenGL修改状态
+     *
+     * @return true，是；false，否
+     */
+    public boolean isForeignGLEnabled() {
+        return foreignGLEnabled;
+    }
+
+    /**
+     * 获取当前上下文的GLES主版本号，只能在绘制线程调用
+     *
+     * @return 主版本号，例如：2、3；无当前上下文时为0
+     */
+    public int getGLESVersion() {
+        if (glesVersion == 0 && null != currentContext) {
+            String version = backend.glGetString(GLES20.GL_VERSION);
+            // 格式：OpenGL ES <major>.<minor> <vendor-specific information>
+            if (null != version && version.startsWith("OpenGL ES ") && version.length() > 10) {
+                char major = version.charAt(10);
+                glesVersion = major >= '0' && major <= '9' ? major - '0' : 2;
+            } else {
+                glesVersion = 2;
+            }
+        }
+        return glesVersion;
+    }
+
+    /**
+     * 获取异步纹理加载器
+     *
+     * @return 纹理加载器
+     */
+    public GLTextureLoader getTextureLoader() {
+        return textureLoader;
+    }
+
+    /**
+     * 获取离屏绘制目标池，只能在绘制线程使用
+     *
+     * @return 离屏绘制目标池
+     */
+    public GLRenderTargetPool getRenderTargetPool() {
+        return renderTargetPool;
+    }
+
+    /**
+     * 获取流式顶点缓冲区，用于每帧变化的动态几何数据，只能在绘制线程使用
+     *
+     * @return 流式顶点缓冲区
+     */
+    public GLStreamBuffer getStreamBuffer() {
+        return streamBuffer;
+    }
+
+    /**
+     * 获取当前EGLContext
+     *
+     * @return 当前EGLContext，null表示没有
+     */
+    Object getCurrentContext() {
+        return currentContext;
+    }
+
+    /**
+     * 获取直接缓冲区池，可在任意线程使用
+     *
+     * @return 缓冲区池
+     */
+    public GLBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * 获取EGL及GL调用后端
+     *
+     * @return 后端对象
+     */
+    public GLBackend getBackend() {
+        return backend;
+    }
+
     /**
      * 获取当前输出对象
      *
@@ -353,7 +1177,7 @@ public class GLEnv {
      * @param name 名称
      */
     public void checkEGLError(String name) {
-        int error = EGL14.eglGetError();
+        int error = backend.eglGetError();
         if (error != EGL14.EGL_SUCCESS) {
             throw new RuntimeException(String.format("%s.eglGetError: 0x%x (%s)", name, error, error));
         }
@@ -366,7 +1190,7 @@ public class GLEnv {
      */
     public void checkGlError(String name) {
         int error;
-        if ((error = GLES20.glGetError()) != GLES20.GL_NO_ERROR) {
+        if ((error = backend.glGetError()) != GLES20.GL_NO_ERROR) {
             throw new RuntimeException(String.format("%s.glGetError: 0x%x (%s)", name, error, error));
         }
     }
@@ -482,6 +1306,7 @@ public class GLEnv {
         return getPrintName() + " {" +
                 "name='" + name + '\'' +
                 ", fps=" + fps +
+                ", renderMode=" + renderMode +
                 ", state=" + state +
                 '}';
     }
@@ -0,0 +1,471 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.EGL14;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * 多线程环境组，持有多个{@link GLEnv GLEnv}，每个环境一个绘制线程，用于同时驱动多个互相独立的显示
+ * 实体对象及输出属于创建它们的环境，因此以{@link Client Client}为分配单位：客户端在分配到的环境中创建输出及实体对象，
+ * 环境组按实测负载（输出的平均绘制耗时乘以实测帧率）选择负载最低的线程；
+ * 某个线程过载时，在原环境销毁客户端的对象，再在负载较低的环境重新创建（迁移）
+ * 开启共享上下文时，所有环境的上下文属于同一共享组，可以通过{@link GLSharedResource GLSharedResource}跨线程共享资源
+ * 注意：所有环境共享同一个display，由最后一个结束的环境终止
+ */
+public class GLEnvGroup {
+
+    private static final String TAG = "GL/EnvGroup";
+
+    private final GLBackend backend; // 所有环境共用的后端
+    private final GLEnv[] envs; // 环境，每个环境一个绘制线程
+    private final ArrayList<Member> members = new ArrayList<>(); // 客户端
+    private boolean sharedContextEnabled = false; // 是否开启共享上下文
+    private Object shareDisplay; // 共享上下文所在的display
+    private Object shareContext; // 组内共享的上下文，不绑定surface，由环境组持有
+    private int endedCount = 0; // 已结束的环境数量
+    private int state = 0; // 状态：0，未开始；1，运行中；2，已销毁
+    private Thread balanceThread; // 负载均衡线程
+
+    private long balanceInterval = 1000; // 负载均衡间隔，单位：毫秒
+    private float overloadThreshold = 0.8f; // 线程负载超过此值时迁移
+    private long migrationCooldown = 5000; // 客户端迁移后多久内不再迁移，单位：毫秒
+    private long migrationCount = 0; // 迁移次数
+
+    /**
+     * 使用{@link GLAndroidBackend GLAndroidBackend}
+     *
+     * @param threadCount 线程数量
+     */
+    public GLEnvGroup(int threadCount) {
+        this(threadCount, new GLAndroidBackend());
+    }
+
+    /**
+     * @param threadCount 线程数量
+     * @param backend     所有环境共用的后端，需要线程安全
+     */
+    public GLEnvGroup(int threadCount, GLBackend backend) {
+        if (threadCount <= 0) throw new IllegalArgumentException("Invalid threadCount: " + threadCount);
+        this.backend = backend;
+        envs = new GLEnv[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            envs[i] = new GLEnv(backend);
+            envs[i].setName(TAG + "#" + i);
+            envs[i].setGroup(this);
+        }
+    }
+
+    /**
+     * 设置是否开启共享上下文，开启后所有环境主输出的上下文属于同一共享组，纹理、缓冲区等资源可跨线程使用
+     * 注意：只能在{@link #start() start}之前调用
+     *
+     * @param enabled true，开启；false，不开启，默认：false
+     */
+    public synchronized void setSharedContextEnabled(boolean enabled) {
+        if (state != 0) throw new RuntimeException("GLEnvGroup already started");
+        this.sharedContextEnabled = enabled;
+    }
+
+    public synchronized boolean isSharedContextEnabled() {
+        return sharedContextEnabled;
+    }
+
+    /**
+     * 设置负载均衡策略
+     *
+     * @param interval          负载均衡间隔，单位：毫秒，默认：1000；小于等于0表示不自动均衡，只在调用{@link #rebalance() rebalance}时均衡
+     * @param overloadThreshold 线程负载（占用时间的比例）超过此值时迁移，默认：0.8
+     * @param cooldown          客户端迁移后多久内不再迁移，单位：毫秒，默认：5000
+     */
+    public synchronized void setBalancePolicy(long interval, float overloadThreshold, long cooldown) {
+        this.balanceInterval = interval;
+        this.overloadThreshold = overloadThreshold;
+        this.migrationCooldown = cooldown;
+        notifyAll();
+    }
+
+    /**
+     * 设置所有环境的帧率
+     *
+     * @param fps 帧率
+     */
+    public void setFps(int fps) {
+        for (GLEnv env : envs) {
+            env.setFps(fps);
+        }
+    }
+
+    /**
+     * 开始所有环境的绘制线程及负载均衡线程
+     */
+    public synchronized void start() {
+        if (state != 0) return;
+        state = 1;
+        for (GLEnv env : envs) {
+            env.start();
+        }
+        balanceThread = new Thread(this::balanceLoop, TAG);
+        balanceThread.setDaemon(true);
+        balanceThread.start();
+    }
+
+    /**
+     * 销毁所有环境，客户端的对象随环境销毁，不再调用{@link Client#onDetach(GLEnv) onDetach}
+     */
+    public void destroy() {
+        synchronized (this) {
+            if (state == 2) return;
+            state = 2;
+            members.clear();
+            notifyAll();
+        }
+        for (GLEnv env : envs) {
+            env.destroy();
+        }
+    }
+
+    /**
+     * 添加客户端，分配到负载最低的线程，可迁移
+     *
+     * @param client 客户端
+     */
+    public void add(Client client) {
+        add(client, -1);
+    }
+
+    /**
+     * 添加客户端，固定在指定线程，不参与迁移
+     *
+     * @param client 客户端
+     * @param thread 线程序号，范围：[0, threadCount)；小于0表示自动分配
+     */
+    public void add(Client client, int thread) {
+        if (thread >= envs.length) throw new IllegalArgumentException("Invalid thread: " + thread);
+        Member member;
+        synchronized (this) {
+            if (state == 2) return;
+            if (null != findMember(client)) throw new IllegalArgumentException("Client already added");
+            member = new Member(client, thread >= 0);
+            member.thread = thread >= 0 ? thread : selectThread();
+            member.migrating = true;
+            members.add(member);
+        }
+        attach(member, envs[member.thread]);
+    }
+
+    /**
+     * 移除客户端，在其所在环境调用{@link Client#onDetach(GLEnv) onDetach}
+     *
+     * @param client 客户端
+     */
+    public void remove(Client client) {
+        Member member;
+        boolean detach;
+        synchronized (this) {
+            member = findMember(client);
+            if (null == member) return;
+            members.remove(member);
+            member.removed = true;
+            // 迁移中的客户端已从原环境移除，尚未添加到新环境
+            detach = !member.migrating;
+        }
+        if (detach) {
+            client.onDetach(envs[member.thread]);
+        }
+    }
+
+    /**
+     * 执行一次负载均衡：负载最高的线程超过过载阈值时，
+     * 迁移一个能减小最大负载的客户端（迁移后负载最接近两个线程的平均值）到负载最低的线程
+     *
+     * @return true，已迁移；false，无需或者无法迁移
+     */
+    public boolean rebalance() {
+        Member target;
+        GLEnv from;
+        int to;
+        synchronized (this) {
+            if (state != 1 || envs.length < 2) return false;
+            float[] loads = computeLoads();
+            int max = 0;
+            int min = 0;
+            for (int i = 1; i < loads.length; i++) {
+                if (loads[i] > loads[max]) max = i;
+                if (loads[i] < loads[min]) min = i;
+            }
+            if (loads[max] < overloadThreshold) return false;
+            float gap = loads[max] - loads[min];
+            long now = System.currentTimeMillis();
+            target = null;
+            float best = Float.MAX_VALUE;
+            for (Member member : members) {
+                if (member.thread != max || member.pinned || member.migrating) continue;
+                if (now - member.attachTime < migrationCooldown) continue;
+                float load = member.getLoad();
+                if (load <= 0 || load >= gap) continue; // 迁移后不会减小最大负载
+                float diff = Math.abs(gap / 2 - load);
+                if (diff < best) {
+                    best = diff;
+                    target = member;
+                }
+            }
+            if (null == target) return false;
+            from = envs[max];
+            to = min;
+            target.thread = to;
+            target.migrating = true;
+            target.outputs = null;
+            migrationCount++;
+            Log.d(TAG, String.format("rebalance: migrate %s, thread %s(%.2f) -> %s(%.2f)",
+                    target.client, max, loads[max], to, loads[to]));
+        }
+        Member member = target;
+        GLEnv env = envs[to];
+        member.client.onDetach(from);
+        // 原环境执行完移除动作（输出的surface已销毁）后，再在新环境创建，避免同一窗口同时连接两个surface
+        if (!from.runGLAction(() -> attach(member, env))) {
+            attach(member, env);
+        }
+        return true;
+    }
+
+    private void attach(Member member, GLEnv env) {
+        synchronized (this) {
+            if (member.removed || state == 2) return;
+        }
+        GLOutput<?>[] outputs = member.client.onAttach(env);
+        boolean detach;
+        synchronized (this) {
+            member.outputs = outputs;
+            member.attachTime = System.currentTimeMillis();
+            member.migrating = false;
+            // 创建期间被移除
+            detach = member.removed && state != 2;
+        }
+        if (detach) {
+            member.client.onDetach(env);
+        }
+    }
+
+    /**
+     * 选择负载最低的线程，未测量负载的客户端按已测量客户端的平均负载估算
+     */
+    private int selectThread() {
+        float[] loads = computeLoads();
+        int best = 0;
+        for (int i = 1; i < loads.length; i++) {
+            if (loads[i] < loads[best]) best = i;
+        }
+        return best;
+    }
+
+    private float[] computeLoads() {
+        float total = 0;
+        int measured = 0;
+        for (Member member : members) {
+            float load = member.getLoad();
+            if (load > 0) {
+                total += load;
+                measured++;
+            }
+        }
+        // 没有任何测量时，按客户端数量分配
+        float estimate = measured > 0 ? total / measured : 0.01f;
+        float[] loads = new float[envs.length];
+        for (Member member : members) {
+            float load = member.getLoad();
+            loads[member.thread] += load > 0 ? load : estimate;
+        }
+        return loads;
+    }
+
+    private Member findMember(Client client) {
+        for (Member member : members) {
+            if (member.client == client) return member;
+        }
+        return null;
+    }
+
+    private void balanceLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (state != 1) break;
+                    wait(balanceInterval > 0 ? balanceInterval : 0);
+                    if (state != 1) break;
+                    if (balanceInterval <= 0) continue;
+                }
+                rebalance();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    /**
+     * 获取组内共享的上下文，第一次调用时使用调用者主输出的EGLConfig创建，由环境的绘制线程调用
+     *
+     * @param display       display对象
+     * @param config        主输出的EGLConfig
+     * @param clientVersion 主输出上下文的客户端版本
+     * @return 共享上下文；未开启共享上下文或者创建失败时为null
+     */
+    synchronized Object obtainShareContext(Object display, Object config, int clientVersion) {
+        if (!sharedContextEnabled || state == 2) return null;
+        if (null == shareContext) {
+            shareContext = backend.eglCreateContext(display, config, null, new int[]{
+                    EGL14.EGL_CONTEXT_CLIENT_VERSION, clientVersion,
+                    EGL14.EGL_NONE,
+            });
+            if (null == shareContext) {
+                Log.w(TAG, "obtainShareContext: eglCreateContext failed: " + backend.eglGetError());
+                return null;
+            }
+            shareDisplay = display;
+        }
+        return shareContext;
+    }
+
+    /**
+     * 环境结束时调用，最后一个结束的环境销毁共享上下文并终止display
+     *
+     * @param display 环境的display对象，null表示未初始化
+     */
+    synchronized void onEnvEnded(Object display) {
+        endedCount++;
+        if (null == shareDisplay && null != display) {
+            shareDisplay = display;
+        }
+        if (endedCount < envs.length) return;
+        if (null != shareDisplay) {
+            if (null != shareContext) {
+                backend.eglDestroyContext(shareDisplay, shareContext);
+                shareContext = null;
+            }
+            backend.eglTerminate(shareDisplay);
+            shareDisplay = null;
+        }
+        Log.d(TAG, "onEnvEnded: all ended");
+    }
+
+    /**
+     * 获取线程数量
+     *
+     * @return 线程数量
+     */
+    public int getThreadCount() {
+        return envs.length;
+    }
+
+    /**
+     * 获取线程的环境
+     *
+     * @param thread 线程序号
+     * @return 环境
+     */
+    public GLEnv getEnv(int thread) {
+        return envs[thread];
+    }
+
+    /**
+     * 获取环境的线程序号
+     *
+     * @param env 环境
+     * @return 线程序号
+     */
+    int indexOf(GLEnv env) {
+        for (int i = 0; i < envs.length; i++) {
+            if (envs[i] == env) return i;
+        }
+        throw new IllegalArgumentException("Env not in group: " + env);
+    }
+
+    /**
+     * 获取客户端所在的环境
+     *
+     * @param client 客户端
+     * @return 环境；未添加时为null
+     */
+    public synchronized GLEnv getEnvOf(Client client) {
+        Member member = findMember(client);
+        return null == member ? null : envs[member.thread];
+    }
+
+    /**
+     * 获取线程的负载
+     *
+     * @param thread 线程序号
+     * @return 占用时间的比例，未测量的客户端按平均负载估算
+     */
+    public synchronized float getLoad(int thread) {
+        return computeLoads()[thread];
+    }
+
+    public synchronized long getMigrationCount() {
+        return migrationCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder loads = new StringBuilder();
+        float[] values = computeLoads();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) loads.append(", ");
+            loads.append(String.format("%.2f", values[i]));
+        }
+        return "GLEnvGroup{" +
+                "threadCount=" + envs.length +
+                ", clientCount=" + members.size() +
+                ", loads=[" + loads + ']' +
+                ", sharedContextEnabled=" + sharedContextEnabled +
+                ", migrationCount=" + migrationCount +
+                '}';
+    }
+
+    /**
+     * 环境组的客户端，通常对应一个显示
+     */
+    public interface Client {
+
+        /**
+         * 在分配到的环境中创建输出及实体对象，添加或者迁移时调用，可能在任意线程调用
+         *
+         * @param env 环境
+         * @return 客户端的输出，用于测量负载
+         */
+        GLOutput<?>[] onAttach(GLEnv env);
+
+        /**
+         * 销毁在环境中创建的输出及实体对象，移除或者迁移时调用，可能在任意线程调用
+         *
+         * @param env 环境
+         */
+        void onDetach(GLEnv env);
+    }
+
+    private static final class Member {
+
+        final Client client;
+        final boolean pinned; // 是否固定线程
+        int thread; // 所在线程序号
+        GLOutput<?>[] outputs; // 客户端的输出
+        long attachTime; // 最近一次创建的时间
+        boolean migrating; // 是否正在创建或者迁移
+        boolean removed; // 是否已移除
+
+        Member(Client client, boolean pinned) {
+            this.client = client;
+            this.pinned = pinned;
+        }
+
+        float getLoad() {
+            GLOutput<?>[] outputs = this.outputs;
+            if (null == outputs) return 0;
+            float load = 0;
+            for (GLOutput<?> output : outputs) {
+                load += output.getLoad();
+            }
+            return load;
+        }
+    }
+}
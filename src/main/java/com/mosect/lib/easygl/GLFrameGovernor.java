@@ -0,0 +1,341 @@
+package com.mosect.lib.easygl;
+
+import android.util.Log;
+
+/**
+ * 自适应帧率及动态分辨率控制器，通过{@link GLEnv#setFrameGovernor(GLFrameGovernor) GLEnv.setFrameGovernor}设置
+ * 根据实测帧耗时（动作执行、绘制及提交帧，不含帧间等待）的指数滑动平均调整目标帧率及绘制分辨率：
+ * 连续若干帧超出帧预算时降级，连续较长时间低于更高档位预算的一定比例时升级，每次调整后冷却若干帧，避免来回振荡
+ * 分辨率缩小时，环境先绘制到缩小的离屏目标，提交帧时再放大到输出
+ * 默认策略由{@link #setPolicy(int) setPolicy}选择，子类可重写{@link #onDegrade() onDegrade}及{@link #onUpgrade() onUpgrade}自定义
+ * 注意：{@link #update(long) update}只在绘制线程调用；档位可在任意线程查询
+ */
+public class GLFrameGovernor {
+
+    private static final String TAG = "GL/FrameGovernor";
+
+    /**
+     * 策略：优先保持画质，先降低帧率，帧率降到最低后再降低分辨率；升级时先恢复分辨率
+     */
+    public static final int POLICY_QUALITY = 0;
+    /**
+     * 策略：优先保持帧率（延迟），先降低分辨率，分辨率降到最低后再降低帧率；升级时先恢复帧率
+     */
+    public static final int POLICY_LATENCY = 1;
+
+    private final int[] fpsLevels; // 帧率档位，从高到低
+    private final float[] scaleLevels; // 分辨率缩放档位，从高到低
+    private volatile int policy = POLICY_QUALITY; // 策略
+    private volatile int fpsLevel = 0; // 当前帧率档位
+    private volatile int scaleLevel = 0; // 当前分辨率档位
+    private int maxFps = 0; // 环境设置的最大帧率，由环境每帧更新，0表示不限制
+
+    private float downThreshold = 0.95f; // 平均耗时超过预算的此比例时降级
+    private float upThreshold = 0.7f; // 平均耗时低于更高档位预算的此比例时升级
+    private int downFrames = 10; // 连续超出多少帧后降级
+    private int upFrames = 90; // 连续低于多少帧后升级
+    private int cooldownFrames = 30; // 调整后冷却的帧数
+    private float smoothing = 0.1f; // 指数滑动平均系数
+
+    private double averageTime = -1; // 平均帧耗时，单位：纳秒
+    private int overCount = 0; // 连续超出预算的帧数
+    private int underCount = 0; // 连续低于升级阈值的帧数
+    private int cooldown = 0; // 剩余冷却帧数
+    private volatile long changeCount = 0; // 调整次数
+
+    /**
+     * 使用默认档位：帧率60、45、30、24、20、15；分辨率1、0.85、0.7、0.5
+     */
+    public GLFrameGovernor() {
+        this(new int[]{60, 45, 30, 24, 20, 15}, new float[]{1f, 0.85f, 0.7f, 0.5f});
+    }
+
+    /**
+     * @param fpsLevels   帧率档位，从高到低
+     * @param scaleLevels 分辨率缩放档位，从高到低，范围：(0, 1]；只有{1}表示不调整分辨率
+     */
+    public GLFrameGovernor(int[] fpsLevels, float[] scaleLevels) {
+        if (fpsLevels.length == 0 || scaleLevels.length == 0) {
+            throw new IllegalArgumentException("Empty levels");
+        }
+        for (int i = 0; i < fpsLevels.length; i++) {
+            if (fpsLevels[i] <= 0 || (i > 0 && fpsLevels[i] >= fpsLevels[i - 1])) {
+                throw new IllegalArgumentException("Invalid fps levels");
+            }
+        }
+        for (int i = 0; i < scaleLevels.length; i++) {
+            if (scaleLevels[i] <= 0 || scaleLevels[i] > 1 || (i > 0 && scaleLevels[i] >= scaleLevels[i - 1])) {
+                throw new IllegalArgumentException("Invalid scale levels");
+            }
+        }
+        this.fpsLevels = fpsLevels.clone();
+        this.scaleLevels = scaleLevels.clone();
+    }
+
+    /**
+     * 记录一帧的耗时并调整档位，由环境每帧调用；也可直接调用模拟负载
+     *
+     * @param frameTime 帧耗时，即CPU工作耗时，不包括交换缓冲区时阻塞等待的耗时，单位：纳秒
+     * @return true，档位已改变；false，未改变
+     */
+    public boolean update(long frameTime) {
+        skipLevelsAboveMax();
+        if (averageTime < 0) {
+            averageTime = frameTime;
+        } else {
+            averageTime += (frameTime - averageTime) * smoothing;
+        }
+        if (cooldown > 0) {
+            cooldown--;
+            return false;
+        }
+        double budget = getFrameBudget();
+        if (averageTime > budget * downThreshold) {
+            underCount = 0;
+            if (++overCount >= downFrames) {
+                overCount = 0;
+                return changed(onDegrade());
+            }
+        } else if (averageTime < budget * upThreshold) {
+            overCount = 0;
+            if (++underCount >= upFrames) {
+                underCount = 0;
+                return changed(onUpgrade());
+            }
+        } else {
+            overCount = 0;
+            underCount = 0;
+        }
+        return false;
+    }
+
+    private boolean changed(boolean changed) {
+        if (changed) {
+            cooldown = cooldownFrames;
+            changeCount++;
+            Log.d(TAG, String.format("changed: fps=%s, scale=%s, averageTime=%.2fms",
+                    getTargetFps(), getResolutionScale(), averageTime / 1000000));
+            onLevelChanged(getTargetFps(), getResolutionScale());
+        }
+        return changed;
+    }
+
+    /**
+     * 超出环境最大帧率的档位没有意义，直接跳过
+     */
+    private void skipLevelsAboveMax() {
+        int maxFps = this.maxFps;
+        if (maxFps <= 0) return;
+        int level = fpsLevel;
+        while (level < fpsLevels.length - 1 && fpsLevels[level] > maxFps) {
+            level++;
+        }
+        fpsLevel = level;
+    }
+
+    /**
+     * 需要降级时调用，默认按策略降低帧率或者分辨率
+     *
+     * @return true，已降级；false，已是最低档位
+     */
+    protected boolean onDegrade() {
+        if (policy == POLICY_LATENCY) {
+            return lowerScale() || lowerFps();
+        }
+        return lowerFps() || lowerScale();
+    }
+
+    /**
+     * 可以升级时调用，默认按策略恢复分辨率或者帧率，预计升级后仍满足预算才升级
+     *
+     * @return true，已升级；false，未升级
+     */
+    protected boolean onUpgrade() {
+        if (policy == POLICY_LATENCY) {
+            return raiseFps() || raiseScale();
+        }
+        return raiseScale() || raiseFps();
+    }
+
+    /**
+     * 档位改变时调用，在绘制线程执行
+     *
+     * @param fps   目标帧率
+     * @param scale 分辨率缩放
+     */
+    protected void onLevelChanged(int fps, float scale) {
+    }
+
+    /**
+     * 降低一档帧率
+     *
+     * @return true，已降低；false，已是最低档位
+     */
+    protected final boolean lowerFps() {
+        if (fpsLevel >= fpsLevels.length - 1) return false;
+        fpsLevel++;
+        return true;
+    }
+
+    /**
+     * 降低一档分辨率
+     *
+     * @return true，已降低；false，已是最低档位
+     */
+    protected final boolean lowerScale() {
+        if (scaleLevel >= scaleLevels.length - 1) return false;
+        scaleLevel++;
+        return true;
+    }
+
+    /**
+     * 升高一档帧率，预计平均耗时低于新预算的升级比例才升高
+     *
+     * @return true，已升高；false，已是最高档位或者预计超出预算
+     */
+    protected final boolean raiseFps() {
+        if (fpsLevel == 0) return false;
+        int nextFps = fpsLevels[fpsLevel - 1];
+        if (maxFps > 0 && nextFps > maxFps) return false;
+        if (averageTime >= 1000000000.0 / nextFps * upThreshold) return false;
+        fpsLevel--;
+        return true;
+    }
+
+    /**
+     * 升高一档分辨率，按像素数量估算耗时，预计低于预算的升级比例才升高
+     *
+     * @return true，已升高；false，已是最高档位或者预计超出预算
+     */
+    protected final boolean raiseScale() {
+        if (scaleLevel == 0) return false;
+        float ratio = scaleLevels[scaleLevel - 1] / scaleLevels[scaleLevel];
+        if (averageTime * ratio * ratio >= getFrameBudget() * upThreshold) return false;
+        scaleLevel--;
+        return true;
+    }
+
+    /**
+     * 设置策略
+     *
+     * @param policy {@link #POLICY_QUALITY POLICY_QUALITY}或者{@link #POLICY_LATENCY POLICY_LATENCY}
+     */
+    public void setPolicy(int policy) {
+        this.policy = policy;
+    }
+
+    public int getPolicy() {
+        return policy;
+    }
+
+    /**
+     * 设置降级及升级阈值
+     *
+     * @param downThreshold 平均耗时超过预算的此比例时降级，默认：0.95
+     * @param downFrames    连续超出多少帧后降级，默认：10
+     * @param upThreshold   平均耗时低于更高档位预算的此比例时升级，默认：0.7
+     * @param upFrames      连续低于多少帧后升级，默认：90
+     */
+    public void setThresholds(float downThreshold, int downFrames, float upThreshold, int upFrames) {
+        if (upThreshold >= downThreshold) {
+            throw new IllegalArgumentException("upThreshold must be less than downThreshold");
+        }
+        this.downThreshold = downThreshold;
+        this.downFrames = Math.max(1, downFrames);
+        this.upThreshold = upThreshold;
+        this.upFrames = Math.max(1, upFrames);
+    }
+
+    /**
+     * 设置调整后的冷却帧数
+     *
+     * @param cooldownFrames 冷却帧数，默认：30
+     */
+    public void setCooldownFrames(int cooldownFrames) {
+        this.cooldownFrames = Math.max(0, cooldownFrames);
+    }
+
+    /**
+     * 设置平均帧耗时的指数滑动平均系数
+     *
+     * @param smoothing 系数，范围：(0, 1]，越大越灵敏，默认：0.1
+     */
+    public void setSmoothing(float smoothing) {
+        if (smoothing <= 0 || smoothing > 1) throw new IllegalArgumentException("Invalid smoothing: " + smoothing);
+        this.smoothing = smoothing;
+    }
+
+    /**
+     * 设置环境的最大帧率，由环境每帧调用
+     *
+     * @param maxFps 最大帧率，0表示不限制
+     */
+    void setMaxFps(int maxFps) {
+        this.maxFps = Math.max(0, maxFps);
+    }
+
+    /**
+     * 重置到最高档位
+     */
+    public void reset() {
+        fpsLevel = 0;
+        scaleLevel = 0;
+        averageTime = -1;
+        overCount = 0;
+        underCount = 0;
+        cooldown = 0;
+    }
+
+    /**
+     * 获取目标帧率
+     *
+     * @return 目标帧率，不超过环境的最大帧率
+     */
+    public int getTargetFps() {
+        int fps = fpsLevels[fpsLevel];
+        int maxFps = this.maxFps;
+        return maxFps > 0 ? Math.min(fps, maxFps) : fps;
+    }
+
+    /**
+     * 获取分辨率缩放
+     *
+     * @return 缩放，范围：(0, 1]
+     */
+    public float getResolutionScale() {
+        return scaleLevels[scaleLevel];
+    }
+
+    /**
+     * 获取当前档位的帧预算
+     *
+     * @return 帧预算，单位：纳秒
+     */
+    public double getFrameBudget() {
+        return 1000000000.0 / getTargetFps();
+    }
+
+    /**
+     * 获取平均帧耗时
+     *
+     * @return 平均帧耗时，单位：纳秒；没有样本时为0
+     */
+    public long getAverageFrameTime() {
+        return averageTime < 0 ? 0 : (long) averageTime;
+    }
+
+    public long getChangeCount() {
+        return changeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "GLFrameGovernor{" +
+                "policy=" + policy +
+                ", targetFps=" + getTargetFps() +
+                ", resolutionScale=" + getResolutionScale() +
+                ", averageFrameTime=" + getAverageFrameTime() +
+                ", changeCount=" + changeCount +
+                '}';
+    }
+}
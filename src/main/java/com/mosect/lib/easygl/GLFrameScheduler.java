@@ -0,0 +1,229 @@
+package com.mosect.lib.easygl;
+
+/**
+ * 帧调度器，按绝对时间点控制帧率，不会因为动作执行耗时或者sleep精度产生累计误差
+ * 错过的帧直接跳过，不会连续补帧
+ */
+public class GLFrameScheduler {
+
+    private final static long SECOND_LENGTH = 1000 * 1000 * 1000L;
+
+    /**
+     * 系统时钟
+     */
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+        }
+    };
+
+    private final Clock clock; // 时钟
+    private volatile int fps; // 目标帧率：大于0，控制帧率；否则，不限制帧率
+    private volatile long spinThreshold = 0; // 剩余时间小于此值时自旋等待，单位：纳秒
+    private long nextFrameTime = -1; // 下一帧的绝对时间，小于0表示下一帧立即开始
+    private volatile long skippedFrames = 0; // 跳过的帧数
+    private long windowStartTime = -1; // 帧率统计窗口开始时间
+    private int windowFrames = 0; // 帧率统计窗口内的帧数
+    private volatile float measuredFps = 0; // 实测帧率
+
+    public GLFrameScheduler() {
+        this(SYSTEM_CLOCK);
+    }
+
+    public GLFrameScheduler(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * 等待下一帧开始，返回帧开始时间，并统计实测帧率；只能在绘制线程调用
+     *
+     * @return 帧开始时间，单位：纳秒
+     */
+    public long awaitFrame() {
+        long now = advanceFrame();
+        countFrame(now);
+        return now;
+    }
+
+    /**
+     * 等待下一帧开始，不统计实测帧率；环境在实际绘制帧时调用{@link #countFrame(long) countFrame}统计
+     *
+     * @return 帧开始时间，单位：纳秒
+     */
+    long advanceFrame() {
+        int fps = this.fps;
+        long now = clock.nanoTime();
+        if (fps <= 0) {
+            // 不限制帧率
+            nextFrameTime = -1;
+            return now;
+        }
+        long interval = SECOND_LENGTH / fps;
+        if (nextFrameTime < 0) {
+            nextFrameTime = now;
+        }
+        now = sleepUntil(nextFrameTime);
+        // 超过一个帧间隔，跳过错过的帧
+        long late = now - nextFrameTime;
+        if (late >= interval) {
+            long missed = late / interval;
+            skippedFrames += missed;
+            nextFrameTime += missed * interval;
+        }
+        nextFrameTime += interval;
+        return now;
+    }
+
+    /**
+     * 等待到指定时间，剩余时间小于自旋阈值时自旋等待；只能在绘制线程调用
+     *
+     * @param time 绝对时间，单位：纳秒
+     * @return 当前时间，单位：纳秒
+     */
+    public long sleepUntil(long time) {
+        long now = clock.nanoTime();
+        while (time - now > 0) {
+            long remain = time - now;
+            long spinThreshold = this.spinThreshold;
+            if (remain > spinThreshold) {
+                try {
+                    clock.sleep(remain - spinThreshold);
+                } catch (InterruptedException ignored) {
+                }
+            } else {
+                Thread.yield();
+            }
+            now = clock.nanoTime();
+        }
+        return now;
+    }
+
+    /**
+     * 获取下一帧的开始时间，不等待
+     *
+     * @param now 当前时间
+     * @return 下一帧的绝对时间，不限制帧率或者下一帧立即开始时返回now
+     */
+    long getNextFrameTime(long now) {
+        return fps <= 0 || nextFrameTime < 0 ? now : nextFrameTime;
+    }
+
+    /**
+     * 获取当前时间
+     *
+     * @return 当前时间，单位：纳秒
+     */
+    long now() {
+        return clock.nanoTime();
+    }
+
+    /**
+     * 重置调度，下一帧立即开始；绘制线程空闲挂起后调用，避免挂起时间被计算为掉帧
+     */
+    public void reset() {
+        nextFrameTime = -1;
+        windowStartTime = -1;
+        windowFrames = 0;
+    }
+
+    /**
+     * 统计一帧，用于计算实测帧率
+     *
+     * @param now 帧开始时间
+     */
+    void countFrame(long now) {
+        if (windowStartTime < 0) {
+            windowStartTime = now;
+            windowFrames = 0;
+            return;
+        }
+        windowFrames++;
+        long duration = now - windowStartTime;
+        if (duration >= SECOND_LENGTH) {
+            measuredFps = windowFrames * (float) SECOND_LENGTH / duration;
+            windowStartTime = now;
+            windowFrames = 0;
+        }
+    }
+
+    /**
+     * 设置目标帧率
+     *
+     * @param fps 帧率：大于0，控制帧率；否则，不限制帧率
+     */
+    public void setFps(int fps) {
+        this.fps = fps;
+    }
+
+    /**
+     * 获取目标帧率
+     *
+     * @return 目标帧率
+     */
+    public int getFps() {
+        return fps;
+    }
+
+    /**
+     * 设置自旋阈值，剩余时间小于此值时不再sleep，改为自旋等待，提高帧时间精度；0表示只使用sleep
+     *
+     * @param spinThreshold 自旋阈值，单位：纳秒
+     */
+    public void setSpinThreshold(long spinThreshold) {
+        this.spinThreshold = Math.max(0, spinThreshold);
+    }
+
+    /**
+     * 获取自旋阈值
+     *
+     * @return 自旋阈值，单位：纳秒
+     */
+    public long getSpinThreshold() {
+        return spinThreshold;
+    }
+
+    /**
+     * 获取实测帧率，每秒统计一次
+     *
+     * @return 实测帧率
+     */
+    public float getMeasuredFps() {
+        return measuredFps;
+    }
+
+    /**
+     * 获取因超时而跳过的帧数
+     *
+     * @return 跳过的帧数
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * 时钟，可替换成模拟时钟进行测试
+     */
+    public interface Clock {
+
+        /**
+         * 获取当前时间
+         *
+         * @return 当前时间，单位：纳秒
+         */
+        long nanoTime();
+
+        /**
+         * 休眠
+         *
+         * @param nanos 休眠时长，单位：纳秒
+         * @throws InterruptedException 线程中断
+         */
+        void sleep(long nanos) throws InterruptedException;
+    }
+}
@@ -0,0 +1,219 @@
+package com.mosect.lib.easygl;
+
+import java.util.Arrays;
+
+/**
+ * 帧耗时统计，由绘制线程每帧填充并通过{@link Listener Listener}回调
+ * 同一个对象每帧重复使用，回调之外不能保留或者读取单帧数据；滚动分位数统计可在任意线程查询
+ */
+public class GLFrameStats {
+
+    private static final int HISTOGRAM_CAPACITY = 256;
+
+    private final GLTimeHistogram frameTimes = new GLTimeHistogram(HISTOGRAM_CAPACITY); // 帧耗时
+    private final GLTimeHistogram actionTimes = new GLTimeHistogram(HISTOGRAM_CAPACITY); // 动作执行耗时
+    private final GLTimeHistogram swapTimes = new GLTimeHistogram(HISTOGRAM_CAPACITY); // 交换缓冲区耗时
+
+    long frameIndex; // 帧序号
+    long frameTime; // 帧总耗时，包含动作执行
+    long actionTime; // 动作执行耗时
+    int actionCount; // 执行的动作数量
+    private GLScene scene = GLScene.EMPTY; // 当前帧的场景快照
+    long[] outputMakeCurrentTimes = new long[0]; // 每个输出切换耗时
+    long[] outputSwapTimes = new long[0]; // 每个输出交换缓冲区耗时
+    long[] objectDrawTimes = new long[0]; // 每个shader及实体绘制耗时，所有输出累计
+
+    /**
+     * 开始新的一帧，只在场景变大时分配内存
+     *
+     * @param scene 场景快照
+     */
+    void begin(GLScene scene) {
+        this.scene = scene;
+        int outputCount = scene.outputs.length;
+        if (outputMakeCurrentTimes.length < outputCount) {
+            outputMakeCurrentTimes = new long[outputCount];
+            outputSwapTimes = new long[outputCount];
+        } else {
+            Arrays.fill(outputMakeCurrentTimes, 0, outputCount, 0);
+            Arrays.fill(outputSwapTimes, 0, outputCount, 0);
+        }
+        int objectCount = getObjectCount();
+        if (objectDrawTimes.length < objectCount) {
+            objectDrawTimes = new long[objectCount];
+        } else {
+            Arrays.fill(objectDrawTimes, 0, objectCount, 0);
+        }
+    }
+
+    /**
+     * 累计对象绘制耗时
+     *
+     * @param index 对象位置
+     * @param start 开始时间
+     * @return 当前时间，作为下一个对象的开始时间
+     */
+    long lapObject(int index, long start) {
+        long now = System.nanoTime();
+        objectDrawTimes[index] += now - start;
+        return now;
+    }
+
+    /**
+     * 结束当前帧，记录滚动统计
+     */
+    void end() {
+        frameTimes.record(frameTime);
+        actionTimes.record(actionTime);
+        long swapTime = 0;
+        for (int i = 0; i < scene.outputs.length; i++) {
+            swapTime += outputSwapTimes[i];
+        }
+        swapTimes.record(swapTime);
+    }
+
+    /**
+     * 获取帧序号
+     *
+     * @return 帧序号
+     */
+    public long getFrameIndex() {
+        return frameIndex;
+    }
+
+    /**
+     * 获取帧总耗时，包含动作执行
+     *
+     * @return 帧总耗时，单位：纳秒
+     */
+    public long getFrameTime() {
+        return frameTime;
+    }
+
+    /**
+     * 获取动作执行耗时
+     *
+     * @return 动作执行耗时，单位：纳秒
+     */
+    public long getActionTime() {
+        return actionTime;
+    }
+
+    /**
+     * 获取执行的动作数量
+     *
+     * @return 动作数量
+     */
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    /**
+     * 获取输出数量
+     *
+     * @return 输出数量
+     */
+    public int getOutputCount() {
+        return scene.outputs.length;
+    }
+
+    /**
+     * 获取输出对象
+     *
+     * @param index 输出位置
+     * @return 输出对象
+     */
+    public GLOutput<?> getOutput(int index) {
+        return scene.outputs[index];
+    }
+
+    /**
+     * 获取输出切换耗时（makeCurrent）
+     *
+     * @param index 输出位置
+     * @return 切换耗时，单位：纳秒；输出无效时为0
+     */
+    public long getOutputMakeCurrentTime(int index) {
+        return outputMakeCurrentTimes[index];
+    }
+
+    /**
+     * 获取输出交换缓冲区耗时，只包括eglSwapBuffers，不含呈现离屏目标及像素回读
+     *
+     * @param index 输出位置
+     * @return 交换缓冲区耗时，单位：纳秒；输出无效时为0
+     */
+    public long getOutputSwapTime(int index) {
+        return outputSwapTimes[index];
+    }
+
+    /**
+     * 获取绘制对象数量，包括shader及实体对象
+     *
+     * @return 绘制对象数量
+     */
+    public int getObjectCount() {
+        return scene.shaders.length + scene.objects.length;
+    }
+
+    /**
+     * 获取绘制对象，先为shader，后为实体对象
+     *
+     * @param index 对象位置
+     * @return 绘制对象
+     */
+    public GLObject<?> getObject(int index) {
+        int shaderCount = scene.shaders.length;
+        return index < shaderCount ? scene.shaders[index] : scene.objects[index - shaderCount];
+    }
+
+    /**
+     * 获取对象绘制耗时（dispatchDraw），所有输出累计
+     *
+     * @param index 对象位置
+     * @return 绘制耗时，单位：纳秒
+     */
+    public long getObjectDrawTime(int index) {
+        return objectDrawTimes[index];
+    }
+
+    /**
+     * 获取帧耗时滚动统计
+     *
+     * @return 帧耗时统计
+     */
+    public GLTimeHistogram getFrameTimes() {
+        return frameTimes;
+    }
+
+    /**
+     * 获取动作执行耗时滚动统计
+     *
+     * @return 动作执行耗时统计
+     */
+    public GLTimeHistogram getActionTimes() {
+        return actionTimes;
+    }
+
+    /**
+     * 获取交换缓冲区耗时滚动统计，所有输出累计
+     *
+     * @return 交换缓冲区耗时统计
+     */
+    public GLTimeHistogram getSwapTimes() {
+        return swapTimes;
+    }
+
+    /**
+     * 帧统计监听器，在绘制线程每帧结束时回调
+     */
+    public interface Listener {
+
+        /**
+         * 帧统计完成
+         *
+         * @param stats 帧统计，仅在回调期间有效
+         */
+        void onFrameStats(GLFrameStats stats);
+    }
+}
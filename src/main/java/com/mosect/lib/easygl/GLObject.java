@@ -12,10 +12,25 @@ public class GLObject<T extends GLContent> {
 
     private static final String TAG = "GL/Object";
 
+    /**
+     * 默认层，实体对象默认所在的层
+     */
+    public static final int LAYER_DEFAULT = 1;
+    /**
+     * 所有层
+     */
+    public static final int LAYER_ALL = 0xFFFFFFFF;
+
     private final GLEnv env; // 环境
     private String name; // 实体名称，仅作为标记使用，无其他用处
     private boolean attached; // 是否已依附到环境
     private T content; // 内容
+    private int layerMask = LAYER_DEFAULT; // 所在层掩码，只在绘制线程修改
+    private GLOutput<?>[] targetOutputs; // 指定绘制的输出，null表示不限制；只在绘制线程修改
+    private GLCommandList commandList; // 本帧记录命令的列表，null表示未记录
+    private int commandGeneration; // 记录时列表的版本
+    private int commandStart; // 命令段开始位置
+    private int commandEnd; // 命令段结束位置
 
     public GLObject(GLEnv env) {
         this.env = env;
@@ -77,7 +92,60 @@ public class GLObject<T extends GLContent> {
         if (null != content) {
             content.drawContent();
         }
-        onGLDraw();
+        GLCommandList list = commandList;
+        if (null != list && list.getGeneration() == commandGeneration) {
+            // 准备阶段已记录命令，只回放
+            list.replay(this, commandStart, commandEnd);
+        } else {
+            onGLDraw();
+        }
+    }
+
+    /**
+     * 通知实体，记录绘制命令，在准备线程或者绘制线程调用
+     *
+     * @param list 当前线程的命令列表
+     * @return true，已记录；false，未记录，绘制时调用{@link #onGLDraw() onGLDraw}
+     */
+    boolean dispatchPrepare(GLCommandList list) {
+        int start = list.position();
+        int floatStart = list.floatPosition();
+        int refStart = list.refPosition();
+        boolean recorded;
+        try {
+            recorded = onPrepare(list);
+        } catch (Exception e) {
+            Log.w(TAG, getPrintName() + "/onPrepare: ", e);
+            recorded = false;
+        }
+        if (!recorded) {
+            list.rollback(start, floatStart, refStart);
+            commandList = null;
+            return false;
+        }
+        commandList = list;
+        commandGeneration = list.getGeneration();
+        commandStart = start;
+        commandEnd = list.position();
+        return true;
+    }
+
+    /**
+     * 通知实体，提交渲染队列绘制项
+     *
+     * @param queue 渲染队列
+     */
+    void dispatchSubmit(GLRenderQueue queue) {
+        onGLSubmit(queue);
+    }
+
+    /**
+     * 通知实体，绘制渲染队列中的绘制项
+     *
+     * @param tag 绘制项标记
+     */
+    void dispatchDrawItem(int tag) {
+        onGLDrawItem(tag);
     }
 
     /**
@@ -100,6 +168,82 @@ public class GLObject<T extends GLContent> {
         });
     }
 
+    /**
+     * 设置所在层，实体对象只绘制到渲染层掩码与之相交的输出，参考{@link GLOutput#setRenderMask(int) setRenderMask}
+     * 注意：此方法不会立刻生效，在下一帧发布场景时预先计算每个输出的绘制列表
+     *
+     * @param layerMask 层掩码，每一位表示一层，默认：{@link #LAYER_DEFAULT LAYER_DEFAULT}
+     */
+    public void setLayerMask(int layerMask) {
+        env.runGLAction(() -> {
+            if (this.layerMask != layerMask) {
+                this.layerMask = layerMask;
+                env.invalidateScene();
+            }
+        });
+    }
+
+    /**
+     * 获取所在层，只能在绘制线程调用
+     *
+     * @return 层掩码
+     */
+    public int getLayerMask() {
+        return layerMask;
+    }
+
+    /**
+     * 指定实体对象绘制的输出，与层掩码同时生效
+     * 注意：此方法不会立刻生效，在下一帧发布场景时预先计算每个输出的绘制列表
+     *
+     * @param outputs 输出对象，null或者为空表示不限制
+     */
+    public void setTargetOutputs(GLOutput<?>... outputs) {
+        GLOutput<?>[] targets = null == outputs || outputs.length == 0 ? null : outputs.clone();
+        env.runGLAction(() -> {
+            this.targetOutputs = targets;
+            env.invalidateScene();
+        });
+    }
+
+    /**
+     * 报告本帧修改的区域，开启{@link GLOutput#setPartialUpdateEnabled(boolean) 局部更新}的输出只重绘修改的区域，
+     * 没有修改时跳过绘制及交换缓冲区；多次调用的区域会合并
+     * 注意：只能在绘制线程调用，例如在动作或者{@link #onFrameStart() onFrameStart}中调用
+     *
+     * @param x      左下角x，输出窗口坐标，原点在左下角
+     * @param y      左下角y
+     * @param width  宽
+     * @param height 高
+     */
+    public void invalidateRect(int x, int y, int width, int height) {
+        env.addDamage(this, x, y, width, height, false);
+    }
+
+    /**
+     * 报告本帧需要重绘整个输出，参考{@link #invalidateRect(int, int, int, int) invalidateRect}
+     * 注意：只能在绘制线程调用
+     */
+    public void invalidate() {
+        env.addDamage(this, 0, 0, 0, 0, true);
+    }
+
+    /**
+     * 判断是否绘制到输出，发布场景时调用
+     *
+     * @param output 输出对象
+     * @return true，绘制；false，不绘制
+     */
+    boolean isDrawnTo(GLOutput<?> output) {
+        if ((layerMask & output.getRenderMask()) == 0) return false;
+        GLOutput<?>[] targets = targetOutputs;
+        if (null == targets) return true;
+        for (GLOutput<?> target : targets) {
+            if (target == output) return true;
+        }
+        return false;
+    }
+
     /**
      * 获取环境对象
      *
@@ -148,6 +292,44 @@ public class GLObject<T extends GLContent> {
     protected void onGLDraw() {
     }
 
+    /**
+     * 开启{@link GLEnv#getCommandPreparer() 命令准备}时，每帧绘制前在准备线程调用，记录本帧的绘制命令，
+     * 绘制时只回放命令，不再调用{@link #onGLDraw() onGLDraw}；输出有多个时，同一份命令回放到每个输出
+     * 注意：不能调用GL及状态缓存，只能读取在绘制线程（动作、onFrameStart等）中准备好的数据；多个对象并行准备
+     *
+     * @param commands 命令列表
+     * @return true，已记录命令；false，不使用命令，绘制时调用onGLDraw，默认
+     */
+    protected boolean onPrepare(GLCommandList commands) {
+        return false;
+    }
+
+    /**
+     * 回放{@link GLCommandList#call(int) call}命令时调用，在绘制线程执行
+     *
+     * @param tag 记录时的标记
+     */
+    protected void onGLReplay(int tag) {
+    }
+
+    /**
+     * 渲染队列模式下，提交绘制项时调用；默认提交一个排序键为0的不透明绘制项，绘制顺序与普通模式一致
+     *
+     * @param queue 渲染队列
+     */
+    protected void onGLSubmit(GLRenderQueue queue) {
+        queue.submit(this, 0, 0);
+    }
+
+    /**
+     * 渲染队列模式下，绘制项绘制时调用；默认绘制内容并调用{@link #onGLDraw() onGLDraw}
+     *
+     * @param tag 提交时的绘制项标记
+     */
+    protected void onGLDrawItem(int tag) {
+        dispatchDraw();
+    }
+
     /**
      * 帧开始
      */
@@ -1,10 +1,6 @@
 package com.mosect.lib.easygl;
 
 import android.opengl.EGL14;
-import android.opengl.EGLConfig;
-import android.opengl.EGLContext;
-import android.opengl.EGLSurface;
-import android.opengl.GLES20;
 import android.util.Log;
 
 /**
@@ -16,10 +12,45 @@ public class GLOutput<T extends GLSurface> extends GLObject<T> {
 
     private static final String TAG = "GL/Output";
 
-    private EGLConfig eglConfig = null;
-    private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+    static final int EGL_BUFFER_AGE_EXT = 0x313D; // 缓冲区年龄，EGL_EXT_buffer_age及EGL_KHR_partial_update
+    private static final int MAX_BUFFER_AGE = 3; // 记录修改区域的帧数，超出时重绘整个输出
+    private static final int CLIENT_VERSION = 2; // 主输出创建上下文时请求的客户端版本
+
+    private Object eglConfig = null;
+    private Object eglContext = null;
+    private int eglClientVersion = CLIENT_VERSION; // EGLContext的客户端版本
     private boolean selfContext = false; // 表示是否为自己内部创建的OpenGL上下文
-    private EGLSurface eglSurface = EGL14.EGL_NO_SURFACE;
+    private Object eglSurface = null;
+    private int renderMask = LAYER_ALL; // 渲染层掩码，只在绘制线程修改
+    private GLReadback readback; // 像素回读，只在绘制线程访问
+    private volatile int fps = 0; // 独立帧率：大于0，按此帧率绘制；否则，跟随环境帧率
+    private volatile int frameDivisor = 1; // 跟随环境帧率时，每隔多少个环境帧绘制一次
+    private long nextFrameTime = -1; // 独立帧率下一帧的绝对时间，小于0表示立即绘制
+    private long tickCount = 0; // 跟随环境帧率时经过的环境帧数
+    boolean frameDue = true; // 本轮是否需要绘制，由环境每轮计算
+    private long windowStartTime = -1; // 帧率统计窗口开始时间
+    private int windowFrames = 0; // 帧率统计窗口内的帧数
+    private volatile float measuredFps = 0; // 实测帧率
+    private volatile long skippedFrames = 0; // 独立帧率下因超时而跳过的帧数
+    private volatile long averageDrawTime = -1; // 平均绘制耗时（切换、绘制及提交帧），小于0表示没有样本
+    private volatile float load = 0; // 负载，每秒统计一次
+    private long loadWindowStartTime = -1; // 负载统计窗口开始时间
+    private long loadWindowTime = 0; // 负载统计窗口内的绘制耗时，包括跳过交换的帧
+    private volatile boolean partialUpdateEnabled = false; // 是否开启局部更新
+    private final GLDamageRegion damage = new GLDamageRegion(); // 本帧修改区域，只在绘制线程访问
+    private final GLDamageRegion redrawRegion = new GLDamageRegion(); // 本帧重绘区域，合并缓冲区年龄内的修改区域
+    private GLDamageRegion[] damageHistory; // 之前帧的修改区域，第0个为上一帧
+    private final int[] damageRects = new int[GLDamageRegion.MAX_RECTS * 4]; // EGL矩形列表
+    private long damageSceneVersion = -1; // 上一次局部更新的场景版本
+    private int damageWidth = 0; // 上一次局部更新的输出宽
+    private int damageHeight = 0; // 上一次局部更新的输出高
+    private boolean partialFrame = false; // 本帧是否为局部更新帧
+    private boolean partialRedraw = false; // 本帧是否只重绘部分区域
+    private boolean damageRegionSet = false; // 本帧是否已设置EGL修改区域
+    private long swapTime = 0; // 最近一次交换缓冲区耗时，只在绘制线程访问
+    private volatile long partialFrameCount = 0; // 只重绘部分区域，并且修改区域已告知EGL的帧数
+    private volatile long fullFrameCount = 0; // 局部更新开启时重绘整个输出的帧数
+    private volatile long skippedSwapCount = 0; // 没有修改而跳过交换的帧数
 
     public GLOutput(GLEnv env) {
         super(env);
@@ -30,6 +61,7 @@ public class GLOutput<T extends GLSurface> extends GLObject<T> {
         selfContext = false;
         GLSurface content = getContent();
         if (null != content) {
+            GLBackend backend = getEnv().getBackend();
             // 触发内容初始化
             content.initContent(this);
             // 获取主输出
@@ -48,47 +80,52 @@ public class GLOutput<T extends GLSurface> extends GLObject<T> {
                         EGL14.EGL_SURFACE_TYPE, surfaceType,
                         EGL14.EGL_NONE,
                 };
-                EGLConfig[] configs = new EGLConfig[1];
-                int[] numConfigs = new int[1];
-                if (!EGL14.eglChooseConfig(getEnv().getDisplay(), attribList, 0, configs,
-                        0, configs.length, numConfigs, 0)) {
+                Object config = backend.eglChooseConfig(getEnv().getDisplayObject(), attribList);
+                if (null == config) {
                     throw new RuntimeException("eglChooseConfig failed");
                 }
                 attribList = new int[]{
-                        EGL14.EGL_CONTEXT_CLIENT_VERSION, 2,
+                        EGL14.EGL_CONTEXT_CLIENT_VERSION, CLIENT_VERSION,
                         EGL14.EGL_NONE,
                 };
-                EGLContext context = EGL14.eglCreateContext(getEnv().getDisplay(),
-                        configs[0], EGL14.EGL_NO_CONTEXT, attribList, 0);
+                Object context = backend.eglCreateContext(getEnv().getDisplayObject(),
+                        config, getEnv().getShareContext(config, CLIENT_VERSION), attribList);
                 getEnv().checkEGLError("eglCreateContext");
-                if (context == EGL14.EGL_NO_CONTEXT) {
+                if (null == context) {
                     throw new RuntimeException("eglCreateContext: EGL_NO_CONTEXT");
                 }
                 eglContext = context;
-                eglConfig = configs[0];
+                eglConfig = config;
+                eglClientVersion = CLIENT_VERSION;
             } else {
                 eglContext = mainOutput.eglContext;
                 eglConfig = mainOutput.eglConfig;
+                eglClientVersion = mainOutput.eglClientVersion;
             }
             // 创建EGLSurface
-            int[] attribList;
             if (getContent().getWindowObject() == GLSurface.PBUFFER_OBJECT) {
-                attribList = new int[]{
+                int[] attribList = new int[]{
                         EGL14.EGL_WIDTH, getContent().getWindowWidth(),
                         EGL14.EGL_HEIGHT, getContent().getWindowHeight(),
                         EGL14.EGL_NONE,
                 };
+                eglSurface = backend.eglCreatePbufferSurface(getEnv().getDisplayObject(),
+                        eglConfig, attribList);
+                getEnv().checkEGLError("eglCreatePbufferSurface");
             } else {
-                attribList = new int[]{
+                int[] attribList = new int[]{
                         EGL14.EGL_NONE,
                 };
+                eglSurface = backend.eglCreateWindowSurface(getEnv().getDisplayObject(),
+                        eglConfig, content.getWindowObject(), attribList);
+                getEnv().checkEGLError("eglCreateWindowSurface");
             }
-            eglSurface = EGL14.eglCreateWindowSurface(getEnv().getDisplay(),
-                    eglConfig, content.getWindowObject(), attribList, 0);
-            getEnv().checkEGLError("eglCreateWindowSurface");
-            if (eglSurface == EGL14.EGL_NO_SURFACE) {
+            if (null == eglSurface) {
                 throw new RuntimeException("eglCreateWindowSurface: EGL_NO_SURFACE");
             }
+            // 新surface，重绘整个输出
+            damageSceneVersion = -1;
+            damageHistory = null;
             // 通知环境对象，输出可用
             getEnv().dispatchOutputValid(this);
         }
@@ -102,19 +139,20 @@ public class GLOutput<T extends GLSurface> extends GLObject<T> {
             // 触发内容清除方法
             content.destroyContent();
         }
-        if (eglContext != EGL14.EGL_NO_CONTEXT) {
+        GLBackend backend = getEnv().getBackend();
+        if (null != eglContext) {
             if (selfContext) {
                 // 自己创建的上下文，需要销毁
-                EGL14.eglDestroyContext(getEnv().getDisplay(), eglContext);
+                backend.eglDestroyContext(getEnv().getDisplayObject(), eglContext);
             }
-            eglContext = EGL14.EGL_NO_CONTEXT;
+            eglContext = null;
         }
         eglConfig = null;
         selfContext = false;
-        if (eglSurface != EGL14.EGL_NO_SURFACE) {
+        if (null != eglSurface) {
             // 销毁EGLSurface
-            EGL14.eglDestroySurface(getEnv().getDisplay(), eglSurface);
-            eglSurface = EGL14.EGL_NO_SURFACE;
+            backend.eglDestroySurface(getEnv().getDisplayObject(), eglSurface);
+            eglSurface = null;
             // 通知环境，输出不可用
             getEnv().dispatchOutputInvalid(this);
         }
@@ -124,18 +162,194 @@ public class GLOutput<T extends GLSurface> extends GLObject<T> {
      * 将输出切换为当前输出
      */
     void makeCurrent() {
-        if (!EGL14.eglMakeCurrent(getEnv().getDisplay(), eglSurface, eglSurface, eglContext)) {
+        if (!getEnv().getBackend().eglMakeCurrent(getEnv().getDisplayObject(), eglSurface, eglSurface, eglContext)) {
             throw new RuntimeException("eglMakeCurrent failed");
         }
         onMakeCurrent();
     }
 
+    /**
+     * 获取输出使用的EGLContext
+     *
+     * @return EGLContext，输出无效时为null
+     */
+    Object getEGLContext() {
+        return eglContext;
+    }
+
+    /**
+     * 获取输出使用的EGLConfig
+     *
+     * @return EGLConfig，输出无效时为null
+     */
+    Object getEGLConfig() {
+        return eglConfig;
+    }
+
+    /**
+     * 获取EGLContext的客户端版本，创建共享上下文时使用相同版本
+     *
+     * @return 客户端版本
+     */
+    int getEGLClientVersion() {
+        return eglClientVersion;
+    }
+
+    /**
+     * 开始局部更新帧，切换成当前输出之后、绘制之前由环境调用
+     * 合并缓冲区年龄内的修改区域作为重绘区域，并将裁剪区域设置为重绘区域的外接矩形
+     *
+     * @param sceneVersion 场景版本，改变时重绘整个输出
+     * @return true，需要绘制；false，没有修改，跳过绘制及交换缓冲区
+     */
+    boolean beginPartialFrame(long sceneVersion) {
+        partialFrame = false;
+        partialRedraw = false;
+        damageRegionSet = false;
+        if (!partialUpdateEnabled) return true;
+        GLEnv env = getEnv();
+        int width = getContent().getWindowWidth();
+        int height = getContent().getWindowHeight();
+        if (sceneVersion != damageSceneVersion || width != damageWidth || height != damageHeight
+                || (null != readback && readback.isRequested())) {
+            // 绘制列表或者大小改变，以及回读时，重绘整个输出
+            damageSceneVersion = sceneVersion;
+            damageWidth = width;
+            damageHeight = height;
+            damage.setFull();
+        }
+        damage.clip(width, height);
+        if (damage.isEmpty()) {
+            skippedSwapCount++;
+            return false;
+        }
+        partialFrame = true;
+        redrawRegion.set(damage);
+        int age = queryBufferAge();
+        if (age <= 0 || null == damageHistory || age - 1 > damageHistory.length) {
+            // 缓冲区内容未知
+            redrawRegion.setFull();
+        } else {
+            for (int i = 0; i < age - 1 && !redrawRegion.isFull(); i++) {
+                redrawRegion.union(damageHistory[i]);
+            }
+            redrawRegion.clip(width, height);
+        }
+        if (redrawRegion.isFull()) {
+            return true;
+        }
+        GLBackend backend = env.getBackend();
+        if (env.hasEGLExtension("EGL_KHR_partial_update")) {
+            int count = redrawRegion.toRects(damageRects);
+            damageRegionSet = backend.eglSetDamageRegion(env.getDisplayObject(), eglSurface, damageRects, count);
+        }
+        redrawRegion.getBounds(damageRects);
+        GLStateCache stateCache = env.getStateCache();
+        stateCache.setScissorTestEnabled(true);
+        stateCache.scissor(damageRects[0], damageRects[1], damageRects[2], damageRects[3]);
+        partialRedraw = true;
+        return true;
+    }
+
+    /**
+     * 查询后缓冲区年龄
+     *
+     * @return 后缓冲区为多少帧之前的内容，0表示内容未知或者不支持
+     */
+    private int queryBufferAge() {
+        GLEnv env = getEnv();
+        if (!env.hasEGLExtension("EGL_EXT_buffer_age") && !env.hasEGLExtension("EGL_KHR_partial_update")) {
+            return 0;
+        }
+        int[] value = damageRects;
+        if (!env.getBackend().eglQuerySurface(env.getDisplayObject(), eglSurface, EGL_BUFFER_AGE_EXT, value)) {
+            return 0;
+        }
+        return value[0];
+    }
+
+    /**
+     * 记录本帧修改区域，交换缓冲区后调用；非局部更新帧记录为整个输出
+     */
+    private void pushDamage() {
+        if (!partialUpdateEnabled) {
+            damageHistory = null;
+            damage.clear();
+            return;
+        }
+        if (null == damageHistory) {
+            damageHistory = new GLDamageRegion[MAX_BUFFER_AGE - 1];
+            for (int i = 0; i < damageHistory.length; i++) {
+                damageHistory[i] = new GLDamageRegion();
+                damageHistory[i].setFull();
+            }
+        }
+        GLDamageRegion last = damageHistory[damageHistory.length - 1];
+        System.arraycopy(damageHistory, 0, damageHistory, 1, damageHistory.length - 1);
+        damageHistory[0] = last;
+        if (partialFrame) {
+            last.set(damage);
+        } else {
+            last.setFull();
+        }
+        damage.clear();
+    }
+
+    /**
+     * 合并修改区域，由环境调用
+     */
+    void addDamage(int x, int y, int width, int height, boolean full) {
+        if (full) {
+            damage.setFull();
+        } else {
+            damage.add(x, y, width, height);
+        }
+    }
+
+    /**
+     * 获取最近一次提交帧时交换缓冲区的耗时，不含回读等其他提交工作
+     *
+     * @return 耗时，单位：纳秒
+     */
+    long getSwapTime() {
+        return swapTime;
+    }
+
     /**
      * 通知输出，提交帧
      */
     void dispatchCommit() {
-        boolean ok = EGL14.eglSwapBuffers(getEnv().getDisplay(), eglSurface);
+        if (null != readback) {
+            readback.captureOutput(this);
+        }
+        GLEnv env = getEnv();
+        GLBackend backend = env.getBackend();
+        boolean ok;
+        boolean withDamage = partialFrame && !damage.isFull()
+                && backend.isSwapBuffersWithDamageSupported()
+                && (env.hasEGLExtension("EGL_KHR_swap_buffers_with_damage")
+                || env.hasEGLExtension("EGL_EXT_swap_buffers_with_damage"));
+        long swapStart = System.nanoTime();
+        if (withDamage) {
+            int count = damage.toRects(damageRects);
+            ok = backend.eglSwapBuffersWithDamage(env.getDisplayObject(), eglSurface, damageRects, count);
+        } else {
+            ok = backend.eglSwapBuffers(env.getDisplayObject(), eglSurface);
+        }
+        swapTime = System.nanoTime() - swapStart;
+        if (partialFrame) {
+            env.getStateCache().setScissorTestEnabled(false);
+            // 修改区域未告知EGL时，合成器仍按整个输出处理
+            if (partialRedraw && (damageRegionSet || withDamage)) {
+                partialFrameCount++;
+            } else {
+                fullFrameCount++;
+            }
+        }
+        pushDamage();
+        partialFrame = false;
         if (ok) {
+            countFrame();
             onFrameCommit();
         } else {
             Log.w(TAG, getPrintName() + "/dispatchCommit: failed");
@@ -148,7 +362,7 @@ public class GLOutput<T extends GLSurface> extends GLObject<T> {
      * @return true，有效，可以进行绘制；false，无效，不能进行绘制及其他OpenGL操作
      */
     public boolean isValid() {
-        return eglSurface != EGL14.EGL_NO_SURFACE;
+        return null != eglSurface;
     }
 
     /**
@@ -159,6 +373,272 @@ public class GLOutput<T extends GLSurface> extends GLObject<T> {
         getEnv().runGLAction(() -> getEnv().setMainOutput(this));
     }
 
+    /**
+     * 设置渲染层掩码，只绘制所在层与之相交的shader及实体对象，例如缩略图输出只绘制部分层
+     * 注意：此方法不会立刻生效，在下一帧发布场景时预先计算绘制列表，绘制时没有额外的过滤开销
+     *
+     * @param renderMask 渲染层掩码，默认：{@link #LAYER_ALL LAYER_ALL}
+     */
+    public void setRenderMask(int renderMask) {
+        getEnv().runGLAction(() -> {
+            if (this.renderMask != renderMask) {
+                this.renderMask = renderMask;
+                getEnv().invalidateScene();
+            }
+        });
+    }
+
+    /**
+     * 设置像素回读，请求读取后在提交帧之前读取输出内容
+     *
+     * @param readback 像素回读，null表示移除
+     */
+    public void setReadback(GLReadback readback) {
+        getEnv().runGLAction(() -> this.readback = readback);
+    }
+
+    /**
+     * 设置局部更新，开启后只重绘实体对象通过{@link GLObject#invalidateRect(int, int, int, int) invalidateRect}
+     * 报告的修改区域，没有修改时跳过绘制及交换缓冲区
+     * 支持EGL_EXT_buffer_age时，按缓冲区年龄合并之前帧的修改区域，并将裁剪区域设置为其外接矩形；否则每帧重绘整个输出
+     * 支持EGL_KHR_partial_update或者swap_buffers_with_damage扩展，并且后端实际传递修改区域时，告知合成器修改区域；
+     * {@link GLAndroidBackend GLAndroidBackend}没有这些扩展的Java绑定，只减少绘制，仍交换整个缓冲区，需要自定义后端（JNI）实现
+     * 注意：绘制列表改变、输出大小改变及像素回读时重绘整个输出；单次绘制多输出或者分辨率缩放小于1时不生效；
+     * 实体对象不能自行关闭裁剪测试
+     *
+     * @param enabled true，开启；false，关闭，默认：false
+     */
+    public void setPartialUpdateEnabled(boolean enabled) {
+        getEnv().runGLAction(() -> {
+            if (partialUpdateEnabled != enabled) {
+                partialUpdateEnabled = enabled;
+                damageSceneVersion = -1;
+                damageHistory = null;
+                damage.clear();
+            }
+        });
+    }
+
+    public boolean isPartialUpdateEnabled() {
+        return partialUpdateEnabled;
+    }
+
+    /**
+     * 获取局部更新开启时只重绘部分区域，并且后端通过eglSetDamageRegion或者eglSwapBuffersWithDamage实际告知修改区域的帧数，
+     * 后端不支持时这些帧计入{@link #getFullFrameCount() 整帧}
+     *
+     * @return 帧数
+     */
+    public long getPartialFrameCount() {
+        return partialFrameCount;
+    }
+
+    /**
+     * 获取局部更新开启时重绘整个输出的帧数
+     *
+     * @return 帧数
+     */
+    public long getFullFrameCount() {
+        return fullFrameCount;
+    }
+
+    /**
+     * 获取局部更新开启时没有修改而跳过交换缓冲区的帧数
+     *
+     * @return 帧数
+     */
+    public long getSkippedSwapCount() {
+        return skippedSwapCount;
+    }
+
+    /**
+     * 设置独立帧率，环境在最早到期的输出时间唤醒，只绘制到期的输出
+     * 注意：只在{@link GLEnv#RENDER_MODE_CONTINUOUSLY RENDER_MODE_CONTINUOUSLY}模式下生效，按需绘制时所有输出都会绘制
+     *
+     * @param fps 帧率：大于0，按此帧率绘制，不受环境帧率限制；否则，跟随环境帧率，默认：0
+     */
+    public void setFps(int fps) {
+        this.fps = fps;
+        getEnv().requestRender();
+    }
+
+    /**
+     * 获取独立帧率
+     *
+     * @return 帧率，0表示跟随环境帧率
+     */
+    public int getFps() {
+        return fps;
+    }
+
+    /**
+     * 设置帧率除数，跟随环境帧率时，每隔divisor个环境帧绘制一次，例如环境60fps、除数2时为30fps
+     *
+     * @param divisor 除数，默认：1
+     */
+    public void setFrameDivisor(int divisor) {
+        if (divisor < 1) throw new IllegalArgumentException("Invalid divisor: " + divisor);
+        this.frameDivisor = divisor;
+    }
+
+    /**
+     * 获取帧率除数
+     *
+     * @return 除数
+     */
+    public int getFrameDivisor() {
+        return frameDivisor;
+    }
+
+    /**
+     * 获取实测帧率，每秒统计一次
+     *
+     * @return 实测帧率
+     */
+    public float getMeasuredFps() {
+        return measuredFps;
+    }
+
+    /**
+     * 获取平均绘制耗时，包括切换成当前输出、绘制及提交帧，按1/8系数滑动平均
+     * 注意：只在加入环境组或者开启帧统计、帧率调节器时统计
+     *
+     * @return 耗时，单位：纳秒；没有样本时为0
+     */
+    public long getAverageDrawTime() {
+        long time = averageDrawTime;
+        return time < 0 ? 0 : time;
+    }
+
+    /**
+     * 获取输出的负载，即每秒内绘制此输出的耗时总和，包括局部更新没有修改而跳过交换的帧，用于多线程环境组分配输出
+     * 注意：只在加入环境组或者开启帧统计、帧率调节器时统计
+     *
+     * @return 每秒占用绘制线程的比例，例如：0.5表示占用一半时间
+     */
+    public float getLoad() {
+        return load;
+    }
+
+    /**
+     * 记录一帧的绘制耗时，由环境在绘制输出后调用
+     *
+     * @param time      耗时，单位：纳秒
+     * @param committed 是否提交了帧；false表示局部更新没有修改，跳过了绘制及交换
+     */
+    void recordDrawTime(long time, boolean committed) {
+        if (committed) {
+            long average = averageDrawTime;
+            averageDrawTime = average < 0 ? time : average + ((time - average) >> 3);
+        }
+        long now = System.nanoTime();
+        if (loadWindowStartTime < 0) {
+            loadWindowStartTime = now - time;
+            loadWindowTime = 0;
+        }
+        loadWindowTime += time;
+        long duration = now - loadWindowStartTime;
+        if (duration >= 1000000000L) {
+            load = (float) loadWindowTime / duration;
+            loadWindowStartTime = now;
+            loadWindowTime = 0;
+        }
+    }
+
+    /**
+     * 获取独立帧率下因超时而跳过的帧数
+     *
+     * @return 跳过的帧数
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * 获取独立帧率下一帧的时间
+     *
+     * @param now 当前时间
+     * @return 绝对时间，单位：纳秒
+     */
+    long getNextFrameTime(long now) {
+        return nextFrameTime < 0 ? now : nextFrameTime;
+    }
+
+    /**
+     * 计算本轮是否需要绘制，由环境每轮调用
+     *
+     * @param now     当前时间
+     * @param envTick 本轮是否为环境帧
+     * @return 是否需要绘制
+     */
+    boolean updateFrameDue(long now, boolean envTick) {
+        int fps = this.fps;
+        if (fps <= 0) {
+            nextFrameTime = -1;
+            frameDue = envTick && tickCount++ % frameDivisor == 0;
+            return frameDue;
+        }
+        long interval = 1000000000L / fps;
+        if (nextFrameTime < 0) {
+            nextFrameTime = now;
+        }
+        if (nextFrameTime - now > 0) {
+            frameDue = false;
+            return false;
+        }
+        // 超过一个帧间隔，跳过错过的帧
+        long late = now - nextFrameTime;
+        if (late >= interval) {
+            long missed = late / interval;
+            skippedFrames += missed;
+            nextFrameTime += missed * interval;
+        }
+        nextFrameTime += interval;
+        frameDue = true;
+        return true;
+    }
+
+    /**
+     * 重置调度，下一轮立即绘制；环境挂起后调用
+     */
+    void resetFrameSchedule() {
+        nextFrameTime = -1;
+        tickCount = 0;
+        frameDue = true;
+        windowStartTime = -1;
+        windowFrames = 0;
+        loadWindowStartTime = -1;
+        loadWindowTime = 0;
+    }
+
+    /**
+     * 统计实测帧率，提交帧后调用
+     */
+    private void countFrame() {
+        long now = System.nanoTime();
+        if (windowStartTime < 0) {
+            windowStartTime = now;
+            windowFrames = 0;
+            return;
+        }
+        windowFrames++;
+        long duration = now - windowStartTime;
+        if (duration >= 1000000000L) {
+            measuredFps = windowFrames * 1000000000f / duration;
+            windowStartTime = now;
+            windowFrames = 0;
+        }
+    }
+
+    /**
+     * 获取渲染层掩码，只能在绘制线程调用
+     *
+     * @return 渲染层掩码
+     */
+    public int getRenderMask() {
+        return renderMask;
+    }
+
     /**
      * 切换成当前时触发
      */
@@ -166,7 +646,7 @@ public class GLOutput<T extends GLSurface> extends GLObject<T> {
         int width = getContent().getWindowWidth();
         int height = getContent().getWindowHeight();
         if (width > 0 && height > 0) {
-            GLES20.glViewport(0, 0, width, height);
+            getEnv().getStateCache().viewport(0, 0, width, height);
         }
     }
 
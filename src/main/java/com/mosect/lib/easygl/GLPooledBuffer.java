@@ -0,0 +1,132 @@
+package com.mosect.lib.easygl;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * 从{@link GLBufferPool GLBufferPool}申请的直接缓冲区，使用本地字节序
+ * 各视图从位置0开始，limit为申请的大小；视图对象被复用，不要在释放后继续使用
+ */
+public final class GLPooledBuffer {
+
+    private final GLBufferPool pool; // 所属缓冲池
+    private final ByteBuffer data; // 缓冲区，容量为2的幂
+    private FloatBuffer floats; // float视图
+    private ShortBuffer shorts; // short视图
+    private IntBuffer ints; // int视图
+    private int size; // 申请的字节数
+    private boolean released = true; // 是否已归还
+    long releaseFrame; // 归还时的帧序号，用于回收策略
+
+    GLPooledBuffer(GLBufferPool pool, ByteBuffer data) {
+        this.pool = pool;
+        this.data = data;
+    }
+
+    void reset(int size) {
+        this.size = size;
+        this.released = false;
+    }
+
+    private void checkReleased() {
+        if (released) throw new RuntimeException("Buffer already released");
+    }
+
+    /**
+     * 获取字节视图
+     *
+     * @return 字节视图，position为0，limit为申请的字节数
+     */
+    public ByteBuffer asByteBuffer() {
+        checkReleased();
+        data.clear().limit(size);
+        return data;
+    }
+
+    /**
+     * 获取float视图
+     *
+     * @return float视图，position为0，limit为可容纳的float数量
+     */
+    public FloatBuffer asFloatBuffer() {
+        checkReleased();
+        if (null == floats) {
+            data.clear();
+            floats = data.asFloatBuffer();
+        }
+        floats.clear().limit(size / 4);
+        return floats;
+    }
+
+    /**
+     * 获取short视图
+     *
+     * @return short视图，position为0，limit为可容纳的short数量
+     */
+    public ShortBuffer asShortBuffer() {
+        checkReleased();
+        if (null == shorts) {
+            data.clear();
+            shorts = data.asShortBuffer();
+        }
+        shorts.clear().limit(size / 2);
+        return shorts;
+    }
+
+    /**
+     * 获取int视图
+     *
+     * @return int视图，position为0，limit为可容纳的int数量
+     */
+    public IntBuffer asIntBuffer() {
+        checkReleased();
+        if (null == ints) {
+            data.clear();
+            ints = data.asIntBuffer();
+        }
+        ints.clear().limit(size / 4);
+        return ints;
+    }
+
+    /**
+     * 获取申请的字节数
+     *
+     * @return 字节数
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * 获取实际容量
+     *
+     * @return 容量，字节数
+     */
+    public int getCapacity() {
+        return data.capacity();
+    }
+
+    /**
+     * 归还到缓冲池，之后不能再使用此对象及其视图
+     */
+    public void release() {
+        checkReleased();
+        released = true;
+        pool.release(this);
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    @Override
+    public String toString() {
+        return "GLPooledBuffer{" +
+                "size=" + size +
+                ", capacity=" + data.capacity() +
+                ", released=" + released +
+                '}';
+    }
+}
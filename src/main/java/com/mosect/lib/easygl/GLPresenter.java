@@ -0,0 +1,237 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * 单次绘制多输出呈现，由{@link GLEnv GLEnv}持有
+ * 绘制列表相同的多个输出，场景只绘制一次到离屏目标，再缩放呈现到每个输出：
+ * GLES3使用glBlitFramebuffer，GLES2绘制一个纹理四边形
+ * 注意：只能在绘制线程使用
+ */
+final class GLPresenter {
+
+    private static final String TAG = "GL/Presenter";
+
+    private static final String VERT_SOURCE = "" +
+            "attribute vec4 a_Position;\n" +
+            "varying vec2 v_TexCoord;\n" +
+            "void main() {\n" +
+            "    v_TexCoord = a_Position.zw;\n" +
+            "    gl_Position = vec4(a_Position.xy, 0.0, 1.0);\n" +
+            "}\n";
+
+    private static final String FRAG_SOURCE = "" +
+            "precision mediump float;\n" +
+            "uniform sampler2D u_Texture;\n" +
+            "varying vec2 v_TexCoord;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = texture2D(u_Texture, v_TexCoord);\n" +
+            "}\n";
+
+    // 全屏四边形，三角形带：x, y, u, v
+    private static final float[] QUAD = {
+            -1, -1, 0, 0,
+            1, -1, 1, 0,
+            -1, 1, 0, 1,
+            1, 1, 1, 1,
+    };
+
+    private final GLEnv env; // 环境
+    private GLRenderTarget[] targets = new GLRenderTarget[0]; // 每个绘制列表分组的离屏目标
+    private Shader shader; // GLES2呈现使用的shader
+    private int quadBuffer; // 四边形顶点缓冲区
+    private Object context; // 创建资源时的EGLContext
+
+    private long savedDrawCount = 0; // 节省的场景绘制次数
+
+    GLPresenter(GLEnv env) {
+        this.env = env;
+    }
+
+    /**
+     * 获取分组的离屏目标，大小改变时从目标池重新申请
+     *
+     * @param group  分组
+     * @param width  宽
+     * @param height 高
+     * @return 离屏目标
+     */
+    GLRenderTarget obtainTarget(int group, int width, int height) {
+        checkContext();
+        if (group >= targets.length) {
+            targets = Arrays.copyOf(targets, group + 1);
+        }
+        GLRenderTarget target = targets[group];
+        if (null != target && (target.getWidth() != width || target.getHeight() != height)) {
+            target.release();
+            target = null;
+        }
+        if (null == target) {
+            target = env.getRenderTargetPool().acquire(width, height);
+            targets[group] = target;
+        }
+        return target;
+    }
+
+    /**
+     * 将离屏目标缩放呈现到当前输出的默认帧缓冲区
+     *
+     * @param target 离屏目标
+     * @param width  输出宽
+     * @param height 输出高
+     */
+    void present(GLRenderTarget target, int width, int height) {
+        checkContext();
+        GLBackend backend = env.getBackend();
+        GLStateCache stateCache = env.getStateCache();
+        stateCache.bindFramebuffer(0);
+        stateCache.viewport(0, 0, width, height);
+        stateCache.setScissorTestEnabled(false);
+        if (env.getGLESVersion() >= 3) {
+            backend.glBindFramebuffer(GLES30.GL_READ_FRAMEBUFFER, target.getFramebufferId());
+            backend.glBlitFramebuffer(0, 0, target.getWidth(), target.getHeight(),
+                    0, 0, width, height, GLES20.GL_COLOR_BUFFER_BIT, GLES20.GL_LINEAR);
+            backend.glBindFramebuffer(GLES30.GL_READ_FRAMEBUFFER, 0);
+        } else {
+            drawQuad(target.getTextureId());
+        }
+    }
+
+    private void drawQuad(int texture) {
+        GLBackend backend = env.getBackend();
+        GLStateCache stateCache = env.getStateCache();
+        if (null == shader) {
+            shader = new Shader(env);
+            shader.dispatchAttached(true);
+        }
+        if (quadBuffer == 0) {
+            int[] buffers = new int[1];
+            backend.glGenBuffers(1, buffers, 0);
+            quadBuffer = buffers[0];
+            FloatBuffer data = ByteBuffer.allocateDirect(QUAD.length * 4)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            data.put(QUAD).position(0);
+            stateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, quadBuffer);
+            backend.glBufferData(GLES20.GL_ARRAY_BUFFER, QUAD.length * 4, data, GLES20.GL_STATIC_DRAW);
+        }
+        stateCache.setBlendEnabled(false);
+        stateCache.setDepthTestEnabled(false);
+        stateCache.setCullFaceEnabled(false);
+        shader.useProgram();
+        shader.texture.setInt(0);
+        stateCache.bindTexture(0, GLES20.GL_TEXTURE_2D, texture);
+        stateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, quadBuffer);
+        backend.glVertexAttribPointer(shader.positionLocation, 4, GLES20.GL_FLOAT, false, 16, 0);
+        backend.glEnableVertexAttribArray(shader.positionLocation);
+        backend.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+        backend.glDisableVertexAttribArray(shader.positionLocation);
+    }
+
+    /**
+     * 记录节省的场景绘制
+     *
+     * @param count 次数
+     */
+    void onDrawSaved(int count) {
+        savedDrawCount += count;
+    }
+
+    /**
+     * 归还多余的离屏目标
+     *
+     * @param groupCount 仍在使用的分组数量
+     */
+    void trim(int groupCount) {
+        for (int i = groupCount; i < targets.length; i++) {
+            if (null != targets[i]) {
+                targets[i].release();
+                targets[i] = null;
+            }
+        }
+    }
+
+    /**
+     * 上下文改变时，原资源随原上下文销毁，只清除记录
+     */
+    private void checkContext() {
+        Object current = env.getCurrentContext();
+        if (context != current) {
+            if (null != context) {
+                release();
+            }
+            context = current;
+        }
+    }
+
+    /**
+     * 释放所有资源
+     */
+    void release() {
+        for (GLRenderTarget target : targets) {
+            if (null != target) {
+                target.release();
+            }
+        }
+        targets = new GLRenderTarget[0];
+        boolean sameContext = context == env.getCurrentContext();
+        if (null != shader) {
+            if (sameContext) {
+                shader.dispatchAttached(false);
+            }
+            shader = null;
+        }
+        if (quadBuffer != 0) {
+            if (sameContext) {
+                env.getStateCache().onBufferDeleted(quadBuffer);
+                env.getBackend().glDeleteBuffers(1, new int[]{quadBuffer}, 0);
+            }
+            quadBuffer = 0;
+        }
+        context = null;
+    }
+
+    /**
+     * 获取节省的场景绘制次数
+     *
+     * @return 次数，即单次绘制模式下未重复绘制场景的输出数量累计
+     */
+    long getSavedDrawCount() {
+        return savedDrawCount;
+    }
+
+    /**
+     * GLES2呈现使用的shader，由呈现器直接管理，不加入场景
+     */
+    private static final class Shader extends GLShader<GLContent> {
+
+        int positionLocation = -1;
+        GLUniform texture;
+
+        Shader(GLEnv env) {
+            super(env);
+            setName(TAG);
+        }
+
+        @Override
+        protected void onInitProgram() {
+            positionLocation = getAttribLocation("a_Position");
+            texture = getUniform("u_Texture");
+        }
+
+        @Override
+        protected String onLoadVertSource() {
+            return VERT_SOURCE;
+        }
+
+        @Override
+        protected String onLoadFragSource() {
+            return FRAG_SOURCE;
+        }
+    }
+}
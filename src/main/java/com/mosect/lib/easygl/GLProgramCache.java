@@ -0,0 +1,282 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * 程序二进制磁盘缓存，使用glGetProgramBinary及glProgramBinary保存及加载已链接的程序，
+ * 以shader源码及驱动信息作为键，缓存缺失或者无效时回退到源码编译
+ * 注意：需要GLES3环境，不支持时不做任何处理；只能在绘制线程调用
+ */
+public class GLProgramCache {
+
+    private static final String TAG = "GL/ProgramCache";
+
+    private static final int MAGIC = 0x45474C50; // 文件标记
+    private static final String FILE_SUFFIX = ".bin";
+
+    private final File dir; // 缓存目录
+    private Boolean supported; // 是否支持程序二进制，null表示未检测
+    private String driverId; // 驱动标识
+    private volatile int hitCount = 0; // 命中次数
+    private volatile int missCount = 0; // 未命中次数
+    private volatile int invalidCount = 0; // 缓存无效次数，也计入未命中
+    private volatile int saveCount = 0; // 保存次数
+
+    /**
+     * @param dir 缓存目录，Android上通常为Context.getCacheDir()下的子目录
+     */
+    public GLProgramCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * 判断是否支持程序二进制
+     *
+     * @param backend 后端
+     * @return true，支持；false，不支持
+     */
+    public boolean isSupported(GLBackend backend) {
+        if (null == supported) {
+            String version = backend.glGetString(GLES20.GL_VERSION);
+            boolean gles3 = null != version && version.startsWith("OpenGL ES ")
+                    && version.length() > 10 && version.charAt(10) >= '3';
+            if (gles3) {
+                int[] formats = new int[1];
+                backend.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formats, 0);
+                gles3 = formats[0] > 0;
+            }
+            supported = gles3;
+            driverId = String.format("%s/%s/%s",
+                    backend.glGetString(GLES20.GL_VENDOR),
+                    backend.glGetString(GLES20.GL_RENDERER),
+                    version);
+            Log.d(TAG, String.format("isSupported: %s, driver=%s", supported, driverId));
+        }
+        return supported;
+    }
+
+    /**
+     * 从缓存加载程序
+     *
+     * @param backend    后端
+     * @param vertSource 顶点shader源码
+     * @param fragSource 片元shader源码
+     * @return 已链接的程序id；0表示缓存缺失或者无效
+     */
+    public int loadProgram(GLBackend backend, String vertSource, String fragSource) {
+        if (!isSupported(backend)) return 0;
+        File file = getFile(vertSource, fragSource);
+        if (!file.isFile()) {
+            missCount++;
+            return 0;
+        }
+        int format;
+        byte[] data;
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file))) {
+            if (dis.readInt() != MAGIC) throw new IOException("Invalid magic");
+            format = dis.readInt();
+            int length = dis.readInt();
+            if (length <= 0 || length != file.length() - 12) throw new IOException("Invalid length");
+            data = new byte[length];
+            dis.readFully(data);
+        } catch (IOException e) {
+            Log.w(TAG, "loadProgram: read failed", e);
+            invalidate(file);
+            return 0;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length).order(ByteOrder.nativeOrder());
+        buffer.put(data).position(0);
+        int programId = backend.glCreateProgram();
+        if (programId == 0) {
+            missCount++;
+            return 0;
+        }
+        clearErrors(backend);
+        backend.glProgramBinary(programId, format, buffer, data.length);
+        int[] linkStatus = new int[1];
+        backend.glGetProgramiv(programId, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        // 驱动更新后格式可能不被支持，清除产生的错误；是否可用只以链接状态判断
+        clearErrors(backend);
+        if (linkStatus[0] != GLES20.GL_TRUE) {
+            backend.glDeleteProgram(programId);
+            invalidate(file);
+            return 0;
+        }
+        hitCount++;
+        return programId;
+    }
+
+    /**
+     * 在链接程序之前调用，允许获取程序二进制
+     *
+     * @param backend   后端
+     * @param programId 程序id
+     */
+    public void prepareProgram(GLBackend backend, int programId) {
+        if (isSupported(backend)) {
+            backend.glProgramParameteri(programId, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+    }
+
+    /**
+     * 保存已链接的程序到缓存
+     *
+     * @param backend    后端
+     * @param programId  程序id
+     * @param vertSource 顶点shader源码
+     * @param fragSource 片元shader源码
+     */
+    public void saveProgram(GLBackend backend, int programId, String vertSource, String fragSource) {
+        if (!isSupported(backend)) return;
+        int[] length = new int[1];
+        backend.glGetProgramiv(programId, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) return;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        int[] format = new int[1];
+        // 清除之前直接调用GL产生的错误，之后的错误只来自glGetProgramBinary
+        clearErrors(backend);
+        backend.glGetProgramBinary(programId, length[0], length, format, buffer);
+        if (backend.glGetError() != GLES20.GL_NO_ERROR || length[0] <= 0) return;
+        byte[] data = new byte[length[0]];
+        buffer.position(0);
+        buffer.get(data);
+
+        File file = getFile(vertSource, fragSource);
+        File tempFile = new File(dir, file.getName() + ".tmp");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.w(TAG, "saveProgram: mkdirs failed: " + dir);
+            return;
+        }
+        try (DataOutputStream dos = new DataOutputStream(new FileOutputStream(tempFile))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(format[0]);
+            dos.writeInt(data.length);
+            dos.write(data);
+        } catch (IOException e) {
+            Log.w(TAG, "saveProgram: write failed", e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+        if (tempFile.renameTo(file)) {
+            saveCount++;
+        } else {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * 清空缓存文件
+     */
+    public void clear() {
+        File[] files = dir.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                if (file.getName().endsWith(FILE_SUFFIX)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * 清除所有未读取的GL错误
+     */
+    private static void clearErrors(GLBackend backend) {
+        // 上下文丢失时可能一直返回错误，限制次数
+        for (int i = 0; i < 32; i++) {
+            if (backend.glGetError() == GLES20.GL_NO_ERROR) break;
+        }
+    }
+
+    private void invalidate(File file) {
+        invalidCount++;
+        missCount++;
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private File getFile(String vertSource, String fragSource) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            Charset charset = Charset.forName("UTF-8");
+            digest.update(vertSource.getBytes(charset));
+            digest.update((byte) 0);
+            digest.update(fragSource.getBytes(charset));
+            digest.update((byte) 0);
+            digest.update(driverId.getBytes(charset));
+            byte[] hash = digest.digest();
+            StringBuilder name = new StringBuilder(hash.length * 2 + FILE_SUFFIX.length());
+            for (byte b : hash) {
+                name.append(String.format("%02x", b & 0xFF));
+            }
+            name.append(FILE_SUFFIX);
+            return new File(dir, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 获取命中次数
+     *
+     * @return 命中次数
+     */
+    public int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * 获取未命中次数，包括缓存无效的次数
+     *
+     * @return 未命中次数
+     */
+    public int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 获取缓存无效次数
+     *
+     * @return 缓存无效次数
+     */
+    public int getInvalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * 获取保存次数
+     *
+     * @return 保存次数
+     */
+    public int getSaveCount() {
+        return saveCount;
+    }
+
+    @Override
+    public String toString() {
+        return "GLProgramCache{" +
+                "dir=" + dir +
+                ", hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", invalidCount=" + invalidCount +
+                ", saveCount=" + saveCount +
+                '}';
+    }
+}
@@ -0,0 +1,387 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步像素回读，用于截图及帧导出
+ * GLES3环境使用多个像素缓冲区（PBO）轮换：glReadPixels读取到PBO并插入栅栏，
+ * 之后的帧GPU完成时再映射读取，不阻塞绘制线程；GLES2环境直接glReadPixels，会等待GPU完成
+ * 结果复制到{@link GLBufferPool 缓冲区池}的缓冲区，在回调线程交付，像素格式RGBA，行从下到上
+ * 可通过{@link GLOutput#setReadback(GLReadback) GLOutput.setReadback}依附到输出，
+ * 也可在绘制线程调用{@link #capture(GLRenderTarget) capture}读取离屏目标
+ */
+public class GLReadback {
+
+    private static final String TAG = "GL/Readback";
+
+    private final GLEnv env; // 环境
+    private final Callback callback; // 回调
+    private final AtomicInteger requestCount = new AtomicInteger(); // 待执行的输出读取请求数量
+    private volatile boolean continuous = false; // 是否每帧读取输出
+    private int slotCount = 2; // 像素缓冲区数量
+    private Slot[] slots; // 像素缓冲区，只在绘制线程访问
+    private int nextSlot; // 下一次使用的像素缓冲区
+    private Object context; // 创建像素缓冲区时的EGLContext
+    private boolean mapEnabled; // 是否使用像素缓冲区
+    private long frameIndex = 0; // 帧序号，每帧检查时递增
+    private long sequence = 0; // 读取序号
+    private ExecutorService executor; // 回调线程
+
+    private volatile long captureCount = 0; // 读取次数
+    private volatile long deliveredCount = 0; // 交付次数
+    private volatile long stallCount = 0; // 像素缓冲区不足或者GLES2同步读取，导致等待GPU的次数
+    private volatile long droppedCount = 0; // 上下文改变或者释放导致丢弃的次数
+    private volatile long latencyFrames = 0; // 累计从读取到交付的帧数
+
+    /**
+     * @param env      环境
+     * @param callback 回调，在回调线程执行
+     */
+    public GLReadback(GLEnv env, Callback callback) {
+        this.env = env;
+        this.callback = callback;
+        env.runGLAction(() -> env.addReadback(this));
+    }
+
+    /**
+     * 请求读取依附输出的下一帧，可在任意线程调用
+     */
+    public void request() {
+        requestCount.incrementAndGet();
+        env.requestRender();
+    }
+
+    /**
+     * 设置是否每帧读取依附输出，用于帧导出
+     *
+     * @param continuous true，每帧读取；false，只在请求时读取
+     */
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+    }
+
+    /**
+     * 设置像素缓冲区数量，在第一次读取之前设置；数量越多，交付延迟越大，等待GPU的概率越小
+     *
+     * @param count 数量，默认：2
+     */
+    public void setBufferCount(int count) {
+        if (count < 1) throw new IllegalArgumentException("Invalid count: " + count);
+        this.slotCount = count;
+    }
+
+    /**
+     * 判断下一次提交帧时是否读取输出
+     */
+    boolean isRequested() {
+        return continuous || requestCount.get() > 0;
+    }
+
+    /**
+     * 读取输出，由输出在提交帧之前调用
+     *
+     * @param output 输出
+     */
+    void captureOutput(GLOutput<?> output) {
+        if (!continuous) {
+            if (requestCount.get() <= 0) return;
+            requestCount.decrementAndGet();
+        }
+        GLSurface surface = output.getContent();
+        if (null == surface) return;
+        env.getStateCache().bindFramebuffer(0);
+        capture(0, 0, surface.getWindowWidth(), surface.getWindowHeight());
+    }
+
+    /**
+     * 读取离屏目标，只能在绘制线程调用
+     *
+     * @param target 离屏目标
+     */
+    public void capture(GLRenderTarget target) {
+        target.bind();
+        capture(0, 0, target.getWidth(), target.getHeight());
+        target.unbind();
+    }
+
+    /**
+     * 读取当前绑定的帧缓冲区，只能在绘制线程调用
+     *
+     * @param x      左边，从下往上
+     * @param y      下边
+     * @param width  宽
+     * @param height 高
+     */
+    public void capture(int x, int y, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid size: %sx%s", width, height));
+        }
+        checkContext();
+        GLBackend backend = env.getBackend();
+        int size = width * height * 4;
+        captureCount++;
+        if (!mapEnabled) {
+            // GLES2：同步读取
+            GLPooledBuffer pixels = env.getBufferPool().acquire(size);
+            backend.glReadPixels(x, y, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels.asByteBuffer());
+            stallCount++;
+            deliver(pixels, width, height, sequence++, 0);
+            return;
+        }
+        Slot slot = slots[nextSlot];
+        if (slot.pending) {
+            // 像素缓冲区不足，等待最早的读取完成
+            stallCount++;
+            complete(slot, true);
+        }
+        GLStateCache stateCache = env.getStateCache();
+        if (slot.buffer == 0) {
+            int[] buffers = new int[1];
+            backend.glGenBuffers(1, buffers, 0);
+            slot.buffer = buffers[0];
+        }
+        stateCache.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, slot.buffer);
+        if (slot.capacity < size) {
+            backend.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, size, null, GLES30.GL_STREAM_READ);
+            slot.capacity = size;
+        }
+        backend.glReadPixels(x, y, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+        stateCache.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        slot.fence = backend.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        slot.width = width;
+        slot.height = height;
+        slot.frame = frameIndex;
+        slot.sequence = sequence++;
+        slot.pending = true;
+        nextSlot = (nextSlot + 1) % slots.length;
+    }
+
+    /**
+     * 检查已完成的读取并交付，每帧由环境调用
+     *
+     * @param finish true，等待所有读取完成，绘制线程挂起前调用；false，只交付已完成或者超过缓冲区数量帧的读取
+     */
+    void poll(boolean finish) {
+        if (!finish) {
+            frameIndex++;
+        }
+        if (null == slots || context != env.getCurrentContext()) return;
+        // 按读取顺序交付
+        for (int i = 0; i < slots.length; i++) {
+            Slot slot = slots[(nextSlot + i) % slots.length];
+            if (!slot.pending) continue;
+            boolean wait = finish || frameIndex - slot.frame >= slots.length;
+            if (!complete(slot, wait)) break;
+        }
+    }
+
+    /**
+     * 判断是否有未交付的读取
+     *
+     * @return true，有；false，没有
+     */
+    boolean hasPending() {
+        if (null == slots) return false;
+        for (Slot slot : slots) {
+            if (slot.pending) return true;
+        }
+        return false;
+    }
+
+    private boolean complete(Slot slot, boolean wait) {
+        GLBackend backend = env.getBackend();
+        int result = backend.glClientWaitSync(slot.fence,
+                wait ? GLES30.GL_SYNC_FLUSH_COMMANDS_BIT : 0, wait ? 1000000000L : 0);
+        if (result != GLES30.GL_ALREADY_SIGNALED && result != GLES30.GL_CONDITION_SATISFIED) {
+            if (!wait) return false;
+            Log.w(TAG, String.format("complete: glClientWaitSync: 0x%x", result));
+        }
+        backend.glDeleteSync(slot.fence);
+        slot.fence = 0;
+        slot.pending = false;
+        int size = slot.width * slot.height * 4;
+        GLStateCache stateCache = env.getStateCache();
+        stateCache.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, slot.buffer);
+        Buffer mapped = backend.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER, 0, size, GLES30.GL_MAP_READ_BIT);
+        if (mapped instanceof ByteBuffer) {
+            GLPooledBuffer pixels = env.getBufferPool().acquire(size);
+            ByteBuffer src = ((ByteBuffer) mapped).duplicate();
+            src.clear().limit(size);
+            pixels.asByteBuffer().put(src);
+            backend.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+            deliver(pixels, slot.width, slot.height, slot.sequence, frameIndex - slot.frame);
+        } else {
+            Log.w(TAG, "complete: glMapBufferRange failed");
+            droppedCount++;
+        }
+        stateCache.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        return true;
+    }
+
+    private void deliver(GLPooledBuffer pixels, int width, int height, long sequence, long latency) {
+        latencyFrames += latency;
+        getExecutor().execute(() -> {
+            try {
+                callback.onReadback(this, pixels, width, height, sequence);
+            } catch (Exception e) {
+                Log.w(TAG, "deliver: ", e);
+            } finally {
+                pixels.release();
+            }
+            deliveredCount++;
+        });
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (null == executor) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, TAG);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * 上下文改变时，原像素缓冲区随原上下文销毁，未交付的读取被丢弃
+     */
+    private void checkContext() {
+        Object current = env.getCurrentContext();
+        if (null != slots && context == current) return;
+        if (null != slots) {
+            for (Slot slot : slots) {
+                if (slot.pending) droppedCount++;
+            }
+        }
+        context = current;
+        mapEnabled = env.getGLESVersion() >= 3;
+        slots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new Slot();
+        }
+        nextSlot = 0;
+    }
+
+    /**
+     * 释放读取，未交付的读取被丢弃；可在任意线程调用
+     */
+    public void release() {
+        env.runGLAction(() -> {
+            env.removeReadback(this);
+            destroy();
+        });
+    }
+
+    /**
+     * 删除像素缓冲区及栅栏，停止回调线程，只能在绘制线程调用
+     */
+    void destroy() {
+        if (null != slots) {
+            boolean sameContext = context == env.getCurrentContext();
+            GLBackend backend = env.getBackend();
+            for (Slot slot : slots) {
+                if (slot.pending) droppedCount++;
+                if (!sameContext) continue;
+                if (slot.fence != 0) {
+                    backend.glDeleteSync(slot.fence);
+                }
+                if (slot.buffer != 0) {
+                    env.getStateCache().onBufferDeleted(slot.buffer);
+                    backend.glDeleteBuffers(1, new int[]{slot.buffer}, 0);
+                }
+            }
+            slots = null;
+        }
+        context = null;
+        synchronized (this) {
+            if (null != executor) {
+                // 已提交的回调继续执行，以便归还缓冲区
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    public long getCaptureCount() {
+        return captureCount;
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * 获取等待GPU的次数，包括像素缓冲区不足及GLES2同步读取
+     *
+     * @return 次数
+     */
+    public long getStallCount() {
+        return stallCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * 获取平均交付延迟
+     *
+     * @return 从读取到交付的平均帧数
+     */
+    public float getAverageLatencyFrames() {
+        long count = captureCount - droppedCount;
+        return count <= 0 ? 0 : (float) latencyFrames / count;
+    }
+
+    @Override
+    public String toString() {
+        return "GLReadback{" +
+                "captureCount=" + captureCount +
+                ", deliveredCount=" + deliveredCount +
+                ", stallCount=" + stallCount +
+                ", droppedCount=" + droppedCount +
+                ", averageLatencyFrames=" + getAverageLatencyFrames() +
+                '}';
+    }
+
+    /**
+     * 读取回调
+     */
+    public interface Callback {
+
+        /**
+         * 读取完成，在回调线程执行
+         *
+         * @param readback 读取对象
+         * @param pixels   像素，RGBA，行从下到上；回调返回后归还到缓冲区池，需要保留时自行复制
+         * @param width    宽
+         * @param height   高
+         * @param sequence 读取序号，从0开始
+         */
+        void onReadback(GLReadback readback, GLPooledBuffer pixels, int width, int height, long sequence);
+    }
+
+    /**
+     * 像素缓冲区
+     */
+    private static final class Slot {
+
+        int buffer; // 缓冲区id
+        int capacity; // 已分配的字节数
+        long fence; // 读取完成栅栏
+        int width; // 读取的宽
+        int height; // 读取的高
+        long frame; // 读取时的帧序号
+        long sequence; // 读取序号
+        boolean pending; // 是否等待交付
+    }
+}
@@ -0,0 +1,992 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.EGL14;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 纯JVM的记录后端，不调用任何EGL及GL函数，只统计调用次数并模拟display、context及surface，
+ * 可用于在非Android设备上测量及断言帧循环的调用开销
+ */
+public class GLRecordingBackend implements GLBackend {
+
+    private static final int PROGRAM_BINARY_LENGTH = 16; // 模拟的程序二进制数据长度
+    private static final Pattern COMMENT = Pattern.compile("//[^\\n]*|/\\*[\\s\\S]*?\\*/");
+    private static final Pattern DECLARATION = Pattern.compile(
+            "\\b(uniform|attribute|in)\\s+(?:(?:lowp|mediump|highp)\\s+)?(\\w+)\\s+([^;{]+);");
+    private static final Pattern DECLARATOR = Pattern.compile("(\\w+)\\s*(?:\\[\\s*(\\d+)\\s*])?");
+
+    private final Map<String, long[]> callCounts = new HashMap<>(); // 调用次数
+    private final Set<Handle> liveHandles = new HashSet<>(); // 存活的模拟对象
+    private final Map<String, Integer> locations = new HashMap<>(); // 模拟的变量location，未通过源码链接的程序使用
+    private final Map<Integer, String> shaderSources = new HashMap<>(); // shader源码
+    private final Map<Integer, Integer> shaderTypes = new HashMap<>(); // shader类型
+    private final Map<Integer, List<Integer>> programShaders = new HashMap<>(); // 程序附加的shader
+    private final Map<Integer, LinkedProgram> linkedPrograms = new HashMap<>(); // 通过源码链接的程序
+    private long totalCalls; // 总调用次数
+    private int nextId = 1; // 下一个对象id
+    private int eglError = EGL14.EGL_SUCCESS; // 当前EGL错误
+    private volatile boolean damageSupported = true; // 是否模拟传递修改区域
+    private final ArrayDeque<Integer> glErrors = new ArrayDeque<>(); // 待读取的GL错误
+    private final ThreadLocal<Handle> currentSurface = new ThreadLocal<>(); // 每个线程的当前surface
+
+    /**
+     * 记录一次调用
+     *
+     * @param name 函数名称
+     */
+    protected void record(String name) {
+        synchronized (callCounts) {
+            long[] count = callCounts.get(name);
+            if (null == count) {
+                count = new long[1];
+                callCounts.put(name, count);
+            }
+            count[0]++;
+            totalCalls++;
+        }
+    }
+
+    /**
+     * 获取函数调用次数
+     *
+     * @param name 函数名称，例如：eglSwapBuffers
+     * @return 调用次数
+     */
+    public long getCallCount(String name) {
+        synchronized (callCounts) {
+            long[] count = callCounts.get(name);
+            return null == count ? 0 : count[0];
+        }
+    }
+
+    /**
+     * 获取所有函数调用次数
+     *
+     * @return 函数名称与调用次数的副本
+     */
+    public Map<String, Long> getCallCounts() {
+        synchronized (callCounts) {
+            Map<String, Long> result = new HashMap<>();
+            for (Map.Entry<String, long[]> entry : callCounts.entrySet()) {
+                result.put(entry.getKey(), entry.getValue()[0]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 获取总调用次数
+     *
+     * @return 总调用次数
+     */
+    public long getTotalCallCount() {
+        synchronized (callCounts) {
+            return totalCalls;
+        }
+    }
+
+    /**
+     * 清空调用次数统计，模拟的对象不受影响
+     */
+    public void resetCounts() {
+        synchronized (callCounts) {
+            callCounts.clear();
+            totalCalls = 0;
+        }
+    }
+
+    /**
+     * 获取存活的模拟surface数量
+     *
+     * @return surface数量
+     */
+    public int getLiveSurfaceCount() {
+        synchronized (liveHandles) {
+            int count = 0;
+            for (Handle handle : liveHandles) {
+                if (handle.type == Handle.TYPE_SURFACE) count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * 设置是否模拟将修改区域传递给EGL，关闭时与{@link GLAndroidBackend GLAndroidBackend}相同，只交换整个缓冲区
+     *
+     * @param supported true，传递；false，不传递，默认：true
+     */
+    public void setDamageSupported(boolean supported) {
+        this.damageSupported = supported;
+    }
+
+    /**
+     * 模拟产生GL错误，之后由glGetError按顺序读取
+     *
+     * @param error 错误，例如：GL_INVALID_OPERATION
+     */
+    public void raiseGLError(int error) {
+        synchronized (glErrors) {
+            glErrors.offer(error);
+        }
+    }
+
+    private Handle newHandle(int type) {
+        synchronized (liveHandles) {
+            Handle handle = new Handle(type, nextId++);
+            liveHandles.add(handle);
+            return handle;
+        }
+    }
+
+    private boolean isLive(Object obj, int type) {
+        synchronized (liveHandles) {
+            return obj instanceof Handle && ((Handle) obj).type == type && liveHandles.contains(obj);
+        }
+    }
+
+    private void release(Object obj) {
+        synchronized (liveHandles) {
+            liveHandles.remove(obj);
+        }
+    }
+
+    private int nextObjectId() {
+        synchronized (liveHandles) {
+            return nextId++;
+        }
+    }
+
+    @Override
+    public Object eglGetDisplay() {
+        record("eglGetDisplay");
+        return newHandle(Handle.TYPE_DISPLAY);
+    }
+
+    @Override
+    public boolean eglInitialize(Object display, int[] version) {
+        record("eglInitialize");
+        version[0] = 1;
+        version[1] = 4;
+        return isLive(display, Handle.TYPE_DISPLAY);
+    }
+
+    @Override
+    public void eglTerminate(Object display) {
+        record("eglTerminate");
+        release(display);
+    }
+
+    @Override
+    public Object eglChooseConfig(Object display, int[] attribList) {
+        record("eglChooseConfig");
+        return newHandle(Handle.TYPE_CONFIG);
+    }
+
+    @Override
+    public Object eglCreateContext(Object display, Object config, Object shareContext, int[] attribList) {
+        record("eglCreateContext");
+        return newHandle(Handle.TYPE_CONTEXT);
+    }
+
+    @Override
+    public void eglDestroyContext(Object display, Object context) {
+        record("eglDestroyContext");
+        release(context);
+    }
+
+    @Override
+    public Object eglCreateWindowSurface(Object display, Object config, Object window, int[] attribList) {
+        record("eglCreateWindowSurface");
+        return newHandle(Handle.TYPE_SURFACE);
+    }
+
+    @Override
+    public Object eglCreatePbufferSurface(Object display, Object config, int[] attribList) {
+        record("eglCreatePbufferSurface");
+        return newHandle(Handle.TYPE_SURFACE);
+    }
+
+    @Override
+    public void eglDestroySurface(Object display, Object surface) {
+        record("eglDestroySurface");
+        release(surface);
+    }
+
+    @Override
+    public boolean eglMakeCurrent(Object display, Object draw, Object read, Object context) {
+        record("eglMakeCurrent");
+        if (null == context) {
+            currentSurface.remove();
+            return true;
+        }
+        if (!isLive(context, Handle.TYPE_CONTEXT) || !isLive(draw, Handle.TYPE_SURFACE)) {
+            eglError = EGL14.EGL_BAD_SURFACE;
+            return false;
+        }
+        currentSurface.set((Handle) draw);
+        return true;
+    }
+
+    @Override
+    public boolean eglSwapBuffers(Object display, Object surface) {
+        record("eglSwapBuffers");
+        return swap(surface);
+    }
+
+    private boolean swap(Object surface) {
+        if (surface != currentSurface.get() || !isLive(surface, Handle.TYPE_SURFACE)) {
+            eglError = EGL14.EGL_BAD_SURFACE;
+            return false;
+        }
+        ((Handle) surface).swapCount++;
+        return true;
+    }
+
+    @Override
+    public String eglQueryString(Object display, int name) {
+        record("eglQueryString");
+        if (name == EGL14.EGL_EXTENSIONS) {
+            return "EGL_KHR_swap_buffers_with_damage EGL_EXT_buffer_age";
+        }
+        if (name == EGL14.EGL_VERSION) {
+            return "1.4 GLRecordingBackend";
+        }
+        return null;
+    }
+
+    @Override
+    public boolean eglQuerySurface(Object display, Object surface, int attribute, int[] value) {
+        record("eglQuerySurface");
+        if (!isLive(surface, Handle.TYPE_SURFACE)) {
+            eglError = EGL14.EGL_BAD_SURFACE;
+            return false;
+        }
+        // 模拟双缓冲：交换过两次以上时缓冲区年龄为2
+        value[0] = attribute == GLOutput.EGL_BUFFER_AGE_EXT ? Math.min(((Handle) surface).swapCount, 2) : 0;
+        return true;
+    }
+
+    @Override
+    public boolean eglSetDamageRegion(Object display, Object surface, int[] rects, int count) {
+        record("eglSetDamageRegion");
+        return damageSupported;
+    }
+
+    @Override
+    public boolean eglSwapBuffersWithDamage(Object display, Object surface, int[] rects, int count) {
+        record("eglSwapBuffersWithDamage");
+        return swap(surface);
+    }
+
+    @Override
+    public boolean isSwapBuffersWithDamageSupported() {
+        return damageSupported;
+    }
+
+    @Override
+    public Object eglCreateFenceSync(Object display) {
+        record("eglCreateFenceSync");
+        return newHandle(Handle.TYPE_SYNC);
+    }
+
+    @Override
+    public boolean eglWaitSync(Object display, Object sync) {
+        record("eglWaitSync");
+        return isLive(sync, Handle.TYPE_SYNC);
+    }
+
+    @Override
+    public boolean eglDestroySync(Object display, Object sync) {
+        record("eglDestroySync");
+        release(sync);
+        return true;
+    }
+
+    @Override
+    public int eglGetError() {
+        record("eglGetError");
+        int error = eglError;
+        eglError = EGL14.EGL_SUCCESS;
+        return error;
+    }
+
+    @Override
+    public void glFlush() {
+        record("glFlush");
+    }
+
+    @Override
+    public void glFinish() {
+        record("glFinish");
+    }
+
+    @Override
+    public void glWaitSync(long sync, int flags, long timeout) {
+        record("glWaitSync");
+    }
+
+    @Override
+    public int glGetError() {
+        record("glGetError");
+        synchronized (glErrors) {
+            Integer error = glErrors.poll();
+            return null == error ? GLES20.GL_NO_ERROR : error;
+        }
+    }
+
+    @Override
+    public String glGetString(int name) {
+        record("glGetString");
+        switch (name) {
+            case GLES20.GL_VENDOR:
+                return "EasyGL";
+            case GLES20.GL_RENDERER:
+                return "GLRecordingBackend";
+            case GLES20.GL_VERSION:
+                return "OpenGL ES 3.0 Recording";
+            default:
+                return "";
+        }
+    }
+
+    @Override
+    public void glGetIntegerv(int name, int[] params, int offset) {
+        record("glGetIntegerv");
+        switch (name) {
+            case GLES30.GL_NUM_PROGRAM_BINARY_FORMATS:
+                params[offset] = 1;
+                break;
+            case GLES20.GL_MAX_TEXTURE_SIZE:
+                params[offset] = 4096;
+                break;
+            case GLES20.GL_MAX_TEXTURE_IMAGE_UNITS:
+                params[offset] = 16;
+                break;
+            case GLES20.GL_VIEWPORT:
+                // 不跟踪状态，视口未知
+                params[offset] = params[offset + 1] = params[offset + 2] = params[offset + 3] = 0;
+                break;
+            default:
+                params[offset] = 0;
+                break;
+        }
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        record("glViewport");
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        record("glUseProgram");
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        record("glActiveTexture");
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        record("glBindTexture");
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        record("glBindBuffer");
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        record("glBindFramebuffer");
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        record("glEnable");
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        record("glDisable");
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        record("glBlendFunc");
+    }
+
+    @Override
+    public void glDepthFunc(int func) {
+        record("glDepthFunc");
+    }
+
+    @Override
+    public void glDepthMask(boolean flag) {
+        record("glDepthMask");
+    }
+
+    @Override
+    public void glCullFace(int mode) {
+        record("glCullFace");
+    }
+
+    @Override
+    public void glScissor(int x, int y, int width, int height) {
+        record("glScissor");
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        record("glGenTextures");
+        for (int i = 0; i < n; i++) {
+            textures[offset + i] = nextObjectId();
+        }
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        record("glDeleteTextures");
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        record("glTexParameteri");
+    }
+
+    @Override
+    public void glPixelStorei(int pname, int param) {
+        record("glPixelStorei");
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+        record("glTexImage2D");
+    }
+
+    @Override
+    public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height, int format, int type, Buffer pixels) {
+        record("glTexSubImage2D");
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        record("glGenFramebuffers");
+        for (int i = 0; i < n; i++) {
+            framebuffers[offset + i] = nextObjectId();
+        }
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        record("glDeleteFramebuffers");
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+        record("glFramebufferTexture2D");
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        record("glCheckFramebufferStatus");
+        return GLES20.GL_FRAMEBUFFER_COMPLETE;
+    }
+
+    @Override
+    public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+        record("glGenRenderbuffers");
+        for (int i = 0; i < n; i++) {
+            renderbuffers[offset + i] = nextObjectId();
+        }
+    }
+
+    @Override
+    public void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset) {
+        record("glDeleteRenderbuffers");
+    }
+
+    @Override
+    public void glBindRenderbuffer(int target, int renderbuffer) {
+        record("glBindRenderbuffer");
+    }
+
+    @Override
+    public void glRenderbufferStorage(int target, int internalformat, int width, int height) {
+        record("glRenderbufferStorage");
+    }
+
+    @Override
+    public void glFramebufferRenderbuffer(int target, int attachment, int renderbuffertarget, int renderbuffer) {
+        record("glFramebufferRenderbuffer");
+    }
+
+    @Override
+    public void glCopyTexSubImage2D(int target, int level, int xoffset, int yoffset, int x, int y, int width, int height) {
+        record("glCopyTexSubImage2D");
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, Buffer pixels) {
+        record("glReadPixels");
+    }
+
+    @Override
+    public void glReadPixels(int x, int y, int width, int height, int format, int type, int offset) {
+        record("glReadPixels");
+    }
+
+    @Override
+    public void glBlitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1,
+                                  int dstX0, int dstY0, int dstX1, int dstY1, int mask, int filter) {
+        record("glBlitFramebuffer");
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        record("glGenBuffers");
+        for (int i = 0; i < n; i++) {
+            buffers[offset + i] = nextObjectId();
+        }
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        record("glDeleteBuffers");
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        record("glBufferData");
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        record("glBufferSubData");
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        record("glVertexAttribPointer");
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        record("glEnableVertexAttribArray");
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        record("glDisableVertexAttribArray");
+    }
+
+    @Override
+    public void glDrawArrays(int mode, int first, int count) {
+        record("glDrawArrays");
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        record("glDrawElements");
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        record("glVertexAttribDivisor");
+    }
+
+    @Override
+    public void glDrawArraysInstanced(int mode, int first, int count, int instanceCount) {
+        record("glDrawArraysInstanced");
+    }
+
+    @Override
+    public Buffer glMapBufferRange(int target, int offset, int length, int access) {
+        record("glMapBufferRange");
+        return ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+    }
+
+    @Override
+    public boolean glUnmapBuffer(int target) {
+        record("glUnmapBuffer");
+        return true;
+    }
+
+    @Override
+    public long glFenceSync(int condition, int flags) {
+        record("glFenceSync");
+        return nextObjectId();
+    }
+
+    @Override
+    public int glClientWaitSync(long sync, int flags, long timeout) {
+        record("glClientWaitSync");
+        return GLES30.GL_ALREADY_SIGNALED;
+    }
+
+    @Override
+    public void glDeleteSync(long sync) {
+        record("glDeleteSync");
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        record("glCreateShader");
+        int shader = nextObjectId();
+        synchronized (locations) {
+            shaderTypes.put(shader, type);
+        }
+        return shader;
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        record("glShaderSource");
+        synchronized (locations) {
+            shaderSources.put(shader, source);
+        }
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        record("glCompileShader");
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int name, int[] params, int offset) {
+        record("glGetShaderiv");
+        params[offset] = GLES20.GL_TRUE;
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        record("glDeleteShader");
+        synchronized (locations) {
+            shaderSources.remove(shader);
+            shaderTypes.remove(shader);
+        }
+    }
+
+    @Override
+    public int glCreateProgram() {
+        record("glCreateProgram");
+        return nextObjectId();
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        record("glAttachShader");
+        synchronized (locations) {
+            List<Integer> shaders = programShaders.get(program);
+            if (null == shaders) {
+                shaders = new ArrayList<>();
+                programShaders.put(program, shaders);
+            }
+            shaders.add(shader);
+        }
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        record("glLinkProgram");
+        synchronized (locations) {
+            List<Integer> shaders = programShaders.get(program);
+            if (null == shaders) return;
+            LinkedProgram linked = new LinkedProgram();
+            for (int shader : shaders) {
+                String source = shaderSources.get(shader);
+                if (null == source) continue;
+                Integer type = shaderTypes.get(shader);
+                linked.parse(source, null != type && type == GLES20.GL_VERTEX_SHADER);
+            }
+            linkedPrograms.put(program, linked);
+        }
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int name, int[] params, int offset) {
+        record("glGetProgramiv");
+        switch (name) {
+            case GLES20.GL_LINK_STATUS:
+                params[offset] = GLES20.GL_TRUE;
+                break;
+            case GLES30.GL_PROGRAM_BINARY_LENGTH:
+                params[offset] = PROGRAM_BINARY_LENGTH;
+                break;
+            case GLES20.GL_ACTIVE_UNIFORMS:
+            case GLES20.GL_ACTIVE_ATTRIBUTES:
+                synchronized (locations) {
+                    LinkedProgram linked = linkedPrograms.get(program);
+                    params[offset] = null == linked ? 0 : name == GLES20.GL_ACTIVE_UNIFORMS
+                            ? linked.uniforms.size() : linked.attributes.size();
+                }
+                break;
+            default:
+                params[offset] = 0;
+                break;
+        }
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        record("glDeleteProgram");
+        synchronized (locations) {
+            programShaders.remove(program);
+            linkedPrograms.remove(program);
+        }
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        record("glGetUniformLocation");
+        return getLocation(program, name, true);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        record("glGetAttribLocation");
+        return getLocation(program, name, false);
+    }
+
+    @Override
+    public String glGetActiveUniform(int program, int index, int[] size, int[] type) {
+        record("glGetActiveUniform");
+        return getActive(program, index, size, type, true);
+    }
+
+    @Override
+    public String glGetActiveAttrib(int program, int index, int[] size, int[] type) {
+        record("glGetActiveAttrib");
+        return getActive(program, index, size, type, false);
+    }
+
+    private String getActive(int program, int index, int[] size, int[] type, boolean uniform) {
+        synchronized (locations) {
+            LinkedProgram linked = linkedPrograms.get(program);
+            List<Variable> variables = null == linked ? null : uniform ? linked.uniforms : linked.attributes;
+            if (null == variables || index < 0 || index >= variables.size()) return "";
+            Variable variable = variables.get(index);
+            size[0] = variable.size;
+            type[0] = variable.type;
+            // 与GL相同，数组变量名称带[0]
+            return variable.size > 1 ? variable.name + "[0]" : variable.name;
+        }
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        record("glUniform1i");
+    }
+
+    @Override
+    public void glUniform1f(int location, float x) {
+        record("glUniform1f");
+    }
+
+    @Override
+    public void glUniform2f(int location, float x, float y) {
+        record("glUniform2f");
+    }
+
+    @Override
+    public void glUniform3f(int location, float x, float y, float z) {
+        record("glUniform3f");
+    }
+
+    @Override
+    public void glUniform4f(int location, float x, float y, float z, float w) {
+        record("glUniform4f");
+    }
+
+    @Override
+    public void glUniformMatrix3fv(int location, int count, boolean transpose, float[] value, int offset) {
+        record("glUniformMatrix3fv");
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        record("glUniformMatrix4fv");
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int name, int value) {
+        record("glProgramParameteri");
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int[] binaryFormat, Buffer binary) {
+        record("glGetProgramBinary");
+        ByteBuffer buffer = (ByteBuffer) binary;
+        int size = Math.min(bufSize, PROGRAM_BINARY_LENGTH);
+        for (int i = 0; i < size; i++) {
+            buffer.put(i, (byte) program);
+        }
+        length[0] = size;
+        binaryFormat[0] = 1;
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        record("glProgramBinary");
+    }
+
+    private int getLocation(int program, String name, boolean uniform) {
+        synchronized (locations) {
+            LinkedProgram linked = linkedPrograms.get(program);
+            if (null != linked) {
+                return linked.getLocation(name, uniform);
+            }
+            String key = program + "/" + name;
+            Integer location = locations.get(key);
+            if (null == location) {
+                location = locations.size();
+                locations.put(key, location);
+            }
+            return location;
+        }
+    }
+
+    /**
+     * 通过源码链接的程序，按源码中的声明模拟活跃变量及location
+     */
+    private static final class LinkedProgram {
+
+        final List<Variable> uniforms = new ArrayList<>(); // 活跃的uniform变量
+        final List<Variable> attributes = new ArrayList<>(); // 活跃的attribute变量
+        private int nextUniformLocation = 0; // 下一个uniform location
+        private int nextAttribLocation = 0; // 下一个attribute location
+
+        void parse(String source, boolean vertex) {
+            Matcher matcher = DECLARATION.matcher(COMMENT.matcher(source).replaceAll(""));
+            while (matcher.find()) {
+                String qualifier = matcher.group(1);
+                boolean uniform = qualifier.equals("uniform");
+                // 片元shader的输入不是attribute
+                if (!uniform && !vertex) continue;
+                int type = typeOf(matcher.group(2));
+                Matcher declarator = DECLARATOR.matcher(matcher.group(3));
+                while (declarator.find()) {
+                    String name = declarator.group(1);
+                    int size = null == declarator.group(2) ? 1 : Integer.parseInt(declarator.group(2));
+                    List<Variable> variables = uniform ? uniforms : attributes;
+                    if (null != find(variables, name)) continue;
+                    int location;
+                    if (uniform) {
+                        location = nextUniformLocation;
+                        nextUniformLocation += size;
+                    } else {
+                        location = nextAttribLocation;
+                        nextAttribLocation += size;
+                    }
+                    variables.add(new Variable(name, size, type, location));
+                }
+            }
+        }
+
+        int getLocation(String name, boolean uniform) {
+            int index = 0;
+            int bracket = name.indexOf('[');
+            if (bracket > 0 && name.endsWith("]")) {
+                try {
+                    index = Integer.parseInt(name.substring(bracket + 1, name.length() - 1).trim());
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+                name = name.substring(0, bracket);
+            }
+            Variable variable = find(uniform ? uniforms : attributes, name);
+            if (null == variable || index < 0 || index >= variable.size) return -1;
+            return variable.location + index;
+        }
+
+        private static Variable find(List<Variable> variables, String name) {
+            for (Variable variable : variables) {
+                if (variable.name.equals(name)) return variable;
+            }
+            return null;
+        }
+
+        private static int typeOf(String name) {
+            switch (name) {
+                case "float":
+                    return GLES20.GL_FLOAT;
+                case "vec2":
+                    return GLES20.GL_FLOAT_VEC2;
+                case "vec3":
+                    return GLES20.GL_FLOAT_VEC3;
+                case "vec4":
+                    return GLES20.GL_FLOAT_VEC4;
+                case "mat4":
+                    return GLES20.GL_FLOAT_MAT4;
+                case "int":
+                    return GLES20.GL_INT;
+                case "sampler2D":
+                    return GLES20.GL_SAMPLER_2D;
+                default:
+                    return 0;
+            }
+        }
+    }
+
+    /**
+     * 模拟的活跃变量
+     */
+    private static final class Variable {
+
+        final String name;
+        final int size;
+        final int type;
+        final int location;
+
+        Variable(String name, int size, int type, int location) {
+            this.name = name;
+            this.size = size;
+            this.type = type;
+            this.location = location;
+        }
+    }
+
+    /**
+     * 模拟的EGL对象
+     */
+    private static final class Handle {
+
+        static final int TYPE_DISPLAY = 0;
+        static final int TYPE_CONFIG = 1;
+        static final int TYPE_CONTEXT = 2;
+        static final int TYPE_SURFACE = 3;
+        static final int TYPE_SYNC = 4;
+
+        final int type;
+        final int id;
+        int swapCount; // surface交换次数
+
+        Handle(int type, int id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public String toString() {
+            return "Handle{" +
+                    "type=" + type +
+                    ", id=" + id +
+                    '}';
+        }
+    }
+}
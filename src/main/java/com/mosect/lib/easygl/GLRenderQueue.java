@@ -0,0 +1,218 @@
+package com.mosect.lib.easygl;
+
+import java.util.Arrays;
+
+/**
+ * 渲染队列，实体对象提交带排序键的绘制项，环境排序后按顺序绘制，以减少程序及纹理切换
+ * 不透明与透明绘制项分开排序，先绘制不透明，后绘制透明；排序使用基数排序，稳定且不分配内存
+ * 注意：只能在绘制线程使用
+ */
+public final class GLRenderQueue {
+
+    private static final int DEPTH_BITS = 24;
+    private static final int DEPTH_MAX = (1 << DEPTH_BITS) - 1;
+
+    private final Pass opaquePass = new Pass(); // 不透明
+    private final Pass transparentPass = new Pass(); // 透明
+    private int objectIndex; // 当前提交对象在场景中的位置
+
+    /**
+     * 生成不透明绘制项的排序键：层级 > shader > 纹理 > 深度（由近到远）
+     *
+     * @param layer   层级，范围：[0, 255]，小的先绘制
+     * @param shader  shader标识，通常为程序id，范围：[0, 65535]
+     * @param texture 纹理标识，通常为纹理id，范围：[0, 65535]
+     * @param depth   深度，范围：[0, 1]，0为最近
+     * @return 排序键
+     */
+    public static long opaqueKey(int layer, int shader, int texture, float depth) {
+        return ((long) (layer & 0xFF) << 56)
+                | ((long) (shader & 0xFFFF) << 40)
+                | ((long) (texture & 0xFFFF) << 24)
+                | quantizeDepth(depth);
+    }
+
+    /**
+     * 生成透明绘制项的排序键：层级 > 深度（由远到近） > shader > 纹理
+     *
+     * @param layer   层级，范围：[0, 255]，小的先绘制
+     * @param depth   深度，范围：[0, 1]，0为最近
+     * @param shader  shader标识，范围：[0, 65535]
+     * @param texture 纹理标识，范围：[0, 65535]
+     * @return 排序键
+     */
+    public static long transparentKey(int layer, float depth, int shader, int texture) {
+        return ((long) (layer & 0xFF) << 56)
+                | ((DEPTH_MAX - quantizeDepth(depth)) << 32)
+                | ((long) (shader & 0xFFFF) << 16)
+                | (texture & 0xFFFF);
+    }
+
+    private static long quantizeDepth(float depth) {
+        if (!(depth > 0)) return 0;
+        if (depth >= 1) return DEPTH_MAX;
+        return (long) (depth * DEPTH_MAX);
+    }
+
+    /**
+     * 提交不透明绘制项
+     *
+     * @param object 实体对象，绘制时回调其{@link GLObject#onGLDrawItem(int) onGLDrawItem}
+     * @param key    排序键，参考{@link #opaqueKey(int, int, int, float) opaqueKey}，按无符号数排序
+     * @param tag    绘制项标记，回调时传回
+     */
+    public void submit(GLObject<?> object, long key, int tag) {
+        opaquePass.add(object, key, tag, objectIndex);
+    }
+
+    /**
+     * 提交透明绘制项
+     *
+     * @param object 实体对象，绘制时回调其{@link GLObject#onGLDrawItem(int) onGLDrawItem}
+     * @param key    排序键，参考{@link #transparentKey(int, float, int, int) transparentKey}，按无符号数排序
+     * @param tag    绘制项标记，回调时传回
+     */
+    public void submitTransparent(GLObject<?> object, long key, int tag) {
+        transparentPass.add(object, key, tag, objectIndex);
+    }
+
+    /**
+     * 获取已提交的绘制项数量
+     *
+     * @return 绘制项数量
+     */
+    public int size() {
+        return opaquePass.size + transparentPass.size;
+    }
+
+    /**
+     * 收集场景中所有实体对象的绘制项并排序
+     *
+     * @param objects 实体对象
+     */
+    void collect(GLObject<?>[] objects) {
+        for (int i = 0; i < objects.length; i++) {
+            objectIndex = i;
+            objects[i].dispatchSubmit(this);
+        }
+        opaquePass.sort();
+        transparentPass.sort();
+    }
+
+    /**
+     * 按顺序绘制绘制项
+     *
+     * @param stats         帧耗时统计，null表示不统计
+     * @param indexOffset   实体对象在统计中的起始位置
+     * @param objectVisible 实体对象是否绘制，按场景中的位置索引；null表示全部绘制
+     */
+    void dispatch(GLFrameStats stats, int indexOffset, boolean[] objectVisible) {
+        opaquePass.dispatch(stats, indexOffset, objectVisible);
+        transparentPass.dispatch(stats, indexOffset, objectVisible);
+    }
+
+    /**
+     * 清空绘制项
+     */
+    void clear() {
+        opaquePass.clear();
+        transparentPass.clear();
+    }
+
+    /**
+     * 单个绘制阶段，使用平行数组保存绘制项，容量只增不减
+     */
+    private static final class Pass {
+
+        private GLObject<?>[] objects = new GLObject<?>[64];
+        private int[] tags = new int[64];
+        private int[] objectIndices = new int[64];
+        private long[] keys = new long[64];
+        private int[] order = new int[64]; // 排序后的绘制项位置
+        private long[] sortKeys = new long[64]; // 排序缓冲区
+        private long[] tempKeys = new long[64]; // 排序缓冲区
+        private int[] tempOrder = new int[64]; // 排序缓冲区
+        private final int[] counts = new int[256];
+        private int size = 0;
+
+        void add(GLObject<?> object, long key, int tag, int objectIndex) {
+            if (size == objects.length) {
+                int capacity = size * 2;
+                objects = Arrays.copyOf(objects, capacity);
+                tags = Arrays.copyOf(tags, capacity);
+                objectIndices = Arrays.copyOf(objectIndices, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+                order = new int[capacity];
+                sortKeys = new long[capacity];
+                tempKeys = new long[capacity];
+                tempOrder = new int[capacity];
+            }
+            objects[size] = object;
+            tags[size] = tag;
+            objectIndices[size] = objectIndex;
+            keys[size] = key;
+            size++;
+        }
+
+        /**
+         * LSD基数排序，每次处理8位，所有键在某一位上相同时跳过该位
+         */
+        void sort() {
+            int size = this.size;
+            if (size == 0) return;
+            long[] srcKeys = sortKeys;
+            int[] srcOrder = order;
+            long[] dstKeys = tempKeys;
+            int[] dstOrder = tempOrder;
+            System.arraycopy(keys, 0, srcKeys, 0, size);
+            for (int i = 0; i < size; i++) {
+                srcOrder[i] = i;
+            }
+            for (int shift = 0; shift < 64; shift += 8) {
+                Arrays.fill(counts, 0);
+                for (int i = 0; i < size; i++) {
+                    counts[(int) (srcKeys[i] >>> shift) & 0xFF]++;
+                }
+                if (counts[(int) (srcKeys[0] >>> shift) & 0xFF] == size) continue; // 该位全部相同
+                int total = 0;
+                for (int i = 0; i < 256; i++) {
+                    int count = counts[i];
+                    counts[i] = total;
+                    total += count;
+                }
+                for (int i = 0; i < size; i++) {
+                    long key = srcKeys[i];
+                    int pos = counts[(int) (key >>> shift) & 0xFF]++;
+                    dstKeys[pos] = key;
+                    dstOrder[pos] = srcOrder[i];
+                }
+                long[] swapKeys = srcKeys;
+                srcKeys = dstKeys;
+                dstKeys = swapKeys;
+                int[] swapOrder = srcOrder;
+                srcOrder = dstOrder;
+                dstOrder = swapOrder;
+            }
+            if (srcOrder != order) {
+                System.arraycopy(srcOrder, 0, order, 0, size);
+            }
+        }
+
+        void dispatch(GLFrameStats stats, int indexOffset, boolean[] objectVisible) {
+            long time = null == stats ? 0 : System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                int index = order[i];
+                if (null != objectVisible && !objectVisible[objectIndices[index]]) continue;
+                objects[index].dispatchDrawItem(tags[index]);
+                if (null != stats) {
+                    time = stats.lapObject(indexOffset + objectIndices[index], time);
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(objects, 0, size, null);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+/**
+ * 离屏绘制目标，帧缓冲区加颜色附件及可选的深度/模板附件，由{@link GLRenderTargetPool GLRenderTargetPool}分配
+ * 颜色附件为纹理时，绘制结果可作为纹理使用；为渲染缓冲区时，只能读取像素或者复制到其他帧缓冲区
+ * 注意：只能在绘制线程使用；所属上下文销毁后失效
+ */
+public class GLRenderTarget {
+
+    private static final String TAG = "GL/RenderTarget";
+
+    /**
+     * 颜色附件：RGBA纹理
+     */
+    public static final int COLOR_TEXTURE = 0;
+    /**
+     * 颜色附件：RGBA8渲染缓冲区，需要GLES3或者OES_rgb8_rgba8扩展
+     */
+    public static final int COLOR_RENDERBUFFER = 1;
+
+    /**
+     * 深度附件：无
+     */
+    public static final int DEPTH_NONE = 0;
+    /**
+     * 深度附件：16位深度渲染缓冲区
+     */
+    public static final int DEPTH_16 = 1;
+    /**
+     * 深度附件：24位深度加8位模板渲染缓冲区，需要GLES3或者OES_packed_depth_stencil扩展
+     */
+    public static final int DEPTH_24_STENCIL_8 = 2;
+
+    private final GLEnv env; // 环境
+    private final GLRenderTargetPool pool; // 所属池，null表示不属于池
+    private final int width; // 宽
+    private final int height; // 高
+    private final int colorType; // 颜色附件类型
+    private final int depthType; // 深度附件类型
+    private int framebuffer; // 帧缓冲区id
+    private int texture; // 颜色附件纹理id
+    private int colorRenderbuffer; // 颜色附件渲染缓冲区id
+    private int depthRenderbuffer; // 深度附件渲染缓冲区id
+    private Object context; // 创建时的EGLContext
+    private int savedFramebuffer; // 绑定前的帧缓冲区
+    private final int[] savedViewport = new int[4]; // 绑定前的视口
+    boolean inUse; // 是否已分配，由池修改
+    long releaseFrame; // 归还时的帧序号，由池修改
+
+    GLRenderTarget(GLEnv env, GLRenderTargetPool pool, int width, int height, int colorType, int depthType) {
+        this.env = env;
+        this.pool = pool;
+        this.width = width;
+        this.height = height;
+        this.colorType = colorType;
+        this.depthType = depthType;
+    }
+
+    /**
+     * 在当前上下文创建帧缓冲区及附件
+     */
+    void create() {
+        GLBackend backend = env.getBackend();
+        GLStateCache stateCache = env.getStateCache();
+        int[] ids = new int[1];
+        backend.glGenFramebuffers(1, ids, 0);
+        framebuffer = ids[0];
+        context = env.getCurrentContext();
+        // 可能正在绘制到其他离屏目标，创建后恢复
+        int previous = stateCache.getFramebuffer();
+        stateCache.bindFramebuffer(framebuffer);
+        if (colorType == COLOR_RENDERBUFFER) {
+            colorRenderbuffer = createRenderbuffer(GLES30.GL_RGBA8);
+            backend.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                    GLES20.GL_RENDERBUFFER, colorRenderbuffer);
+        } else {
+            backend.glGenTextures(1, ids, 0);
+            texture = ids[0];
+            stateCache.bindTexture(GLES20.GL_TEXTURE_2D, texture);
+            backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+            backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+            backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+            backend.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+            backend.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                    GLES20.GL_TEXTURE_2D, texture, 0);
+        }
+        if (depthType == DEPTH_16) {
+            depthRenderbuffer = createRenderbuffer(GLES20.GL_DEPTH_COMPONENT16);
+            backend.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_DEPTH_ATTACHMENT,
+                    GLES20.GL_RENDERBUFFER, depthRenderbuffer);
+        } else if (depthType == DEPTH_24_STENCIL_8) {
+            depthRenderbuffer = createRenderbuffer(GLES30.GL_DEPTH24_STENCIL8);
+            // 分别附加到深度及模板，GLES2扩展不支持GL_DEPTH_STENCIL_ATTACHMENT
+            backend.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_DEPTH_ATTACHMENT,
+                    GLES20.GL_RENDERBUFFER, depthRenderbuffer);
+            backend.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_STENCIL_ATTACHMENT,
+                    GLES20.GL_RENDERBUFFER, depthRenderbuffer);
+        }
+        int status = backend.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        stateCache.bindFramebuffer(previous);
+        if (status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            delete();
+            throw new RuntimeException(String.format("glCheckFramebufferStatus: 0x%x", status));
+        }
+        Log.d(TAG, String.format("create: %sx%s, color=%s, depth=%s", width, height, colorType, depthType));
+    }
+
+    private int createRenderbuffer(int format) {
+        GLBackend backend = env.getBackend();
+        int[] ids = new int[1];
+        backend.glGenRenderbuffers(1, ids, 0);
+        backend.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, ids[0]);
+        backend.glRenderbufferStorage(GLES20.GL_RENDERBUFFER, format, width, height);
+        backend.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, 0);
+        return ids[0];
+    }
+
+    /**
+     * 删除帧缓冲区及附件；所属上下文已改变时只清除记录
+     */
+    void delete() {
+        if (null != context && context == env.getCurrentContext()) {
+            GLBackend backend = env.getBackend();
+            GLStateCache stateCache = env.getStateCache();
+            if (framebuffer != 0) {
+                stateCache.onFramebufferDeleted(framebuffer);
+                backend.glDeleteFramebuffers(1, new int[]{framebuffer}, 0);
+            }
+            if (texture != 0) {
+                stateCache.onTextureDeleted(texture);
+                backend.glDeleteTextures(1, new int[]{texture}, 0);
+            }
+            if (colorRenderbuffer != 0) {
+                backend.glDeleteRenderbuffers(1, new int[]{colorRenderbuffer}, 0);
+            }
+            if (depthRenderbuffer != 0) {
+                backend.glDeleteRenderbuffers(1, new int[]{depthRenderbuffer}, 0);
+            }
+        }
+        framebuffer = 0;
+        texture = 0;
+        colorRenderbuffer = 0;
+        depthRenderbuffer = 0;
+        context = null;
+    }
+
+    /**
+     * 绑定为当前帧缓冲区，并设置视口为目标大小；记录之前的帧缓冲区及视口，{@link #unbind() unbind}时恢复
+     */
+    public void bind() {
+        GLStateCache stateCache = env.getStateCache();
+        int previous = stateCache.getFramebuffer();
+        if (previous != framebuffer) {
+            savedFramebuffer = previous;
+            stateCache.getViewport(savedViewport, 0);
+        }
+        stateCache.bindFramebuffer(framebuffer);
+        stateCache.viewport(0, 0, width, height);
+    }
+
+    /**
+     * 恢复绑定前的帧缓冲区及视口，例如环境正在绘制的缩放目标；视口未知时设置为当前输出大小
+     */
+    public void unbind() {
+        GLStateCache stateCache = env.getStateCache();
+        stateCache.bindFramebuffer(savedFramebuffer);
+        if (savedViewport[2] > 0 && savedViewport[3] > 0) {
+            stateCache.viewport(savedViewport[0], savedViewport[1], savedViewport[2], savedViewport[3]);
+            return;
+        }
+        GLOutput<?> output = env.getCurrentOutput();
+        GLSurface surface = null == output ? null : output.getContent();
+        if (null != surface && surface.getWindowWidth() > 0 && surface.getWindowHeight() > 0) {
+            stateCache.viewport(0, 0, surface.getWindowWidth(), surface.getWindowHeight());
+        }
+    }
+
+    /**
+     * 归还到池中，之后不能再使用；不属于池时直接删除
+     */
+    public void release() {
+        if (null != pool) {
+            pool.release(this);
+        } else {
+            delete();
+        }
+    }
+
+    /**
+     * 判断是否可用
+     *
+     * @return true，已创建且所属上下文为当前上下文；false，不可用
+     */
+    public boolean isValid() {
+        return framebuffer != 0 && context == env.getCurrentContext();
+    }
+
+    /**
+     * 判断是否与指定规格相同
+     */
+    boolean matches(int width, int height, int colorType, int depthType) {
+        return this.width == width && this.height == height
+                && this.colorType == colorType && this.depthType == depthType;
+    }
+
+    /**
+     * 估算占用的显存
+     *
+     * @return 字节数
+     */
+    long getMemorySize() {
+        long pixels = (long) width * height;
+        long depthBytes = depthType == DEPTH_16 ? 2 : depthType == DEPTH_24_STENCIL_8 ? 4 : 0;
+        return pixels * (4 + depthBytes);
+    }
+
+    public int getFramebufferId() {
+        return framebuffer;
+    }
+
+    /**
+     * 获取颜色附件纹理id
+     *
+     * @return 纹理id；颜色附件为渲染缓冲区时为0
+     */
+    public int getTextureId() {
+        return texture;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getColorType() {
+        return colorType;
+    }
+
+    public int getDepthType() {
+        return depthType;
+    }
+
+    @Override
+    public String toString() {
+        return "GLRenderTarget{" +
+                "width=" + width +
+                ", height=" + height +
+                ", colorType=" + colorType +
+                ", depthType=" + depthType +
+                ", framebuffer=" + framebuffer +
+                ", texture=" + texture +
+                '}';
+    }
+}
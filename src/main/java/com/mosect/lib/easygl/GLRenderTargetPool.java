@@ -0,0 +1,180 @@
+package com.mosect.lib.easygl;
+
+import java.util.ArrayList;
+
+/**
+ * 离屏绘制目标池，由{@link GLEnv GLEnv}持有，按大小及附件类型复用帧缓冲区，
+ * 用于多遍绘制效果、预览等，无需创建EGLSurface及切换上下文
+ * 每帧结束时丢弃长时间未使用的目标；上下文改变时，原目标随原上下文销毁
+ * 注意：只能在绘制线程使用
+ */
+public class GLRenderTargetPool {
+
+    private final GLEnv env; // 环境
+    private final ArrayList<GLRenderTarget> idleTargets = new ArrayList<>(); // 空闲目标，末尾为最近归还
+    private int idleFrames = 60; // 空闲超过此帧数的目标将被删除
+    private int maxIdleCount = 8; // 空闲目标数量上限
+    private long frameIndex = 0; // 帧序号，每次回收时递增
+    private Object context; // 目标所属的EGLContext
+
+    private int inUseCount = 0; // 使用中的数量
+    private long memorySize = 0; // 池持有的目标估算显存，包括使用中及空闲
+    private long createCount = 0; // 创建次数
+    private long reuseCount = 0; // 复用次数
+
+    GLRenderTargetPool(GLEnv env) {
+        this.env = env;
+    }
+
+    /**
+     * 申请纹理颜色附件、无深度附件的目标
+     *
+     * @param width  宽
+     * @param height 高
+     * @return 目标，使用完毕后调用{@link GLRenderTarget#release() release}归还
+     */
+    public GLRenderTarget acquire(int width, int height) {
+        return acquire(width, height, GLRenderTarget.COLOR_TEXTURE, GLRenderTarget.DEPTH_NONE);
+    }
+
+    /**
+     * 申请目标，优先复用最近归还的相同规格目标；内容未清除
+     *
+     * @param width     宽
+     * @param height    高
+     * @param colorType 颜色附件类型：{@link GLRenderTarget#COLOR_TEXTURE COLOR_TEXTURE}或者
+     *                  {@link GLRenderTarget#COLOR_RENDERBUFFER COLOR_RENDERBUFFER}
+     * @param depthType 深度附件类型：GLRenderTarget.DEPTH_*
+     * @return 目标，使用完毕后调用{@link GLRenderTarget#release() release}归还
+     */
+    public GLRenderTarget acquire(int width, int height, int colorType, int depthType) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid size: %sx%s", width, height));
+        }
+        checkContext();
+        GLRenderTarget target = null;
+        for (int i = idleTargets.size() - 1; i >= 0; i--) {
+            if (idleTargets.get(i).matches(width, height, colorType, depthType)) {
+                target = idleTargets.remove(i);
+                reuseCount++;
+                break;
+            }
+        }
+        if (null == target) {
+            target = new GLRenderTarget(env, this, width, height, colorType, depthType);
+            target.create();
+            createCount++;
+            memorySize += target.getMemorySize();
+        }
+        target.inUse = true;
+        inUseCount++;
+        return target;
+    }
+
+    /**
+     * 归还目标
+     *
+     * @param target 目标
+     */
+    void release(GLRenderTarget target) {
+        if (!target.inUse) throw new RuntimeException("Render target already released");
+        target.inUse = false;
+        inUseCount--;
+        if (!target.isValid()) {
+            // 上下文已改变
+            drop(target);
+            return;
+        }
+        target.releaseFrame = frameIndex;
+        idleTargets.add(target);
+    }
+
+    /**
+     * 执行回收策略，每帧结束时由环境调用
+     */
+    void trim() {
+        frameIndex++;
+        if (idleTargets.isEmpty()) return;
+        long expireFrame = frameIndex - idleFrames;
+        int count = 0;
+        while (count < idleTargets.size()
+                && (idleTargets.get(count).releaseFrame <= expireFrame
+                || idleTargets.size() - count > maxIdleCount)) {
+            drop(idleTargets.get(count));
+            count++;
+        }
+        if (count > 0) {
+            idleTargets.subList(0, count).clear();
+        }
+    }
+
+    /**
+     * 删除所有空闲目标
+     */
+    public void clear() {
+        for (GLRenderTarget target : idleTargets) {
+            drop(target);
+        }
+        idleTargets.clear();
+    }
+
+    private void checkContext() {
+        Object current = env.getCurrentContext();
+        if (context != current) {
+            clear();
+            context = current;
+        }
+    }
+
+    private void drop(GLRenderTarget target) {
+        memorySize -= target.getMemorySize();
+        target.delete();
+    }
+
+    /**
+     * 设置回收策略
+     *
+     * @param idleFrames   空闲超过此帧数的目标将被删除，默认：60
+     * @param maxIdleCount 空闲目标数量上限，默认：8
+     */
+    public void setTrimPolicy(int idleFrames, int maxIdleCount) {
+        this.idleFrames = idleFrames;
+        this.maxIdleCount = maxIdleCount;
+    }
+
+    public int getInUseCount() {
+        return inUseCount;
+    }
+
+    public int getIdleCount() {
+        return idleTargets.size();
+    }
+
+    /**
+     * 获取池持有的目标估算显存，包括使用中及空闲
+     *
+     * @return 字节数
+     */
+    public long getMemorySize() {
+        return memorySize;
+    }
+
+    public long getCreateCount() {
+        return createCount;
+    }
+
+    public long getReuseCount() {
+        return reuseCount;
+    }
+
+    @Override
+    public String toString() {
+        return "GLRenderTargetPool{" +
+                "inUseCount=" + inUseCount +
+                ", idleCount=" + idleTargets.size() +
+                ", memorySize=" + memorySize +
+                ", createCount=" + createCount +
+                ", reuseCount=" + reuseCount +
+                '}';
+    }
+}
@@ -0,0 +1,341 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.EGL14;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 资源线程，由{@link GLEnv GLEnv}持有，使用与主输出共享的EGLContext（1x1 pbuffer），
+ * 用于上传大纹理及缓冲区等耗时的资源创建，避免占用帧时间
+ * {@link GLShader GLShader}仍在绘制线程编译，因为链接前后的回调需要在绘制线程执行，且程序需在当帧可用
+ * 资源创建完成后插入栅栏，绘制线程在动作执行阶段让GPU等待栅栏（不阻塞绘制线程）后发布资源；
+ * 不支持EGL栅栏（EGL1.5）时，GLES3环境使用GL栅栏，GLES2环境在资源线程调用glFinish
+ * 注意：资源线程上没有状态缓存，只能直接通过后端调用GL
+ */
+public class GLResourceThread {
+
+    private static final String TAG = "GL/ResourceThread";
+
+    private final GLEnv env; // 环境
+    private final LinkedBlockingQueue<Task> tasks = new LinkedBlockingQueue<>(); // 待执行的任务
+    private Thread thread; // 资源线程
+    private volatile boolean running = false; // 是否运行中
+    private Target target; // 绘制线程创建的上下文，资源线程使用
+    private Object shareContext; // 当前目标共享的主上下文，只在绘制线程访问
+
+    private volatile long taskCount = 0; // 完成的任务数量
+    private volatile long failedCount = 0; // 失败的任务数量
+    private volatile long taskTime = 0; // 累计任务耗时，不含等待
+
+    GLResourceThread(GLEnv env) {
+        this.env = env;
+    }
+
+    /**
+     * 提交资源任务
+     *
+     * @param work    在资源线程执行，创建资源
+     * @param publish 任务结束后在绘制线程执行，发布资源或者回收失败的资源；可以为null
+     * @return true，已提交；false，已停止
+     */
+    boolean post(Runnable work, Publisher publish) {
+        synchronized (this) {
+            if (null == thread) {
+                running = true;
+                thread = new Thread(this::loop, TAG);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                thread.start();
+            } else if (!running) {
+                return false;
+            }
+        }
+        tasks.offer(new Task(work, publish));
+        // 唤醒绘制线程，以便创建资源线程的上下文
+        env.requestRender();
+        return true;
+    }
+
+    /**
+     * 创建资源线程使用的共享上下文，由绘制线程在主输出可用时调用；主上下文改变时重新创建
+     *
+     * @param mainOutput 主输出
+     */
+    void prepare(GLOutput<?> mainOutput) {
+        if (!running) return;
+        Object mainContext = mainOutput.getEGLContext();
+        if (mainContext == shareContext) return;
+        shareContext = mainContext;
+        GLBackend backend = env.getBackend();
+        Object display = env.getDisplayObject();
+        Object config = mainOutput.getEGLConfig();
+        Object context = backend.eglCreateContext(display, config, mainContext, new int[]{
+                EGL14.EGL_CONTEXT_CLIENT_VERSION, mainOutput.getEGLClientVersion(),
+                EGL14.EGL_NONE,
+        });
+        if (null == context) {
+            Log.w(TAG, "prepare: eglCreateContext failed: " + backend.eglGetError());
+            return;
+        }
+        Object surface = backend.eglCreatePbufferSurface(display, config, new int[]{
+                EGL14.EGL_WIDTH, 1,
+                EGL14.EGL_HEIGHT, 1,
+                EGL14.EGL_NONE,
+        });
+        if (null == surface) {
+            Log.w(TAG, "prepare: eglCreatePbufferSurface failed: " + backend.eglGetError());
+            backend.eglDestroyContext(display, context);
+            return;
+        }
+        synchronized (this) {
+            Target old = target;
+            target = new Target(display, context, surface);
+            if (null != old && !old.used) {
+                // 旧上下文未被资源线程使用，直接销毁
+                old.destroy(backend);
+            }
+            notifyAll();
+        }
+    }
+
+    /**
+     * 停止资源线程，未执行的任务被丢弃；由环境在销毁时调用
+     */
+    void stop() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = this.thread;
+            notifyAll();
+        }
+        if (null != thread) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        tasks.clear();
+        synchronized (this) {
+            if (null != target && !target.used) {
+                target.destroy(env.getBackend());
+            }
+            target = null;
+        }
+        shareContext = null;
+    }
+
+    private void loop() {
+        Log.d(TAG, "loop: start");
+        GLBackend backend = env.getBackend();
+        Target current = null;
+        int glesVersion = 0;
+        try {
+            while (running) {
+                Task task = tasks.take();
+                Target target = awaitTarget();
+                if (null == target) break;
+                if (target != current) {
+                    if (!backend.eglMakeCurrent(target.display, target.surface, target.surface, target.context)) {
+                        Log.w(TAG, "loop: eglMakeCurrent failed: " + backend.eglGetError());
+                        failedCount++;
+                        env.runGLAction(() -> publish(null, task.publish, false));
+                        continue;
+                    }
+                    if (null != current) {
+                        current.destroy(backend);
+                    }
+                    current = target;
+                    String version = backend.glGetString(GLES20.GL_VERSION);
+                    glesVersion = null != version && version.startsWith("OpenGL ES 3") ? 3 : 2;
+                }
+                long start = System.nanoTime();
+                try {
+                    task.work.run();
+                } catch (Exception e) {
+                    Log.w(TAG, "loop: task failed", e);
+                    failedCount++;
+                    // 仍需通知发布者回收已分配的资源
+                    env.runGLAction(() -> publish(null, task.publish, false));
+                    continue;
+                }
+                Object fence = createFence(backend, current.display, glesVersion);
+                taskTime += System.nanoTime() - start;
+                taskCount++;
+                env.runGLAction(() -> publish(fence, task.publish, true));
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            if (null != current) {
+                backend.eglMakeCurrent(current.display, null, null, null);
+                current.destroy(backend);
+            }
+            Log.d(TAG, "loop: end");
+        }
+    }
+
+    private synchronized Target awaitTarget() throws InterruptedException {
+        while (running && null == target) {
+            wait();
+        }
+        if (null != target) {
+            target.used = true;
+        }
+        return target;
+    }
+
+    /**
+     * 在当前上下文插入栅栏，同一共享组的其他上下文可以等待
+     *
+     * @return 栅栏：EGL栅栏对象，或者Long类型的GL栅栏；null表示已同步完成
+     */
+    static Object createFence(GLBackend backend, Object display, int glesVersion) {
+        Object sync = backend.eglCreateFenceSync(display);
+        if (null != sync) {
+            backend.glFlush();
+            return sync;
+        }
+        if (glesVersion >= 3) {
+            long fence = backend.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            if (fence != 0) {
+                backend.glFlush();
+                return fence;
+            }
+        }
+        backend.glFinish();
+        return null;
+    }
+
+    /**
+     * 在绘制线程等待栅栏并发布资源
+     */
+    private void publish(Object fence, Publisher publish, boolean success) {
+        GLBackend backend = env.getBackend();
+        Object display = env.getDisplayObject();
+        waitFence(backend, display, fence);
+        deleteFence(backend, display, fence);
+        if (null != publish) {
+            publish.publish(success);
+        }
+    }
+
+    /**
+     * 使当前上下文的后续命令在GPU上等待栅栏，不阻塞调用线程
+     *
+     * @param fence {@link #createFence(GLBackend, Object, int) createFence}返回的栅栏，null表示无需等待
+     */
+    static void waitFence(GLBackend backend, Object display, Object fence) {
+        if (fence instanceof Long) {
+            backend.glWaitSync((Long) fence, 0, GLES30.GL_TIMEOUT_IGNORED);
+        } else if (null != fence) {
+            backend.eglWaitSync(display, fence);
+        }
+    }
+
+    /**
+     * 删除栅栏
+     *
+     * @param fence {@link #createFence(GLBackend, Object, int) createFence}返回的栅栏，null表示无需删除
+     */
+    static void deleteFence(GLBackend backend, Object display, Object fence) {
+        if (fence instanceof Long) {
+            backend.glDeleteSync((Long) fence);
+        } else if (null != fence) {
+            backend.eglDestroySync(display, fence);
+        }
+    }
+
+    /**
+     * 判断资源线程是否运行中
+     *
+     * @return true，运行中；false，未启动或者已停止
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 获取等待执行的任务数量
+     *
+     * @return 任务数量
+     */
+    public int getPendingCount() {
+        return tasks.size();
+    }
+
+    public long getTaskCount() {
+        return taskCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * 获取累计任务耗时，包括插入栅栏，不含等待
+     *
+     * @return 耗时，单位：纳秒
+     */
+    public long getTaskTime() {
+        return taskTime;
+    }
+
+    @Override
+    public String toString() {
+        return "GLResourceThread{" +
+                "running=" + running +
+                ", taskCount=" + taskCount +
+                ", failedCount=" + failedCount +
+                ", taskTime=" + taskTime +
+                '}';
+    }
+
+    /**
+     * 资源任务结束后在绘制线程执行的发布动作
+     */
+    public interface Publisher {
+
+        /**
+         * 发布资源
+         *
+         * @param success true，任务成功，资源已可用；false，任务抛出异常或者资源线程上下文不可用，需要回收已分配的资源
+         */
+        void publish(boolean success);
+    }
+
+    private static final class Task {
+
+        final Runnable work;
+        final Publisher publish;
+
+        Task(Runnable work, Publisher publish) {
+            this.work = work;
+            this.publish = publish;
+        }
+    }
+
+    /**
+     * 资源线程使用的上下文及surface
+     */
+    private static final class Target {
+
+        final Object display;
+        final Object context;
+        final Object surface;
+        boolean used; // 是否已被资源线程使用，使用后由资源线程销毁
+
+        Target(Object display, Object context, Object surface) {
+            this.display = display;
+            this.context = context;
+            this.surface = surface;
+        }
+
+        void destroy(GLBackend backend) {
+            backend.eglDestroySurface(display, surface);
+            backend.eglDestroyContext(display, context);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.mosect.lib.easygl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 场景快照，表示某一帧需要绘制的输出、shader及实体对象
+ * 快照创建后不再修改，绘制线程无需加锁即可遍历，其他线程可安全查询
+ */
+final class GLScene {
+
+    static final GLScene EMPTY = new GLScene(0, new GLOutput<?>[0], new GLShader<?>[0],
+            new GLObject<?>[0], new View[0], 0);
+
+    final long version; // 快照版本，每次发布递增
+    final GLOutput<?>[] outputs; // 输出对象
+    final GLShader<?>[] shaders; // shader对象
+    final GLObject<?>[] objects; // 实体对象
+    final View[] views; // 每个输出的绘制列表，与outputs一一对应
+    final int groupCount; // 绘制列表分组数量，绘制列表相同的输出属于同一分组
+
+    private GLScene(long version, GLOutput<?>[] outputs, GLShader<?>[] shaders,
+                    GLObject<?>[] objects, View[] views, int groupCount) {
+        this.version = version;
+        this.outputs = outputs;
+        this.shaders = shaders;
+        this.objects = objects;
+        this.views = views;
+        this.groupCount = groupCount;
+    }
+
+    /**
+     * 根据当前成员创建新的快照
+     *
+     * @param outputs   输出对象
+     * @param shaderMap shader对象
+     * @param objects   实体对象
+     * @return 新的快照
+     */
+    GLScene next(List<GLOutput<?>> outputs, Map<Class<?>, GLShader<?>> shaderMap,
+                 List<GLObject<?>> objects) {
+        Collection<GLShader<?>> shaders = shaderMap.values();
+        GLOutput<?>[] outputArray = outputs.toArray(new GLOutput<?>[0]);
+        GLShader<?>[] shaderArray = shaders.toArray(new GLShader<?>[0]);
+        GLObject<?>[] objectArray = objects.toArray(new GLObject<?>[0]);
+        View[] views = new View[outputArray.length];
+        int groupCount = 0;
+        for (int i = 0; i < outputArray.length; i++) {
+            View view = new View(outputArray[i], shaderArray, objectArray);
+            view.group = -1;
+            for (int j = 0; j < i; j++) {
+                if (views[j].sameAs(view)) {
+                    view.group = views[j].group;
+                    break;
+                }
+            }
+            if (view.group < 0) {
+                view.group = groupCount++;
+            }
+            views[i] = view;
+        }
+        return new GLScene(version + 1, outputArray, shaderArray, objectArray, views, groupCount);
+    }
+
+    /**
+     * 单个输出的绘制列表，发布快照时根据层掩码及指定输出预先计算
+     */
+    static final class View {
+
+        final int[] shaders; // 绘制的shader在快照中的位置
+        final int[] objects; // 绘制的实体对象在快照中的位置
+        final boolean[] objectVisible; // 实体对象是否绘制，按快照中的位置索引，渲染队列使用；null表示全部绘制
+        int group; // 所属分组，发布快照时确定
+
+        View(GLOutput<?> output, GLShader<?>[] shaders, GLObject<?>[] objects) {
+            this.shaders = filter(output, shaders);
+            boolean[] visible = new boolean[objects.length];
+            int count = 0;
+            for (int i = 0; i < objects.length; i++) {
+                visible[i] = objects[i].isDrawnTo(output);
+                if (visible[i]) count++;
+            }
+            int[] indices = new int[count];
+            for (int i = 0, j = 0; i < objects.length; i++) {
+                if (visible[i]) indices[j++] = i;
+            }
+            this.objects = indices;
+            this.objectVisible = count == objects.length ? null : visible;
+        }
+
+        boolean sameAs(View other) {
+            return Arrays.equals(shaders, other.shaders) && Arrays.equals(objects, other.objects);
+        }
+
+        private static int[] filter(GLOutput<?> output, GLObject<?>[] objects) {
+            int[] indices = new int[objects.length];
+            int count = 0;
+            for (int i = 0; i < objects.length; i++) {
+                if (objects[i].isDrawnTo(output)) indices[count++] = i;
+            }
+            return count == indices.length ? indices : Arrays.copyOf(indices, count);
+        }
+    }
+}
@@ -3,6 +3,9 @@ package com.mosect.lib.easygl;
 import android.opengl.GLES20;
 import android.text.TextUtils;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * OpenGL Shader实体
  *
@@ -11,6 +14,9 @@ import android.text.TextUtils;
 public abstract class GLShader<T extends GLContent> extends GLObject<T> {
 
     private int[] program; // 程序信息：0，程序id；1，顶点shader id；2，片元shader id
+    private final Map<String, Integer> uniformLocations = new HashMap<>(); // uniform变量location表
+    private final Map<String, Integer> attribLocations = new HashMap<>(); // attribute变量location表
+    private final Map<String, GLUniform> uniforms = new HashMap<>(); // uniform变量句柄
 
     public GLShader(GLEnv env) {
         super(env);
@@ -24,11 +30,26 @@ public abstract class GLShader<T extends GLContent> extends GLObject<T> {
             String vertSource = onLoadVertSource();
             String fragSource = onLoadFragSource();
             if (!TextUtils.isEmpty(vertSource) && !TextUtils.isEmpty(fragSource)) {
-                // 创建程序
-                program = createProgram(vertSource, fragSource);
-                // 链接程序
-                onLinkProgramBefore();
-                linkProgram(program[0]);
+                GLProgramCache cache = getEnv().getProgramCache();
+                int cachedProgramId = null == cache ? 0 : cache.loadProgram(backend(), vertSource, fragSource);
+                if (cachedProgramId != 0) {
+                    // 从缓存加载已链接的程序
+                    program = new int[]{cachedProgramId, 0, 0};
+                } else {
+                    // 创建程序
+                    program = createProgram(vertSource, fragSource);
+                    // 链接程序
+                    onLinkProgramBefore();
+                    if (null != cache) {
+                        cache.prepareProgram(backend(), program[0]);
+                    }
+                    linkProgram(program[0]);
+                    if (null != cache) {
+                        cache.saveProgram(backend(), program[0], vertSource, fragSource);
+                    }
+                }
+                // 建立变量location表
+                loadLocations();
                 // 初始化程序
                 onInitProgram();
             }
@@ -47,11 +68,91 @@ public abstract class GLShader<T extends GLContent> extends GLObject<T> {
 
     private void clearProgram() {
         if (null != program) {
-            GLES20.glDeleteProgram(program[0]);
-            GLES20.glDeleteShader(program[1]);
-            GLES20.glDeleteShader(program[2]);
+            getEnv().getStateCache().onProgramDeleted(program[0]);
+            backend().glDeleteProgram(program[0]);
+            if (program[1] != 0) {
+                backend().glDeleteShader(program[1]);
+            }
+            if (program[2] != 0) {
+                backend().glDeleteShader(program[2]);
+            }
             program = null;
         }
+        uniformLocations.clear();
+        attribLocations.clear();
+        for (GLUniform uniform : uniforms.values()) {
+            uniform.bind(backend(), -1);
+        }
+    }
+
+    /**
+     * 通过程序内省建立变量location表，只在程序链接后执行一次
+     */
+    private void loadLocations() {
+        int programId = getProgramId();
+        int[] count = new int[1];
+        int[] size = new int[1];
+        int[] type = new int[1];
+        backend().glGetProgramiv(programId, GLES20.GL_ACTIVE_UNIFORMS, count, 0);
+        for (int i = 0; i < count[0]; i++) {
+            String name = backend().glGetActiveUniform(programId, i, size, type);
+            if (TextUtils.isEmpty(name)) continue;
+            int location = backend().glGetUniformLocation(programId, name);
+            putLocation(uniformLocations, name, location);
+        }
+        backend().glGetProgramiv(programId, GLES20.GL_ACTIVE_ATTRIBUTES, count, 0);
+        for (int i = 0; i < count[0]; i++) {
+            String name = backend().glGetActiveAttrib(programId, i, size, type);
+            if (TextUtils.isEmpty(name)) continue;
+            int location = backend().glGetAttribLocation(programId, name);
+            putLocation(attribLocations, name, location);
+        }
+        // 重新绑定已存在的句柄
+        for (GLUniform uniform : uniforms.values()) {
+            uniform.bind(backend(), findUniformLocation(uniform.getName()));
+        }
+    }
+
+    private static void putLocation(Map<String, Integer> locations, String name, int location) {
+        locations.put(name, location);
+        // 数组变量同时记录不带下标的名称
+        if (name.endsWith("[0]")) {
+            locations.put(name.substring(0, name.length() - 3), location);
+        }
+    }
+
+    /**
+     * 查找uniform变量location，表中不存在时查询驱动并记录
+     *
+     * @param name 变量名称
+     * @return 变量location，小于0表示不存在
+     */
+    private int findUniformLocation(String name) {
+        Integer location = uniformLocations.get(name);
+        if (null == location) {
+            location = backend().glGetUniformLocation(getProgramId(), name);
+            uniformLocations.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * 查找attribute变量location，表中不存在时查询驱动并记录
+     *
+     * @param name 变量名称
+     * @return 变量location，小于0表示不存在
+     */
+    private int findAttribLocation(String name) {
+        Integer location = attribLocations.get(name);
+        if (null == location) {
+            location = backend().glGetAttribLocation(getProgramId(), name);
+            attribLocations.put(name, location);
+        }
+        return location;
+    }
+
+    private GLBackend backend() {
+        return getEnv().getBackend();
     }
 
     protected int getProgramId() {
@@ -61,8 +162,16 @@ public abstract class GLShader<T extends GLContent> extends GLObject<T> {
         return 0;
     }
 
+    /**
+     * 通过状态缓存切换到此程序，已是当前程序时不会重复调用glUseProgram
+     */
+    protected void useProgram() {
+        getEnv().getStateCache().useProgram(getProgramId());
+    }
+
     /**
      * 在链接程序之前触发，在此方法中执行glBindAttribLocation操作
+     * 注意：从程序缓存加载时不会触发，缓存的程序已包含绑定结果
      */
     protected void onLinkProgramBefore() {
     }
@@ -94,16 +203,16 @@ public abstract class GLShader<T extends GLContent> extends GLObject<T> {
      * @return shader id
      */
     private int loadShader(int shaderType, String source) {
-        int shader = GLES20.glCreateShader(shaderType);
+        int shader = backend().glCreateShader(shaderType);
         getEnv().checkGlError("glCreateShader");
-        GLES20.glShaderSource(shader, source);
+        backend().glShaderSource(shader, source);
         getEnv().checkGlError("glShaderSource");
-        GLES20.glCompileShader(shader);
+        backend().glCompileShader(shader);
         getEnv().checkGlError("glCompileShader");
         int[] compiled = new int[1];
-        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        backend().glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
         if (compiled[0] == 0) {
-            GLES20.glDeleteShader(shader);
+            backend().glDeleteShader(shader);
             shader = 0;
         }
         return shader;
@@ -126,12 +235,12 @@ public abstract class GLShader<T extends GLContent> extends GLObject<T> {
             fragmentShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragSource);
             if (fragmentShader == 0)
                 throw new RuntimeException("loadShader:GL_FRAGMENT_SHADER failed");
-            programId = GLES20.glCreateProgram();
+            programId = backend().glCreateProgram();
             if (programId == 0) throw new RuntimeException("glCreateProgram failed");
 
-            GLES20.glAttachShader(programId, vertexShader);
+            backend().glAttachShader(programId, vertexShader);
             getEnv().checkEGLError("glAttachShader");
-            GLES20.glAttachShader(programId, fragmentShader);
+            backend().glAttachShader(programId, fragmentShader);
             getEnv().checkGlError("glAttachShader");
             return new int[]{
                     programId,
@@ -140,13 +249,13 @@ public abstract class GLShader<T extends GLContent> extends GLObject<T> {
             };
         } catch (Exception e) {
             if (programId != 0) {
-                GLES20.glDeleteProgram(programId);
+                backend().glDeleteProgram(programId);
             }
             if (vertexShader != 0) {
-                GLES20.glDeleteShader(vertexShader);
+                backend().glDeleteShader(vertexShader);
             }
             if (fragmentShader != 0) {
-                GLES20.glDeleteShader(fragmentShader);
+                backend().glDeleteShader(fragmentShader);
             }
             throw e;
         }
@@ -158,40 +267,57 @@ public abstract class GLShader<T extends GLContent> extends GLObject<T> {
      * @param programId 程序id
      */
     private void linkProgram(int programId) {
-        GLES20.glLinkProgram(programId);
+        backend().glLinkProgram(programId);
         int[] linkStatus = new int[1];
-        GLES20.glGetProgramiv(programId, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        backend().glGetProgramiv(programId, GLES20.GL_LINK_STATUS, linkStatus, 0);
         if (linkStatus[0] != GLES20.GL_TRUE) {
             throw new RuntimeException("glLinkProgram failed");
         }
     }
 
     /**
-     * glGetUniformLocation简单调用
+     * 获取uniform变量location，从程序链接后建立的location表中查找
      *
      * @param name 变量名称
      * @return 变量location
      */
     protected int getUniformLocation(String name) {
-        int location = GLES20.glGetUniformLocation(getProgramId(), name);
+        int location = findUniformLocation(name);
         if (location < 0)
             throw new RuntimeException(String.format("glGetUniformLocation(%s) failed", name));
         return location;
     }
 
     /**
-     * glGetAttribLocation简单调用
+     * 获取attribute变量location，从程序链接后建立的location表中查找
      *
      * @param name 变量名称
      * @return 变量location
      */
     protected int getAttribLocation(String name) {
-        int location = GLES20.glGetAttribLocation(getProgramId(), name);
+        int location = findAttribLocation(name);
         if (location < 0)
             throw new RuntimeException(String.format("glGetAttribLocation(%s) failed", name));
         return location;
     }
 
+    /**
+     * 获取uniform变量句柄，句柄会记录最后上传的值，值未改变时跳过glUniform调用
+     * 同一名称返回同一个句柄，程序重新创建后自动重新绑定；变量不存在时，设置操作将被忽略
+     *
+     * @param name 变量名称
+     * @return uniform变量句柄
+     */
+    protected GLUniform getUniform(String name) {
+        GLUniform uniform = uniforms.get(name);
+        if (null == uniform) {
+            uniform = new GLUniform(name);
+            uniform.bind(backend(), isValid() ? findUniformLocation(name) : -1);
+            uniforms.put(name, uniform);
+        }
+        return uniform;
+    }
+
     /**
      * 判断程序shader可用
      *
@@ -0,0 +1,99 @@
+package com.mosect.lib.easygl;
+
+/**
+ * 环境组内跨线程共享的资源，例如纹理id，需要环境组开启共享上下文
+ * 生产者在自己的绘制线程写入资源后{@link #publish(GLEnv, Object) 发布}，插入栅栏；
+ * 消费者在自己的绘制线程{@link #acquire(GLEnv) 获取}时，让GPU等待最新的栅栏（不阻塞绘制线程）后再使用资源
+ * 每个环境对同一版本只等待一次
+ *
+ * @param <T> 资源类型
+ */
+public class GLSharedResource<T> {
+
+    private final GLEnvGroup group; // 环境组
+    private final long[] acquiredVersions; // 每个环境已等待的版本
+    private T value; // 资源
+    private Object fence; // 最新版本的栅栏，null表示已同步完成
+    private Object fenceDisplay; // 栅栏所在的display
+    private long version = 0; // 版本，每次发布递增
+
+    /**
+     * @param group 环境组，需要开启共享上下文
+     */
+    public GLSharedResource(GLEnvGroup group) {
+        this.group = group;
+        this.acquiredVersions = new long[group.getThreadCount()];
+    }
+
+    /**
+     * 发布资源，在生产者环境的绘制线程写入资源之后调用；未被消费者等待的旧栅栏直接删除，新栅栏在其之后，同样能保证旧版本完成
+     *
+     * @param env   生产者环境
+     * @param value 资源
+     */
+    public void publish(GLEnv env, T value) {
+        if (!group.isSharedContextEnabled()) {
+            throw new RuntimeException("Shared context is not enabled");
+        }
+        int index = group.indexOf(env);
+        GLBackend backend = env.getBackend();
+        Object display = env.getDisplayObject();
+        Object fence = GLResourceThread.createFence(backend, display, env.getGLESVersion());
+        synchronized (this) {
+            GLResourceThread.deleteFence(backend, fenceDisplay, this.fence);
+            this.fence = fence;
+            this.fenceDisplay = display;
+            this.value = value;
+            version++;
+            // 生产者自己无需等待
+            acquiredVersions[index] = version;
+        }
+    }
+
+    /**
+     * 获取资源，在消费者环境的绘制线程使用资源之前调用
+     *
+     * @param env 消费者环境
+     * @return 资源；未发布时为null
+     */
+    public T acquire(GLEnv env) {
+        int index = group.indexOf(env);
+        synchronized (this) {
+            if (acquiredVersions[index] != version) {
+                acquiredVersions[index] = version;
+                // 持有锁等待，避免生产者同时删除栅栏；只在GPU上等待，不阻塞
+                GLResourceThread.waitFence(env.getBackend(), env.getDisplayObject(), fence);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * 删除栅栏，不再使用时在组内任意环境的绘制线程调用；资源本身由调用者删除
+     *
+     * @param env 调用的环境
+     */
+    public synchronized void release(GLEnv env) {
+        GLResourceThread.deleteFence(env.getBackend(), fenceDisplay, fence);
+        fence = null;
+        fenceDisplay = null;
+        value = null;
+    }
+
+    /**
+     * 获取版本
+     *
+     * @return 版本，每次发布递增，0表示未发布
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "GLSharedResource{" +
+                "version=" + version +
+                ", value=" + value +
+                '}';
+    }
+}
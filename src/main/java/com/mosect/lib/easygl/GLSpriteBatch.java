@@ -0,0 +1,411 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * 精灵批量绘制实体，将大量四边形（位置、纹理坐标、颜色、纹理）合并到一个交错顶点流中，
+ * 只在纹理或者shader改变、以及缓冲区已满时提交一次绘制
+ * 在{@link #onGLBatch() onGLBatch}或者内容的drawContent中调用draw方法添加四边形，每次绘制结束时自动提交
+ * 需要环境中已创建{@link GLSpriteShader GLSpriteShader}；开启实例化且为GLES3环境时，
+ * 优先使用{@link GLSpriteInstancedShader GLSpriteInstancedShader}
+ * 注意：draw方法只能在绘制线程调用
+ *
+ * @param <T> 内容类型
+ */
+public class GLSpriteBatch<T extends GLContent> extends GLObject<T> {
+
+    private static final String TAG = "GL/SpriteBatch";
+
+    private static final int MAX_CAPACITY = 16384; // 受限于unsigned short索引
+    private static final int VERTEX_STRIDE = 20; // x, y, u, v, rgba
+    private static final int INSTANCE_STRIDE = 36; // x, y, w, h, u0, v0, u1, v1, rgba
+    private static final int QUAD_BYTES = VERTEX_STRIDE * 4; // 非实例化时每个四边形的字节数
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private final int capacity; // 单次提交的最大四边形数量
+    private final ByteBuffer data; // 顶点或实例数据
+    private final FloatBuffer floats; // data的浮点视图
+    private final IntBuffer ints; // data的整数视图，用于写入颜色
+    private final float[] matrix = new float[16]; // 变换矩阵
+    private boolean instancingEnabled = false; // 是否允许实例化
+    private int blendSrc = GLES20.GL_SRC_ALPHA;
+    private int blendDst = GLES20.GL_ONE_MINUS_SRC_ALPHA;
+
+    private int vertexBuffer; // 顶点或实例缓冲区
+    private int indexBuffer; // 四边形索引缓冲区，非实例化时使用
+    private int cornerBuffer; // 四边形顶点缓冲区，实例化时使用
+
+    private GLSpriteShader shader; // 当前批次的shader，null表示未开始批次
+    private int texture; // 当前批次的纹理
+    private int count; // 当前批次的四边形数量
+    private boolean warned = false; // 是否已提示缺少shader
+
+    private int drawCallCount; // 当前帧提交的绘制次数
+    private int quadCount; // 当前帧绘制的四边形数量
+
+    public GLSpriteBatch(GLEnv env) {
+        this(env, 2048);
+    }
+
+    /**
+     * @param env      环境
+     * @param capacity 单次提交的最大四边形数量，范围：[1, 16384]
+     */
+    public GLSpriteBatch(GLEnv env, int capacity) {
+        super(env);
+        if (capacity < 1 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        data = ByteBuffer.allocateDirect(capacity * QUAD_BYTES).order(ByteOrder.nativeOrder());
+        floats = data.asFloatBuffer();
+        ints = data.asIntBuffer();
+        // 默认为单位矩阵，坐标即为裁剪坐标
+        matrix[0] = matrix[5] = matrix[10] = matrix[15] = 1;
+    }
+
+    @Override
+    protected void onGLCreate() {
+        super.onGLCreate();
+        GLBackend backend = getEnv().getBackend();
+        GLStateCache stateCache = getEnv().getStateCache();
+        int[] buffers = new int[3];
+        backend.glGenBuffers(3, buffers, 0);
+        vertexBuffer = buffers[0];
+        indexBuffer = buffers[1];
+        cornerBuffer = buffers[2];
+
+        // 索引固定为 0,1,2, 0,2,3，所有批次共用
+        GLPooledBuffer temp = getEnv().getBufferPool().acquire(capacity * 12);
+        ShortBuffer indices = temp.asShortBuffer();
+        for (int i = 0; i < capacity; i++) {
+            short v = (short) (i * 4);
+            indices.put(v).put((short) (v + 1)).put((short) (v + 2))
+                    .put(v).put((short) (v + 2)).put((short) (v + 3));
+        }
+        indices.position(0);
+        stateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+        backend.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, capacity * 12, indices, GLES20.GL_STATIC_DRAW);
+
+        // 三角形带顺序：(0,0) (1,0) (0,1) (1,1)
+        FloatBuffer corners = temp.asFloatBuffer();
+        corners.put(new float[]{0, 0, 1, 0, 0, 1, 1, 1}).position(0);
+        stateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, cornerBuffer);
+        backend.glBufferData(GLES20.GL_ARRAY_BUFFER, 32, corners, GLES20.GL_STATIC_DRAW);
+        temp.release();
+        getEnv().checkGlError("glBufferData");
+    }
+
+    @Override
+    protected void onGLDestroy() {
+        super.onGLDestroy();
+        shader = null;
+        count = 0;
+        if (vertexBuffer != 0) {
+            GLStateCache stateCache = getEnv().getStateCache();
+            stateCache.onBufferDeleted(vertexBuffer);
+            stateCache.onBufferDeleted(indexBuffer);
+            stateCache.onBufferDeleted(cornerBuffer);
+            getEnv().getBackend().glDeleteBuffers(3, new int[]{vertexBuffer, indexBuffer, cornerBuffer}, 0);
+            vertexBuffer = 0;
+            indexBuffer = 0;
+            cornerBuffer = 0;
+        }
+    }
+
+    @Override
+    protected void onGLDraw() {
+        super.onGLDraw();
+        onGLBatch();
+        flush();
+        shader = null;
+    }
+
+    /**
+     * 添加四边形时调用，子类在此方法中调用draw方法
+     */
+    protected void onGLBatch() {
+    }
+
+    @Override
+    protected void onFrameStart() {
+        super.onFrameStart();
+        drawCallCount = 0;
+        quadCount = 0;
+    }
+
+    /**
+     * 添加四边形，使用完整纹理
+     *
+     * @param texture 纹理id
+     * @param x       左边
+     * @param y       上边
+     * @param width   宽
+     * @param height  高
+     * @param color   颜色，ARGB
+     */
+    public void draw(int texture, float x, float y, float width, float height, int color) {
+        draw(texture, x, y, width, height, 0, 0, 1, 1, color);
+    }
+
+    /**
+     * 添加四边形，使用图集区域；同一图集页面的区域合并到同一次绘制
+     *
+     * @param region 图集区域
+     * @param x      左边
+     * @param y      上边
+     * @param width  宽
+     * @param height 高
+     * @param color  颜色，ARGB
+     */
+    public void draw(GLAtlasRegion region, float x, float y, float width, float height, int color) {
+        if (region.isReleased()) return;
+        draw(region.getTextureId(), x, y, width, height,
+                region.getU0(), region.getV0(), region.getU1(), region.getV1(), color);
+    }
+
+    /**
+     * 添加四边形
+     *
+     * @param texture 纹理id
+     * @param x       左边
+     * @param y       上边
+     * @param width   宽
+     * @param height  高
+     * @param u0      左上角纹理坐标u
+     * @param v0      左上角纹理坐标v
+     * @param u1      右下角纹理坐标u
+     * @param v1      右下角纹理坐标v
+     * @param color   颜色，ARGB
+     */
+    public void draw(int texture, float x, float y, float width, float height,
+                     float u0, float v0, float u1, float v1, int color) {
+        if (null == shader && !begin()) return;
+        if (texture != this.texture || count == capacity) {
+            flush();
+            this.texture = texture;
+        }
+        int rgba = toRGBA(color);
+        if (shader.isInstanced()) {
+            int i = count * (INSTANCE_STRIDE / 4);
+            floats.put(i, x).put(i + 1, y).put(i + 2, width).put(i + 3, height)
+                    .put(i + 4, u0).put(i + 5, v0).put(i + 6, u1).put(i + 7, v1);
+            ints.put(i + 8, rgba);
+        } else {
+            float x1 = x + width;
+            float y1 = y + height;
+            int i = count * (QUAD_BYTES / 4);
+            floats.put(i, x).put(i + 1, y).put(i + 2, u0).put(i + 3, v0);
+            ints.put(i + 4, rgba);
+            floats.put(i + 5, x1).put(i + 6, y).put(i + 7, u1).put(i + 8, v0);
+            ints.put(i + 9, rgba);
+            floats.put(i + 10, x1).put(i + 11, y1).put(i + 12, u1).put(i + 13, v1);
+            ints.put(i + 14, rgba);
+            floats.put(i + 15, x).put(i + 16, y1).put(i + 17, u0).put(i + 18, v1);
+            ints.put(i + 19, rgba);
+        }
+        count++;
+    }
+
+    /**
+     * 切换后续四边形使用的shader，与当前shader不同时提交已添加的四边形
+     *
+     * @param shader shader对象，null表示使用默认shader
+     */
+    public void setShader(GLSpriteShader shader) {
+        if (null == shader) {
+            shader = defaultShader();
+        }
+        if (this.shader != shader) {
+            flush();
+            this.shader = null != shader && shader.isValid() ? shader : null;
+        }
+    }
+
+    /**
+     * 提交已添加的四边形
+     */
+    public void flush() {
+        if (count == 0 || null == shader || vertexBuffer == 0) {
+            count = 0;
+            return;
+        }
+        GLBackend backend = getEnv().getBackend();
+        GLStateCache stateCache = getEnv().getStateCache();
+        shader.useProgram();
+        shader.matrix.setMat4(matrix, 0);
+        shader.texture.setInt(0);
+        stateCache.bindTexture(0, GLES20.GL_TEXTURE_2D, texture);
+        stateCache.setBlendEnabled(true);
+        stateCache.blendFunc(blendSrc, blendDst);
+
+        boolean instanced = shader.isInstanced();
+        int stride = instanced ? INSTANCE_STRIDE : VERTEX_STRIDE;
+        int size = instanced ? count * INSTANCE_STRIDE : count * QUAD_BYTES;
+        data.limit(size).position(0);
+        // 优先写入环境的流式缓冲区，空间不足时使用自己的缓冲区
+        GLStreamBuffer stream = getEnv().getStreamBuffer();
+        int base = stream.write(data, size);
+        if (base >= 0) {
+            stream.bind();
+        } else {
+            base = 0;
+            stateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffer);
+            // 每次重新指定数据，驱动可分配新的存储，避免等待上一次绘制
+            backend.glBufferData(GLES20.GL_ARRAY_BUFFER, size, data, GLES20.GL_STREAM_DRAW);
+        }
+        data.clear();
+        backend.glVertexAttribPointer(shader.positionLocation, instanced ? 4 : 2, GLES20.GL_FLOAT, false, stride, base);
+        backend.glVertexAttribPointer(shader.texCoordLocation, instanced ? 4 : 2, GLES20.GL_FLOAT, false, stride, base + (instanced ? 16 : 8));
+        backend.glVertexAttribPointer(shader.colorLocation, 4, GLES20.GL_UNSIGNED_BYTE, true, stride, base + (instanced ? 32 : 16));
+        backend.glEnableVertexAttribArray(shader.positionLocation);
+        backend.glEnableVertexAttribArray(shader.texCoordLocation);
+        backend.glEnableVertexAttribArray(shader.colorLocation);
+        if (instanced) {
+            backend.glVertexAttribDivisor(shader.positionLocation, 1);
+            backend.glVertexAttribDivisor(shader.texCoordLocation, 1);
+            backend.glVertexAttribDivisor(shader.colorLocation, 1);
+            stateCache.bindBuffer(GLES20.GL_ARRAY_BUFFER, cornerBuffer);
+            backend.glVertexAttribPointer(shader.cornerLocation, 2, GLES20.GL_FLOAT, false, 8, 0);
+            backend.glEnableVertexAttribArray(shader.cornerLocation);
+            backend.glDrawArraysInstanced(GLES20.GL_TRIANGLE_STRIP, 0, 4, count);
+            backend.glDisableVertexAttribArray(shader.cornerLocation);
+            // 恢复除数，避免影响其他实体的绘制
+            backend.glVertexAttribDivisor(shader.positionLocation, 0);
+            backend.glVertexAttribDivisor(shader.texCoordLocation, 0);
+            backend.glVertexAttribDivisor(shader.colorLocation, 0);
+        } else {
+            stateCache.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBuffer);
+            backend.glDrawElements(GLES20.GL_TRIANGLES, count * 6, GLES20.GL_UNSIGNED_SHORT, 0);
+        }
+        backend.glDisableVertexAttribArray(shader.positionLocation);
+        backend.glDisableVertexAttribArray(shader.texCoordLocation);
+        backend.glDisableVertexAttribArray(shader.colorLocation);
+        drawCallCount++;
+        quadCount += count;
+        count = 0;
+    }
+
+    /**
+     * 开始新的批次，选择默认shader
+     *
+     * @return true，可以绘制；false，shader不可用
+     */
+    private boolean begin() {
+        GLSpriteShader shader = defaultShader();
+        if (null == shader || !shader.isValid()) {
+            if (!warned) {
+                warned = true;
+                Log.w(TAG, getPrintName() + "/begin: GLSpriteShader not created");
+            }
+            return false;
+        }
+        this.shader = shader;
+        count = 0;
+        return true;
+    }
+
+    private GLSpriteShader defaultShader() {
+        GLEnv env = getEnv();
+        if (instancingEnabled && env.getGLESVersion() >= 3) {
+            GLSpriteShader shader = env.requestShader(GLSpriteInstancedShader.class);
+            if (null != shader && shader.isValid()) return shader;
+        }
+        return env.requestShader(GLSpriteShader.class);
+    }
+
+    /**
+     * 转换ARGB颜色为内存中按R、G、B、A排列的整数
+     */
+    private static int toRGBA(int argb) {
+        if (LITTLE_ENDIAN) {
+            return (argb & 0xFF00FF00) | ((argb >> 16) & 0xFF) | ((argb & 0xFF) << 16);
+        }
+        return (argb << 8) | (argb >>> 24);
+    }
+
+    /**
+     * 设置变换矩阵，列主序
+     *
+     * @param matrix 4x4矩阵
+     */
+    public void setMatrix(float[] matrix) {
+        System.arraycopy(matrix, 0, this.matrix, 0, 16);
+    }
+
+    /**
+     * 设置为正交投影，原点在左上角，y轴向下
+     *
+     * @param width  宽
+     * @param height 高
+     */
+    public void setOrtho(float width, float height) {
+        for (int i = 0; i < 16; i++) {
+            matrix[i] = 0;
+        }
+        matrix[0] = 2 / width;
+        matrix[5] = -2 / height;
+        matrix[10] = 1;
+        matrix[12] = -1;
+        matrix[13] = 1;
+        matrix[15] = 1;
+    }
+
+    /**
+     * 设置混合因子，默认：GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA
+     *
+     * @param src 源因子
+     * @param dst 目标因子
+     */
+    public void setBlendFunc(int src, int dst) {
+        blendSrc = src;
+        blendDst = dst;
+    }
+
+    /**
+     * 设置是否允许实例化绘制，GLES3环境且已创建{@link GLSpriteInstancedShader GLSpriteInstancedShader}时生效
+     *
+     * @param enabled 是否允许
+     */
+    public void setInstancingEnabled(boolean enabled) {
+        this.instancingEnabled = enabled;
+    }
+
+    public boolean isInstancingEnabled() {
+        return instancingEnabled;
+    }
+
+    /**
+     * 获取单次提交的最大四边形数量
+     *
+     * @return 最大四边形数量
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 获取当前帧提交的绘制次数，所有输出累计；只能在绘制线程读取
+     *
+     * @return 绘制次数
+     */
+    public int getDrawCallCount() {
+        return drawCallCount;
+    }
+
+    /**
+     * 获取当前帧绘制的四边形数量，所有输出累计；只能在绘制线程读取
+     *
+     * @return 四边形数量
+     */
+    public int getQuadCount() {
+        return quadCount;
+    }
+}
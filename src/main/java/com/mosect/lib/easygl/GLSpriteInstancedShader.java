@@ -0,0 +1,47 @@
+package com.mosect.lib.easygl;
+
+/**
+ * 精灵实例化绘制使用的shader，每个四边形为一个实例，实例数据：矩形(vec4)、纹理矩形(vec4)、颜色
+ * 需要GLES3环境，由{@link GLSpriteBatch GLSpriteBatch}在开启实例化时使用；
+ * 子类可以修改片元shader，但必须保留变量名称：u_Matrix、u_Texture、a_Corner、a_Rect、a_TexRect、a_Color
+ */
+public class GLSpriteInstancedShader extends GLSpriteShader {
+
+    private static final String VERT_SOURCE = "" +
+            "uniform mat4 u_Matrix;\n" +
+            "attribute vec2 a_Corner;\n" +
+            "attribute vec4 a_Rect;\n" +
+            "attribute vec4 a_TexRect;\n" +
+            "attribute vec4 a_Color;\n" +
+            "varying vec2 v_TexCoord;\n" +
+            "varying vec4 v_Color;\n" +
+            "void main() {\n" +
+            "    v_TexCoord = mix(a_TexRect.xy, a_TexRect.zw, a_Corner);\n" +
+            "    v_Color = a_Color;\n" +
+            "    gl_Position = u_Matrix * vec4(a_Rect.xy + a_Corner * a_Rect.zw, 0.0, 1.0);\n" +
+            "}\n";
+
+    public GLSpriteInstancedShader(GLEnv env) {
+        super(env);
+    }
+
+    @Override
+    protected void onInitProgram() {
+        matrix = getUniform("u_Matrix");
+        texture = getUniform("u_Texture");
+        cornerLocation = getAttribLocation("a_Corner");
+        positionLocation = getAttribLocation("a_Rect");
+        texCoordLocation = getAttribLocation("a_TexRect");
+        colorLocation = getAttribLocation("a_Color");
+    }
+
+    @Override
+    protected String onLoadVertSource() {
+        return VERT_SOURCE;
+    }
+
+    @Override
+    public boolean isInstanced() {
+        return true;
+    }
+}
@@ -0,0 +1,70 @@
+package com.mosect.lib.easygl;
+
+/**
+ * 精灵批量绘制使用的shader，顶点格式：位置(vec2)、纹理坐标(vec2)、颜色(RGBA，归一化字节)
+ * 由{@link GLSpriteBatch GLSpriteBatch}使用，需要自行创建；
+ * 子类可以修改片元shader，但必须保留变量名称：u_Matrix、u_Texture、a_Position、a_TexCoord、a_Color
+ */
+public class GLSpriteShader extends GLShader<GLContent> {
+
+    private static final String VERT_SOURCE = "" +
+            "uniform mat4 u_Matrix;\n" +
+            "attribute vec2 a_Position;\n" +
+            "attribute vec2 a_TexCoord;\n" +
+            "attribute vec4 a_Color;\n" +
+            "varying vec2 v_TexCoord;\n" +
+            "varying vec4 v_Color;\n" +
+            "void main() {\n" +
+            "    v_TexCoord = a_TexCoord;\n" +
+            "    v_Color = a_Color;\n" +
+            "    gl_Position = u_Matrix * vec4(a_Position, 0.0, 1.0);\n" +
+            "}\n";
+
+    static final String FRAG_SOURCE = "" +
+            "precision mediump float;\n" +
+            "uniform sampler2D u_Texture;\n" +
+            "varying vec2 v_TexCoord;\n" +
+            "varying vec4 v_Color;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = texture2D(u_Texture, v_TexCoord) * v_Color;\n" +
+            "}\n";
+
+    int positionLocation = -1; // 位置，实例化时为矩形(x, y, w, h)
+    int texCoordLocation = -1; // 纹理坐标，实例化时为纹理矩形(u0, v0, u1, v1)
+    int colorLocation = -1; // 颜色
+    int cornerLocation = -1; // 四边形顶点，仅实例化时使用
+    GLUniform matrix; // 变换矩阵
+    GLUniform texture; // 纹理单元
+
+    public GLSpriteShader(GLEnv env) {
+        super(env);
+    }
+
+    @Override
+    protected void onInitProgram() {
+        matrix = getUniform("u_Matrix");
+        texture = getUniform("u_Texture");
+        positionLocation = getAttribLocation("a_Position");
+        texCoordLocation = getAttribLocation("a_TexCoord");
+        colorLocation = getAttribLocation("a_Color");
+    }
+
+    @Override
+    protected String onLoadVertSource() {
+        return VERT_SOURCE;
+    }
+
+    @Override
+    protected String onLoadFragSource() {
+        return FRAG_SOURCE;
+    }
+
+    /**
+     * 判断是否为实例化绘制的shader
+     *
+     * @return true，每个四边形为一个实例；false，每个四边形为4个顶点
+     */
+    public boolean isInstanced() {
+        return false;
+    }
+}
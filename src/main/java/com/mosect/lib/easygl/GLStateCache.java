@@ -0,0 +1,343 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+
+import java.util.Arrays;
+
+/**
+ * OpenGL状态缓存，由{@link GLEnv GLEnv}持有，记录当前程序、纹理、缓冲区、混合、深度、剔除及视口等状态，
+ * 过滤重复的状态设置调用
+ * 注意：只能在绘制线程调用；直接调用GLES修改了这些状态后，需要调用{@link #invalidate() invalidate}
+ */
+public class GLStateCache {
+
+    private static final int UNKNOWN = -1; // 未知状态，下一次设置必定调用
+    private static final int MAX_TEXTURE_UNITS = 32;
+    private static final int GL_TEXTURE_EXTERNAL_OES = 0x8D65;
+
+    private final GLBackend backend; // 后端
+
+    private int program; // 当前程序
+    private int activeTexture; // 当前纹理单元，从0开始
+    private final int[] textures2D = new int[MAX_TEXTURE_UNITS]; // 每个纹理单元绑定的2D纹理
+    private final int[] texturesExternal = new int[MAX_TEXTURE_UNITS]; // 每个纹理单元绑定的外部纹理
+    private int arrayBuffer; // 当前GL_ARRAY_BUFFER
+    private int elementArrayBuffer; // 当前GL_ELEMENT_ARRAY_BUFFER
+    private int framebuffer; // 当前GL_FRAMEBUFFER
+    private int blend; // 是否开启混合：0，关闭；1，开启
+    private int blendSrc; // 混合源因子
+    private int blendDst; // 混合目标因子
+    private int depthTest; // 是否开启深度测试
+    private int depthFunc; // 深度测试函数
+    private int depthMask; // 是否写入深度
+    private int cullFace; // 是否开启剔除
+    private int cullFaceMode; // 剔除面
+    private int scissorTest; // 是否开启裁剪测试
+    private final int[] viewport = new int[4]; // 视口
+    private final int[] scissor = new int[4]; // 裁剪区域
+
+    private long issuedCount = 0; // 实际调用次数
+    private long elidedCount = 0; // 过滤的调用次数
+
+    GLStateCache(GLBackend backend) {
+        this.backend = backend;
+        invalidate();
+    }
+
+    /**
+     * 使所有缓存状态失效，之后的设置均会实际调用；切换上下文或者外部直接修改状态后调用
+     */
+    public void invalidate() {
+        program = UNKNOWN;
+        activeTexture = UNKNOWN;
+        Arrays.fill(textures2D, UNKNOWN);
+        Arrays.fill(texturesExternal, UNKNOWN);
+        arrayBuffer = UNKNOWN;
+        elementArrayBuffer = UNKNOWN;
+        framebuffer = UNKNOWN;
+        blend = UNKNOWN;
+        blendSrc = UNKNOWN;
+        blendDst = UNKNOWN;
+        depthTest = UNKNOWN;
+        depthFunc = UNKNOWN;
+        depthMask = UNKNOWN;
+        cullFace = UNKNOWN;
+        cullFaceMode = UNKNOWN;
+        scissorTest = UNKNOWN;
+        Arrays.fill(viewport, UNKNOWN);
+        Arrays.fill(scissor, UNKNOWN);
+    }
+
+    /**
+     * 记录一次状态设置
+     *
+     * @param changed 状态是否改变
+     * @return 是否需要实际调用
+     */
+    private boolean check(boolean changed) {
+        if (changed) {
+            issuedCount++;
+        } else {
+            elidedCount++;
+        }
+        return changed;
+    }
+
+    public void useProgram(int program) {
+        if (check(this.program != program)) {
+            this.program = program;
+            backend.glUseProgram(program);
+        }
+    }
+
+    /**
+     * 切换当前纹理单元
+     *
+     * @param unit 纹理单元，从0开始，不是GL_TEXTURE0常量
+     */
+    public void activeTexture(int unit) {
+        if (check(activeTexture != unit)) {
+            activeTexture = unit;
+            backend.glActiveTexture(GLES20.GL_TEXTURE0 + unit);
+        }
+    }
+
+    /**
+     * 绑定纹理到当前纹理单元
+     *
+     * @param target  纹理类型，GL_TEXTURE_2D及GL_TEXTURE_EXTERNAL_OES会被缓存
+     * @param texture 纹理id
+     */
+    public void bindTexture(int target, int texture) {
+        int[] textures = target == GLES20.GL_TEXTURE_2D ? textures2D :
+                target == GL_TEXTURE_EXTERNAL_OES ? texturesExternal : null;
+        int unit = activeTexture;
+        if (null == textures || unit < 0 || unit >= MAX_TEXTURE_UNITS) {
+            issuedCount++;
+            backend.glBindTexture(target, texture);
+            return;
+        }
+        if (check(textures[unit] != texture)) {
+            textures[unit] = texture;
+            backend.glBindTexture(target, texture);
+        }
+    }
+
+    /**
+     * 切换纹理单元并绑定纹理
+     *
+     * @param unit    纹理单元，从0开始
+     * @param target  纹理类型
+     * @param texture 纹理id
+     */
+    public void bindTexture(int unit, int target, int texture) {
+        activeTexture(unit);
+        bindTexture(target, texture);
+    }
+
+    public void bindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            if (check(arrayBuffer != buffer)) {
+                arrayBuffer = buffer;
+                backend.glBindBuffer(target, buffer);
+            }
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (check(elementArrayBuffer != buffer)) {
+                elementArrayBuffer = buffer;
+                backend.glBindBuffer(target, buffer);
+            }
+        } else {
+            issuedCount++;
+            backend.glBindBuffer(target, buffer);
+        }
+    }
+
+    public void bindFramebuffer(int framebuffer) {
+        if (check(this.framebuffer != framebuffer)) {
+            this.framebuffer = framebuffer;
+            backend.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        }
+    }
+
+    public void setBlendEnabled(boolean enabled) {
+        blend = setCap(GLES20.GL_BLEND, blend, enabled);
+    }
+
+    public void blendFunc(int src, int dst) {
+        if (check(blendSrc != src || blendDst != dst)) {
+            blendSrc = src;
+            blendDst = dst;
+            backend.glBlendFunc(src, dst);
+        }
+    }
+
+    public void setDepthTestEnabled(boolean enabled) {
+        depthTest = setCap(GLES20.GL_DEPTH_TEST, depthTest, enabled);
+    }
+
+    public void depthFunc(int func) {
+        if (check(depthFunc != func)) {
+            depthFunc = func;
+            backend.glDepthFunc(func);
+        }
+    }
+
+    public void depthMask(boolean flag) {
+        int value = flag ? 1 : 0;
+        if (check(depthMask != value)) {
+            depthMask = value;
+            backend.glDepthMask(flag);
+        }
+    }
+
+    public void setCullFaceEnabled(boolean enabled) {
+        cullFace = setCap(GLES20.GL_CULL_FACE, cullFace, enabled);
+    }
+
+    public void cullFace(int mode) {
+        if (check(cullFaceMode != mode)) {
+            cullFaceMode = mode;
+            backend.glCullFace(mode);
+        }
+    }
+
+    public void setScissorTestEnabled(boolean enabled) {
+        scissorTest = setCap(GLES20.GL_SCISSOR_TEST, scissorTest, enabled);
+    }
+
+    public void scissor(int x, int y, int width, int height) {
+        if (check(!same(scissor, x, y, width, height))) {
+            backend.glScissor(x, y, width, height);
+        }
+    }
+
+    public void viewport(int x, int y, int width, int height) {
+        if (check(!same(viewport, x, y, width, height))) {
+            backend.glViewport(x, y, width, height);
+        }
+    }
+
+    /**
+     * 获取当前绑定的帧缓冲区，缓存失效时查询OpenGL
+     *
+     * @return 帧缓冲区id
+     */
+    public int getFramebuffer() {
+        if (framebuffer == UNKNOWN) {
+            int[] params = new int[1];
+            backend.glGetIntegerv(GLES20.GL_FRAMEBUFFER_BINDING, params, 0);
+            framebuffer = params[0];
+        }
+        return framebuffer;
+    }
+
+    /**
+     * 获取当前视口，缓存失效时查询OpenGL
+     *
+     * @param out    输出x、y、宽、高
+     * @param offset 输出偏移
+     */
+    public void getViewport(int[] out, int offset) {
+        if (viewport[0] == UNKNOWN) {
+            backend.glGetIntegerv(GLES20.GL_VIEWPORT, viewport, 0);
+        }
+        System.arraycopy(viewport, 0, out, offset, 4);
+    }
+
+    private int setCap(int cap, int current, boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (check(current != value)) {
+            if (enabled) {
+                backend.glEnable(cap);
+            } else {
+                backend.glDisable(cap);
+            }
+        }
+        return value;
+    }
+
+    private static boolean same(int[] rect, int x, int y, int width, int height) {
+        if (rect[0] == x && rect[1] == y && rect[2] == width && rect[3] == height) {
+            return true;
+        }
+        rect[0] = x;
+        rect[1] = y;
+        rect[2] = width;
+        rect[3] = height;
+        return false;
+    }
+
+    /**
+     * 纹理被删除时调用，GL会自动解除其绑定，id可能被复用
+     *
+     * @param texture 纹理id
+     */
+    public void onTextureDeleted(int texture) {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            if (textures2D[i] == texture) textures2D[i] = 0;
+            if (texturesExternal[i] == texture) texturesExternal[i] = 0;
+        }
+    }
+
+    /**
+     * 缓冲区被删除时调用
+     *
+     * @param buffer 缓冲区id
+     */
+    public void onBufferDeleted(int buffer) {
+        if (arrayBuffer == buffer) arrayBuffer = 0;
+        if (elementArrayBuffer == buffer) elementArrayBuffer = 0;
+    }
+
+    /**
+     * 帧缓冲区被删除时调用
+     *
+     * @param framebuffer 帧缓冲区id
+     */
+    public void onFramebufferDeleted(int framebuffer) {
+        if (this.framebuffer == framebuffer) this.framebuffer = 0;
+    }
+
+    /**
+     * 程序被删除时调用，当前程序被删除时，其id在不再使用前不会被复用，但为安全起见同样清除
+     *
+     * @param program 程序id
+     */
+    public void onProgramDeleted(int program) {
+        if (this.program == program) this.program = UNKNOWN;
+    }
+
+    /**
+     * 获取实际调用次数
+     *
+     * @return 实际调用次数
+     */
+    public long getIssuedCount() {
+        return issuedCount;
+    }
+
+    /**
+     * 获取被过滤的重复调用次数
+     *
+     * @return 过滤次数
+     */
+    public long getElidedCount() {
+        return elidedCount;
+    }
+
+    /**
+     * 清空调用次数统计
+     */
+    public void resetCounts() {
+        issuedCount = 0;
+        elidedCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "GLStateCache{" +
+                "issuedCount=" + issuedCount +
+                ", elidedCount=" + elidedCount +
+                '}';
+    }
+}
@@ -0,0 +1,331 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * 流式顶点缓冲区，由{@link GLEnv GLEnv}持有，用于每帧变化的动态几何数据
+ * 一个大的VBO被划分为N个帧区域，每帧在当前区域内线性分配，帧结束时切换到下一个区域；
+ * 调用者获得数据在缓冲区中的偏移，使用偏移绘制，无需每帧创建或者重新指定缓冲区
+ * GLES3环境使用glMapBufferRange非同步写入，并使用栅栏确保区域不再被GPU使用；
+ * GLES2环境使用glBufferSubData写入，回到第一个区域时重新指定缓冲区存储（orphaning）
+ * 注意：只能在绘制线程使用
+ */
+public class GLStreamBuffer {
+
+    private static final String TAG = "GL/StreamBuffer";
+
+    private static final int ALIGNMENT = 16; // 分配对齐
+    private static final long WAIT_TIMEOUT = 1000000000L; // 等待栅栏超时，单位：纳秒
+
+    private final GLEnv env; // 环境
+    private int regionSize = 512 * 1024; // 每个区域的字节数
+    private int regionCount = 3; // 区域数量
+    private int bufferId; // 缓冲区id，0表示未创建
+    private Object context; // 创建缓冲区时的EGLContext
+    private boolean mapEnabled; // 是否使用glMapBufferRange
+    private long[] fences; // 每个区域的栅栏，0表示没有
+    private int region; // 当前区域
+    private int offset; // 当前区域已分配的字节数
+
+    private int mappedOffset = -1; // 已映射的偏移，小于0表示未映射
+    private int mappedSize; // 已映射的字节数
+    private GLPooledBuffer staging; // 未使用glMapBufferRange时的暂存缓冲区
+
+    private long overflowCount = 0; // 区域空间不足次数
+    private long waitCount = 0; // 等待GPU的次数
+    private int peakFrameUsage = 0; // 单帧最大使用字节数
+
+    GLStreamBuffer(GLEnv env) {
+        this.env = env;
+    }
+
+    /**
+     * 设置大小，已创建的缓冲区将被删除并在下一次使用时重新创建
+     *
+     * @param regionSize  每个区域的字节数，通常为单帧动态数据的最大值
+     * @param regionCount 区域数量，不小于同时处理的帧数，默认：3
+     */
+    public void setSize(int regionSize, int regionCount) {
+        if (regionSize <= 0 || regionCount < 2) {
+            throw new IllegalArgumentException(String.format("Invalid size: %s x %s", regionSize, regionCount));
+        }
+        release();
+        this.regionSize = (regionSize + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        this.regionCount = regionCount;
+    }
+
+    /**
+     * 写入数据
+     *
+     * @param data 数据，从position开始写入
+     * @param size 字节数
+     * @return 数据在缓冲区中的偏移；-1表示当前帧区域空间不足，调用者需要自行处理
+     */
+    public int write(Buffer data, int size) {
+        ByteBuffer dst = map(size);
+        if (null == dst) return -1;
+        if (copy(data, dst, size)) {
+            return unmap();
+        }
+        // 类型不支持直接复制，改用glBufferSubData
+        int offset = mappedOffset;
+        cancelMap();
+        env.getBackend().glBufferSubData(GLES20.GL_ARRAY_BUFFER, offset, size, data);
+        return offset;
+    }
+
+    /**
+     * 映射一段空间，写入完成后必须调用{@link #unmap() unmap}；映射期间不能调用其他GL方法
+     *
+     * @param size 字节数
+     * @return 可写入的缓冲区，position为0，limit为size；null表示当前帧区域空间不足
+     */
+    public ByteBuffer map(int size) {
+        if (mappedOffset >= 0) throw new RuntimeException("Stream buffer already mapped");
+        int offset = allocate(size);
+        if (offset < 0) return null;
+        bind();
+        mappedOffset = offset;
+        mappedSize = size;
+        if (mapEnabled) {
+            Buffer mapped = env.getBackend().glMapBufferRange(GLES20.GL_ARRAY_BUFFER, offset, size,
+                    GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_RANGE_BIT | GLES30.GL_MAP_UNSYNCHRONIZED_BIT);
+            if (mapped instanceof ByteBuffer) {
+                return ((ByteBuffer) mapped).order(ByteOrder.nativeOrder());
+            }
+            // 映射失败，改用glBufferSubData
+            Log.w(TAG, "map: glMapBufferRange failed, fallback to glBufferSubData");
+            env.getBackend().glGetError();
+            mapEnabled = false;
+        }
+        staging = env.getBufferPool().acquire(size);
+        return staging.asByteBuffer();
+    }
+
+    /**
+     * 结束映射，提交写入的数据
+     *
+     * @return 数据在缓冲区中的偏移
+     */
+    public int unmap() {
+        int offset = mappedOffset;
+        if (offset < 0) throw new RuntimeException("Stream buffer not mapped");
+        GLBackend backend = env.getBackend();
+        bind();
+        if (null == staging) {
+            backend.glUnmapBuffer(GLES20.GL_ARRAY_BUFFER);
+        } else {
+            backend.glBufferSubData(GLES20.GL_ARRAY_BUFFER, offset, mappedSize, staging.asByteBuffer());
+            staging.release();
+            staging = null;
+        }
+        mappedOffset = -1;
+        return offset;
+    }
+
+    private void cancelMap() {
+        if (null == staging) {
+            env.getBackend().glUnmapBuffer(GLES20.GL_ARRAY_BUFFER);
+        } else {
+            staging.release();
+            staging = null;
+        }
+        mappedOffset = -1;
+    }
+
+    /**
+     * 绑定到GL_ARRAY_BUFFER
+     */
+    public void bind() {
+        env.getStateCache().bindBuffer(GLES20.GL_ARRAY_BUFFER, bufferId);
+    }
+
+    /**
+     * 在当前帧区域中分配空间
+     *
+     * @param size 字节数
+     * @return 偏移；-1表示空间不足
+     */
+    private int allocate(int size) {
+        if (bufferId != 0 && context != env.getCurrentContext()) {
+            // 上下文已改变，原缓冲区随原上下文销毁
+            bufferId = 0;
+            fences = null;
+        }
+        if (bufferId == 0) {
+            create();
+        }
+        int start = (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+        if (size <= 0 || start + size > regionSize) {
+            overflowCount++;
+            return -1;
+        }
+        if (offset == 0) {
+            waitRegion();
+        }
+        offset = start + size;
+        return region * regionSize + start;
+    }
+
+    private void create() {
+        GLBackend backend = env.getBackend();
+        int[] buffers = new int[1];
+        backend.glGenBuffers(1, buffers, 0);
+        bufferId = buffers[0];
+        context = env.getCurrentContext();
+        mapEnabled = env.getGLESVersion() >= 3;
+        fences = new long[regionCount];
+        region = 0;
+        offset = 0;
+        bind();
+        backend.glBufferData(GLES20.GL_ARRAY_BUFFER, regionSize * regionCount, null, GLES20.GL_STREAM_DRAW);
+        env.checkGlError("glBufferData");
+        Log.d(TAG, String.format("create: %s x %s, map=%s", regionSize, regionCount, mapEnabled));
+    }
+
+    /**
+     * 等待当前区域不再被GPU使用
+     */
+    private void waitRegion() {
+        long fence = fences[region];
+        if (fence != 0) {
+            GLBackend backend = env.getBackend();
+            int result = backend.glClientWaitSync(fence, 0, 0);
+            if (result == GLES30.GL_TIMEOUT_EXPIRED) {
+                waitCount++;
+                backend.glClientWaitSync(fence, GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_TIMEOUT);
+            }
+            backend.glDeleteSync(fence);
+            fences[region] = 0;
+        }
+    }
+
+    /**
+     * 切换到下一个区域，由环境在每帧结束时调用
+     */
+    void nextFrame() {
+        if (bufferId == 0 || offset == 0) return;
+        if (offset > peakFrameUsage) {
+            peakFrameUsage = offset;
+        }
+        GLBackend backend = env.getBackend();
+        if (mapEnabled) {
+            fences[region] = backend.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        }
+        region = (region + 1) % regionCount;
+        offset = 0;
+        if (!mapEnabled && region == 0) {
+            // 重新指定存储，驱动为新数据分配新的内存，旧内存在GPU使用完后释放
+            bind();
+            backend.glBufferData(GLES20.GL_ARRAY_BUFFER, regionSize * regionCount, null, GLES20.GL_STREAM_DRAW);
+        }
+    }
+
+    /**
+     * 删除缓冲区及栅栏
+     */
+    void release() {
+        if (bufferId == 0) return;
+        GLBackend backend = env.getBackend();
+        if (mappedOffset >= 0) {
+            cancelMap();
+        }
+        for (long fence : fences) {
+            if (fence != 0) {
+                backend.glDeleteSync(fence);
+            }
+        }
+        fences = null;
+        env.getStateCache().onBufferDeleted(bufferId);
+        backend.glDeleteBuffers(1, new int[]{bufferId}, 0);
+        bufferId = 0;
+    }
+
+    private static boolean copy(Buffer src, ByteBuffer dst, int size) {
+        if (src instanceof ByteBuffer) {
+            ByteBuffer data = ((ByteBuffer) src).duplicate();
+            data.limit(data.position() + size);
+            dst.put(data);
+        } else if (src instanceof FloatBuffer) {
+            FloatBuffer data = ((FloatBuffer) src).duplicate();
+            data.limit(data.position() + size / 4);
+            dst.asFloatBuffer().put(data);
+        } else if (src instanceof ShortBuffer) {
+            ShortBuffer data = ((ShortBuffer) src).duplicate();
+            data.limit(data.position() + size / 2);
+            dst.asShortBuffer().put(data);
+        } else if (src instanceof IntBuffer) {
+            IntBuffer data = ((IntBuffer) src).duplicate();
+            data.limit(data.position() + size / 4);
+            dst.asIntBuffer().put(data);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 获取缓冲区id
+     *
+     * @return 缓冲区id，0表示未创建
+     */
+    public int getBufferId() {
+        return bufferId;
+    }
+
+    /**
+     * 获取当前帧剩余的字节数
+     *
+     * @return 剩余字节数
+     */
+    public int getRemaining() {
+        return regionSize - offset;
+    }
+
+    /**
+     * 获取区域空间不足的次数
+     *
+     * @return 次数
+     */
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * 获取等待GPU释放区域的次数，次数较多时应增加区域数量
+     *
+     * @return 次数
+     */
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+    /**
+     * 获取单帧最大使用字节数
+     *
+     * @return 字节数
+     */
+    public int getPeakFrameUsage() {
+        return peakFrameUsage;
+    }
+
+    @Override
+    public String toString() {
+        return "GLStreamBuffer{" +
+                "regionSize=" + regionSize +
+                ", regionCount=" + regionCount +
+                ", overflowCount=" + overflowCount +
+                ", waitCount=" + waitCount +
+                ", peakFrameUsage=" + peakFrameUsage +
+                '}';
+    }
+}
@@ -0,0 +1,451 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 纹理图集，将小图打包到固定大小的页面纹理中，减少纹理数量及切换
+ * 使用MaxRects算法（最短边最佳匹配）分配区域，通过glTexSubImage2D上传；
+ * 区域释放后空间可重新分配，碎片较多时调用{@link #compact() compact}整理，区域在GPU上复制到新的位置
+ * 注意：只能在绘制线程使用；上下文重新创建后，页面纹理失效，需要重新创建图集
+ */
+public class GLTextureAtlas {
+
+    private static final String TAG = "GL/TextureAtlas";
+
+    private final GLEnv env; // 环境
+    private final int pageWidth; // 页面宽
+    private final int pageHeight; // 页面高
+    private final int padding; // 区域之间的间隔，避免采样时混入相邻区域
+    private int maxPages = 8; // 最大页面数量
+    private final List<Page> pages = new ArrayList<>(); // 页面
+    private int framebuffer; // 整理时用于复制的帧缓冲区
+
+    /**
+     * @param env        环境
+     * @param pageWidth  页面宽
+     * @param pageHeight 页面高
+     * @param padding    区域之间的间隔，像素，通常为1
+     */
+    public GLTextureAtlas(GLEnv env, int pageWidth, int pageHeight, int padding) {
+        this.env = env;
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.padding = Math.max(0, padding);
+    }
+
+    /**
+     * 分配区域并上传像素
+     *
+     * @param width  宽
+     * @param height 高
+     * @param pixels RGBA像素数据，行紧密排列；null表示只分配不上传
+     * @return 区域；null表示页面空间及数量不足，或者尺寸超出页面
+     */
+    public GLAtlasRegion allocate(int width, int height, Buffer pixels) {
+        if (width <= 0 || height <= 0 || width + padding > pageWidth || height + padding > pageHeight) {
+            return null;
+        }
+        GLAtlasRegion region = new GLAtlasRegion(this, width, height);
+        boolean placed = false;
+        for (Page page : pages) {
+            if (page.insert(region, padding)) {
+                placed = true;
+                break;
+            }
+        }
+        if (!placed) {
+            if (pages.size() >= maxPages) {
+                Log.w(TAG, String.format("allocate: no space for %sx%s", width, height));
+                return null;
+            }
+            Page page = createPage();
+            if (!page.insert(region, padding)) return null;
+        }
+        if (null != pixels) {
+            upload(region, 0, 0, width, height, pixels);
+        }
+        return region;
+    }
+
+    /**
+     * 上传区域的部分像素
+     */
+    void upload(GLAtlasRegion region, int x, int y, int width, int height, Buffer pixels) {
+        if (null == region.page) throw new RuntimeException("Region already released");
+        env.getStateCache().bindTexture(GLES20.GL_TEXTURE_2D, region.page.texture);
+        env.getBackend().glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, region.x + x, region.y + y, width, height,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+    }
+
+    /**
+     * 释放区域
+     */
+    void release(GLAtlasRegion region) {
+        Page page = region.page;
+        if (null == page) return;
+        page.remove(region, padding);
+        region.page = null;
+    }
+
+    private Page createPage() {
+        GLBackend backend = env.getBackend();
+        int[] textures = new int[1];
+        backend.glGenTextures(1, textures, 0);
+        Page page = new Page(textures[0], pageWidth, pageHeight);
+        env.getStateCache().bindTexture(GLES20.GL_TEXTURE_2D, page.texture);
+        backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        backend.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, pageWidth, pageHeight, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        env.checkGlError("glTexImage2D");
+        pages.add(page);
+        Log.d(TAG, String.format("createPage: %s, %sx%s", pages.size(), pageWidth, pageHeight));
+        return page;
+    }
+
+    private void deletePage(Page page) {
+        env.getStateCache().onTextureDeleted(page.texture);
+        env.getBackend().glDeleteTextures(1, new int[]{page.texture}, 0);
+        page.texture = 0;
+    }
+
+    /**
+     * 整理页面：删除空页面；存在已释放空间的页面，将其区域重新打包到新的纹理中
+     * 不在绘制过程中调用，整理会切换帧缓冲区
+     *
+     * @return 被整理的页面数量
+     */
+    public int compact() {
+        int count = 0;
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            Page page = pages.get(i);
+            if (page.regions.isEmpty()) {
+                deletePage(page);
+                pages.remove(i);
+                count++;
+            } else if (page.releasedArea > 0 && repack(page)) {
+                count++;
+            }
+        }
+        if (framebuffer != 0) {
+            env.getStateCache().bindFramebuffer(0);
+        }
+        return count;
+    }
+
+    /**
+     * 重新打包页面中的区域，从大到小放入新的页面，然后在GPU上复制像素
+     *
+     * @return true，成功；false，未整理
+     */
+    private boolean repack(Page page) {
+        List<GLAtlasRegion> regions = new ArrayList<>(page.regions);
+        Collections.sort(regions, (a, b) -> Integer.compare(
+                Math.max(b.getWidth(), b.getHeight()), Math.max(a.getWidth(), a.getHeight())));
+        Page newPage = new Page(0, pageWidth, pageHeight);
+        int[] oldPositions = new int[regions.size() * 2];
+        for (int i = 0; i < regions.size(); i++) {
+            GLAtlasRegion region = regions.get(i);
+            oldPositions[i * 2] = region.x;
+            oldPositions[i * 2 + 1] = region.y;
+            if (!newPage.insert(region, padding)) {
+                // 无法放入，恢复原位置
+                for (int j = 0; j <= i; j++) {
+                    GLAtlasRegion r = regions.get(j);
+                    r.x = oldPositions[j * 2];
+                    r.y = oldPositions[j * 2 + 1];
+                    r.page = page;
+                }
+                return false;
+            }
+        }
+        GLBackend backend = env.getBackend();
+        GLStateCache stateCache = env.getStateCache();
+        if (framebuffer == 0) {
+            int[] framebuffers = new int[1];
+            backend.glGenFramebuffers(1, framebuffers, 0);
+            framebuffer = framebuffers[0];
+        }
+        // 创建新纹理，暂时加入页面列表以便复用创建逻辑
+        Page target = createPage();
+        pages.remove(pages.size() - 1);
+        stateCache.bindFramebuffer(framebuffer);
+        backend.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, page.texture, 0);
+        if (backend.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER) != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            Log.w(TAG, "repack: framebuffer incomplete");
+            deletePage(target);
+            for (int i = 0; i < regions.size(); i++) {
+                GLAtlasRegion r = regions.get(i);
+                r.x = oldPositions[i * 2];
+                r.y = oldPositions[i * 2 + 1];
+                r.page = page;
+            }
+            return false;
+        }
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, target.texture);
+        for (int i = 0; i < regions.size(); i++) {
+            GLAtlasRegion region = regions.get(i);
+            backend.glCopyTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, region.x, region.y,
+                    oldPositions[i * 2], oldPositions[i * 2 + 1], region.getWidth(), region.getHeight());
+        }
+        backend.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+                GLES20.GL_TEXTURE_2D, 0, 0);
+        // 新页面接管区域及纹理
+        newPage.texture = target.texture;
+        for (GLAtlasRegion region : regions) {
+            region.page = newPage;
+        }
+        deletePage(page);
+        pages.set(pages.indexOf(page), newPage);
+        return true;
+    }
+
+    /**
+     * 删除所有页面，所有区域失效
+     */
+    public void clear() {
+        for (Page page : pages) {
+            for (GLAtlasRegion region : page.regions) {
+                region.page = null;
+            }
+            deletePage(page);
+        }
+        pages.clear();
+        if (framebuffer != 0) {
+            env.getStateCache().onFramebufferDeleted(framebuffer);
+            env.getBackend().glDeleteFramebuffers(1, new int[]{framebuffer}, 0);
+            framebuffer = 0;
+        }
+    }
+
+    /**
+     * 设置最大页面数量
+     *
+     * @param maxPages 最大页面数量，默认：8
+     */
+    public void setMaxPages(int maxPages) {
+        this.maxPages = maxPages;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * 获取页面纹理id
+     *
+     * @param index 页面位置
+     * @return 纹理id
+     */
+    public int getPageTexture(int index) {
+        return pages.get(index).texture;
+    }
+
+    /**
+     * 获取页面占用率
+     *
+     * @param index 页面位置
+     * @return 已分配区域面积（含间隔）占页面面积的比例，范围：[0, 1]
+     */
+    public float getPageOccupancy(int index) {
+        Page page = pages.get(index);
+        return (float) page.usedArea / ((long) page.width * page.height);
+    }
+
+    /**
+     * 获取页面碎片率
+     *
+     * @param index 页面位置
+     * @return 1 - 最大空闲矩形面积 / 空闲总面积，范围：[0, 1]；0表示空闲空间连续
+     */
+    public float getPageFragmentation(int index) {
+        return pages.get(index).getFragmentation();
+    }
+
+    /**
+     * 获取所有页面的总占用率
+     *
+     * @return 占用率，范围：[0, 1]；没有页面时为0
+     */
+    public float getOccupancy() {
+        if (pages.isEmpty()) return 0;
+        long used = 0;
+        for (Page page : pages) {
+            used += page.usedArea;
+        }
+        return (float) used / ((long) pageWidth * pageHeight * pages.size());
+    }
+
+    /**
+     * 获取所有页面的平均碎片率
+     *
+     * @return 碎片率，范围：[0, 1]
+     */
+    public float getFragmentation() {
+        if (pages.isEmpty()) return 0;
+        float total = 0;
+        for (Page page : pages) {
+            total += page.getFragmentation();
+        }
+        return total / pages.size();
+    }
+
+    /**
+     * 获取区域数量
+     *
+     * @return 区域数量
+     */
+    public int getRegionCount() {
+        int count = 0;
+        for (Page page : pages) {
+            count += page.regions.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "GLTextureAtlas{" +
+                "pageSize=" + pageWidth + "x" + pageHeight +
+                ", pageCount=" + pages.size() +
+                ", regionCount=" + getRegionCount() +
+                ", occupancy=" + getOccupancy() +
+                ", fragmentation=" + getFragmentation() +
+                '}';
+    }
+
+    /**
+     * 图集页面，使用MaxRects维护空闲矩形列表
+     */
+    static final class Page {
+
+        int texture; // 纹理id
+        final int width; // 宽
+        final int height; // 高
+        final List<GLAtlasRegion> regions = new ArrayList<>(); // 已分配的区域
+        private final List<int[]> freeRects = new ArrayList<>(); // 空闲矩形：x, y, width, height
+        long usedArea; // 已分配面积，含间隔
+        long releasedArea; // 分配后被释放的面积，整理后清零
+
+        Page(int texture, int width, int height) {
+            this.texture = texture;
+            this.width = width;
+            this.height = height;
+            freeRects.add(new int[]{0, 0, width, height});
+        }
+
+        /**
+         * 放入区域，选择剩余短边最小的空闲矩形
+         *
+         * @return true，成功；false，空间不足
+         */
+        boolean insert(GLAtlasRegion region, int padding) {
+            int width = region.getWidth() + padding;
+            int height = region.getHeight() + padding;
+            int[] best = null;
+            int bestShort = Integer.MAX_VALUE;
+            int bestLong = Integer.MAX_VALUE;
+            for (int[] rect : freeRects) {
+                if (rect[2] < width || rect[3] < height) continue;
+                int leftoverX = rect[2] - width;
+                int leftoverY = rect[3] - height;
+                int shortSide = Math.min(leftoverX, leftoverY);
+                int longSide = Math.max(leftoverX, leftoverY);
+                if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong)) {
+                    best = rect;
+                    bestShort = shortSide;
+                    bestLong = longSide;
+                }
+            }
+            if (null == best) return false;
+            int x = best[0];
+            int y = best[1];
+            split(x, y, width, height);
+            region.x = x;
+            region.y = y;
+            region.page = this;
+            regions.add(region);
+            usedArea += (long) width * height;
+            return true;
+        }
+
+        /**
+         * 移除区域，空间归还到空闲列表
+         */
+        void remove(GLAtlasRegion region, int padding) {
+            if (!regions.remove(region)) return;
+            int width = region.getWidth() + padding;
+            int height = region.getHeight() + padding;
+            long area = (long) width * height;
+            usedArea -= area;
+            releasedArea += area;
+            freeRects.add(new int[]{region.x, region.y, width, height});
+            prune();
+        }
+
+        /**
+         * 从所有与已用矩形相交的空闲矩形中切除已用部分
+         */
+        private void split(int x, int y, int width, int height) {
+            int right = x + width;
+            int bottom = y + height;
+            for (int i = freeRects.size() - 1; i >= 0; i--) {
+                int[] rect = freeRects.get(i);
+                int rectRight = rect[0] + rect[2];
+                int rectBottom = rect[1] + rect[3];
+                if (x >= rectRight || right <= rect[0] || y >= rectBottom || bottom <= rect[1]) continue;
+                freeRects.remove(i);
+                if (x > rect[0]) {
+                    freeRects.add(new int[]{rect[0], rect[1], x - rect[0], rect[3]});
+                }
+                if (right < rectRight) {
+                    freeRects.add(new int[]{right, rect[1], rectRight - right, rect[3]});
+                }
+                if (y > rect[1]) {
+                    freeRects.add(new int[]{rect[0], rect[1], rect[2], y - rect[1]});
+                }
+                if (bottom < rectBottom) {
+                    freeRects.add(new int[]{rect[0], bottom, rect[2], rectBottom - bottom});
+                }
+            }
+            prune();
+        }
+
+        /**
+         * 删除被其他空闲矩形包含的空闲矩形
+         */
+        private void prune() {
+            for (int i = freeRects.size() - 1; i >= 0; i--) {
+                int[] a = freeRects.get(i);
+                for (int j = 0; j < freeRects.size(); j++) {
+                    if (i == j) continue;
+                    int[] b = freeRects.get(j);
+                    if (a[0] >= b[0] && a[1] >= b[1]
+                            && a[0] + a[2] <= b[0] + b[2] && a[1] + a[3] <= b[1] + b[3]) {
+                        freeRects.remove(i);
+                        break;
+                    }
+                }
+            }
+        }
+
+        float getFragmentation() {
+            long freeArea = (long) width * height - usedArea;
+            if (freeArea <= 0) return 0;
+            long largest = 0;
+            for (int[] rect : freeRects) {
+                largest = Math.max(largest, (long) rect[2] * rect[3]);
+            }
+            return 1 - Math.min(1f, (float) largest / freeArea);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.mosect.lib.easygl;
+
+/**
+ * 异步加载的纹理句柄，由{@link GLTextureLoader GLTextureLoader}创建
+ * 状态可在任意线程查询；加载完成前{@link #getTextureId() getTextureId}返回占位纹理
+ */
+public final class GLTextureHandle {
+
+    public static final int STATE_DECODING = 0; // 等待解码或者正在解码
+    public static final int STATE_UPLOADING = 1; // 已解码，等待上传或者正在上传
+    public static final int STATE_READY = 2; // 可用
+    public static final int STATE_FAILED = 3; // 加载失败
+    public static final int STATE_RELEASED = 4; // 已释放
+
+    private final GLTextureLoader loader; // 加载器
+    final GLTextureLoader.Decoder decoder; // 解码器
+    volatile int state = STATE_DECODING; // 状态
+    volatile Exception error; // 加载失败的原因
+    volatile int width; // 宽
+    volatile int height; // 高
+    volatile GLPooledBuffer pixels; // 解码后的像素，上传完成后释放；解码线程写入，资源线程及绘制线程读取
+    volatile int textureId; // 纹理id，资源线程上传时由资源线程写入
+    volatile boolean resourceUploading; // 是否正在资源线程上传，期间像素及纹理由发布动作回收
+    int uploadedRows; // 已上传的行数，只在绘制线程访问
+
+    GLTextureHandle(GLTextureLoader loader, GLTextureLoader.Decoder decoder) {
+        this.loader = loader;
+        this.decoder = decoder;
+    }
+
+    /**
+     * 切换状态，已释放时不再改变
+     *
+     * @param state 新状态
+     * @return true，切换成功；false，已释放
+     */
+    synchronized boolean changeState(int state) {
+        if (this.state == STATE_RELEASED) return false;
+        this.state = state;
+        return true;
+    }
+
+    /**
+     * 获取状态
+     *
+     * @return 状态，参考STATE_*常量
+     */
+    public int getState() {
+        return state;
+    }
+
+    /**
+     * 判断纹理是否可用
+     *
+     * @return true，已上传完成；false，未完成、失败或者已释放
+     */
+    public boolean isReady() {
+        return state == STATE_READY;
+    }
+
+    /**
+     * 获取纹理id，只能在绘制线程调用
+     *
+     * @return 纹理id；未完成时返回占位纹理
+     */
+    public int getTextureId() {
+        if (state == STATE_READY) {
+            return textureId;
+        }
+        return loader.getPlaceholderTexture();
+    }
+
+    /**
+     * 获取宽，解码完成后有效
+     *
+     * @return 宽
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * 获取高，解码完成后有效
+     *
+     * @return 高
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 获取加载失败的原因
+     *
+     * @return 异常，未失败时为null
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * 释放纹理，未完成时取消加载；可在任意线程调用
+     */
+    public void release() {
+        if (changeState(STATE_RELEASED)) {
+            loader.getEnv().runGLAction(() -> loader.deleteTexture(this));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GLTextureHandle{" +
+                "state=" + state +
+                ", width=" + width +
+                ", height=" + height +
+                '}';
+    }
+}
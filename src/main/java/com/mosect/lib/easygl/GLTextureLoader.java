@@ -0,0 +1,511 @@
+package com.mosect.lib.easygl;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 异步纹理加载器，由{@link GLEnv GLEnv}持有
+ * 工作线程解码到缓冲池申请的直接缓冲区，绘制线程在动作执行阶段按每帧时间及字节预算上传，
+ * 超出预算的纹理按行分块，在之后的帧继续上传
+ * 注意：上下文重新创建后，已加载的纹理失效，需要重新加载
+ */
+public class GLTextureLoader {
+
+    private static final String TAG = "GL/TextureLoader";
+
+    private final GLEnv env; // 环境
+    private final ConcurrentLinkedQueue<GLTextureHandle> decoded = new ConcurrentLinkedQueue<>(); // 已解码等待上传
+    private GLTextureHandle uploading; // 正在分块上传的纹理
+    private ExecutorService executor; // 解码线程池
+    private int threadCount = 2; // 解码线程数量
+    private volatile long timeBudget = 2000000; // 每帧上传时间预算，单位：纳秒
+    private volatile int byteBudget = 4 * 1024 * 1024; // 每帧上传字节预算
+    private volatile int placeholderColor = 0; // 占位纹理颜色，ARGB
+    private volatile boolean resourceThreadEnabled = false; // 是否在资源线程上传
+    private int placeholder; // 占位纹理id
+    private Object placeholderContext; // 创建占位纹理时的EGLContext
+
+    private final AtomicLong decodedCount = new AtomicLong(); // 解码完成数量
+    private final AtomicLong decodeTime = new AtomicLong(); // 累计解码耗时，所有线程累计
+    private final AtomicLong failedCount = new AtomicLong(); // 失败数量
+    private volatile long uploadedCount = 0; // 上传完成数量
+    private volatile long uploadedBytes = 0; // 累计上传字节数
+    private volatile long uploadTime = 0; // 累计上传耗时
+    private volatile long worstFrameUploadTime = 0; // 单帧最大上传耗时
+    private final GLTimeHistogram frameUploadTimes = new GLTimeHistogram(120); // 有上传的帧的上传耗时
+
+    GLTextureLoader(GLEnv env) {
+        this.env = env;
+    }
+
+    /**
+     * 解码器，在工作线程执行
+     */
+    public interface Decoder {
+
+        /**
+         * 解码图片
+         *
+         * @param pool 缓冲区池，像素数据从此申请
+         * @param size 输出宽高：0，宽；1，高
+         * @return RGBA像素数据，每像素4字节，行紧密排列
+         * @throws Exception 解码失败
+         */
+        GLPooledBuffer decode(GLBufferPool pool, int[] size) throws Exception;
+    }
+
+    /**
+     * 创建从文件解码的解码器
+     *
+     * @param path 文件路径
+     * @return 解码器
+     */
+    public static Decoder fileDecoder(String path) {
+        return (pool, size) -> {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+            if (null == bitmap) throw new IOException("decodeFile failed: " + path);
+            try {
+                return copyBitmap(bitmap, pool, size);
+            } finally {
+                bitmap.recycle();
+            }
+        };
+    }
+
+    /**
+     * 复制位图像素到缓冲池申请的缓冲区
+     *
+     * @param bitmap 位图
+     * @param pool   缓冲区池
+     * @param size   输出宽高
+     * @return RGBA像素数据
+     */
+    public static GLPooledBuffer copyBitmap(Bitmap bitmap, GLBufferPool pool, int[] size) {
+        Bitmap source = bitmap;
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            source = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        try {
+            int width = source.getWidth();
+            int height = source.getHeight();
+            GLPooledBuffer pixels = pool.acquire(width * height * 4);
+            source.copyPixelsToBuffer(pixels.asByteBuffer());
+            size[0] = width;
+            size[1] = height;
+            return pixels;
+        } finally {
+            if (source != bitmap) {
+                source.recycle();
+            }
+        }
+    }
+
+    /**
+     * 加载纹理，可在任意线程调用
+     *
+     * @param decoder 解码器
+     * @return 纹理句柄
+     */
+    public GLTextureHandle load(Decoder decoder) {
+        GLTextureHandle handle = new GLTextureHandle(this, decoder);
+        getExecutor().execute(() -> decode(handle));
+        return handle;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (null == executor) {
+            AtomicInteger index = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threadCount, r -> {
+                Thread thread = new Thread(r, TAG + "-" + index.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private void decode(GLTextureHandle handle) {
+        if (handle.state == GLTextureHandle.STATE_RELEASED) return;
+        long start = System.nanoTime();
+        int[] size = new int[2];
+        GLPooledBuffer pixels;
+        try {
+            pixels = handle.decoder.decode(env.getBufferPool(), size);
+            if (null == pixels || pixels.getSize() < size[0] * size[1] * 4 || size[0] <= 0 || size[1] <= 0) {
+                if (null != pixels) pixels.release();
+                throw new IOException(String.format("Invalid pixels: %sx%s", size[0], size[1]));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "decode: ", e);
+            failedCount.incrementAndGet();
+            handle.error = e;
+            handle.changeState(GLTextureHandle.STATE_FAILED);
+            return;
+        }
+        decodeTime.addAndGet(System.nanoTime() - start);
+        decodedCount.incrementAndGet();
+        handle.pixels = pixels;
+        handle.width = size[0];
+        handle.height = size[1];
+        handle.changeState(GLTextureHandle.STATE_UPLOADING);
+        if (resourceThreadEnabled) {
+            long[] uploadTime = new long[1];
+            // 先标记再提交，避免提交后、上传期间绘制线程删除纹理时回收像素
+            handle.resourceUploading = true;
+            if (env.runResourceAction(() -> uploadTime[0] = uploadOnResourceThread(handle),
+                    success -> publishTexture(handle, uploadTime[0], success))) {
+                return;
+            }
+            handle.resourceUploading = false;
+        }
+        // 已释放时同样交给绘制线程回收像素
+        decoded.offer(handle);
+        env.requestRender();
+    }
+
+    /**
+     * 在预算内上传已解码的纹理，由环境在动作执行阶段调用
+     *
+     * @return true，仍有纹理等待上传；false，没有
+     */
+    boolean upload() {
+        if (null == uploading && decoded.isEmpty()) return false;
+        if (null == env.getCurrentContext()) return false;
+        long start = System.nanoTime();
+        long timeBudget = this.timeBudget;
+        int byteBudget = this.byteBudget;
+        int bytes = 0;
+        while (true) {
+            GLTextureHandle handle = null != uploading ? uploading : decoded.poll();
+            if (null == handle) break;
+            uploading = handle;
+            if (handle.state == GLTextureHandle.STATE_RELEASED) {
+                deleteTexture(handle);
+                uploading = null;
+                continue;
+            }
+            int rowBytes = handle.width * 4;
+            int rows = Math.min(handle.height - handle.uploadedRows,
+                    Math.min(Math.max(1, (byteBudget - bytes) / rowBytes), rowsInTime(start, bytes, rowBytes)));
+            ByteBuffer pixels = handle.pixels.asByteBuffer();
+            GLBackend backend = env.getBackend();
+            if (handle.textureId == 0) {
+                int[] textures = new int[1];
+                backend.glGenTextures(1, textures, 0);
+                handle.textureId = textures[0];
+                bindTexture(handle.textureId);
+                // 一次可上传完成时直接指定数据，否则先分配存储再分块上传
+                backend.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, handle.width, handle.height, 0,
+                        GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, rows == handle.height ? pixels : null);
+                if (rows == handle.height) {
+                    handle.uploadedRows = rows;
+                }
+            } else {
+                env.getStateCache().bindTexture(GLES20.GL_TEXTURE_2D, handle.textureId);
+            }
+            if (handle.uploadedRows < handle.height) {
+                pixels.position(handle.uploadedRows * rowBytes);
+                backend.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, handle.uploadedRows, handle.width, rows,
+                        GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+                handle.uploadedRows += rows;
+            }
+            bytes += rows * rowBytes;
+            if (handle.uploadedRows >= handle.height) {
+                handle.pixels.release();
+                handle.pixels = null;
+                handle.changeState(GLTextureHandle.STATE_READY);
+                uploading = null;
+                uploadedCount++;
+            }
+            if (bytes >= byteBudget || System.nanoTime() - start >= timeBudget) break;
+        }
+        if (bytes > 0) {
+            long time = System.nanoTime() - start;
+            uploadedBytes += bytes;
+            uploadTime += time;
+            if (time > worstFrameUploadTime) {
+                worstFrameUploadTime = time;
+            }
+            frameUploadTimes.record(time);
+        }
+        return null != uploading || !decoded.isEmpty();
+    }
+
+    /**
+     * 按吞吐量估算剩余时间预算内可上传的行数，使单帧最多超出时间预算一行
+     * 本帧已上传时使用本帧的吞吐量，否则使用累计吞吐量；还没有吞吐量时只上传一行用于估算
+     *
+     * @param start    本帧上传开始时间
+     * @param bytes    本帧已上传的字节数
+     * @param rowBytes 每行字节数
+     * @return 行数，至少为1
+     */
+    private int rowsInTime(long start, int bytes, int rowBytes) {
+        long elapsed = System.nanoTime() - start;
+        double bytesPerNano;
+        if (bytes > 0 && elapsed > 0) {
+            bytesPerNano = (double) bytes / elapsed;
+        } else {
+            long time = uploadTime;
+            bytesPerNano = time > 0 ? (double) uploadedBytes / time : 0;
+        }
+        double rows = (timeBudget - elapsed) * bytesPerNano / rowBytes;
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, rows));
+    }
+
+    /**
+     * 在资源线程一次上传完整纹理，不受每帧预算限制
+     *
+     * @return 上传耗时
+     */
+    private long uploadOnResourceThread(GLTextureHandle handle) {
+        if (handle.state == GLTextureHandle.STATE_RELEASED) return 0;
+        long start = System.nanoTime();
+        GLBackend backend = env.getBackend();
+        int[] textures = new int[1];
+        backend.glGenTextures(1, textures, 0);
+        // 先记录纹理，上传失败时由发布动作删除
+        handle.textureId = textures[0];
+        backend.glBindTexture(GLES20.GL_TEXTURE_2D, textures[0]);
+        setTextureParameters(backend);
+        backend.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, handle.width, handle.height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, handle.pixels.asByteBuffer());
+        backend.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 资源线程上传结束后，在绘制线程发布纹理；上传失败时标记失败并回收像素及纹理
+     */
+    private void publishTexture(GLTextureHandle handle, long time, boolean success) {
+        // 上传结束，像素及纹理交还绘制线程
+        handle.resourceUploading = false;
+        if (null != handle.pixels) {
+            handle.pixels.release();
+            handle.pixels = null;
+        }
+        if (!success) {
+            failedCount.incrementAndGet();
+            handle.error = new IOException("Upload failed on resource thread");
+            handle.changeState(GLTextureHandle.STATE_FAILED);
+            deleteTexture(handle);
+            return;
+        }
+        if (handle.textureId == 0 || !handle.changeState(GLTextureHandle.STATE_READY)) {
+            deleteTexture(handle);
+            return;
+        }
+        uploadedCount++;
+        uploadedBytes += (long) handle.width * handle.height * 4;
+        uploadTime += time;
+    }
+
+    private void bindTexture(int texture) {
+        env.getStateCache().bindTexture(GLES20.GL_TEXTURE_2D, texture);
+        setTextureParameters(env.getBackend());
+    }
+
+    private static void setTextureParameters(GLBackend backend) {
+        backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        backend.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+    }
+
+    /**
+     * 删除纹理及未上传的像素，在绘制线程调用；正在资源线程上传时，由发布动作删除
+     *
+     * @param handle 纹理句柄
+     */
+    void deleteTexture(GLTextureHandle handle) {
+        if (uploading == handle) {
+            uploading = null;
+        }
+        if (handle.resourceUploading) return;
+        if (null != handle.pixels) {
+            handle.pixels.release();
+            handle.pixels = null;
+        }
+        if (handle.textureId != 0) {
+            env.getStateCache().onTextureDeleted(handle.textureId);
+            env.getBackend().glDeleteTextures(1, new int[]{handle.textureId}, 0);
+            handle.textureId = 0;
+        }
+    }
+
+    /**
+     * 获取占位纹理，1x1，颜色参考{@link #setPlaceholderColor(int) setPlaceholderColor}；只能在绘制线程调用
+     *
+     * @return 占位纹理id，无当前上下文时为0
+     */
+    public int getPlaceholderTexture() {
+        Object context = env.getCurrentContext();
+        if (null == context) return 0;
+        if (placeholder == 0 || placeholderContext != context) {
+            int[] textures = new int[1];
+            env.getBackend().glGenTextures(1, textures, 0);
+            placeholder = textures[0];
+            placeholderContext = context;
+            bindTexture(placeholder);
+            int color = placeholderColor;
+            GLPooledBuffer pixel = env.getBufferPool().acquire(4);
+            ByteBuffer data = pixel.asByteBuffer();
+            data.put((byte) (color >> 16)).put((byte) (color >> 8)).put((byte) color).put((byte) (color >>> 24));
+            data.position(0);
+            env.getBackend().glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1, 1, 0,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, data);
+            pixel.release();
+        }
+        return placeholder;
+    }
+
+    /**
+     * 释放线程及未上传的像素，环境销毁时调用
+     */
+    void release() {
+        synchronized (this) {
+            if (null != executor) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+        if (null != uploading) {
+            deleteTexture(uploading);
+        }
+        GLTextureHandle handle;
+        while (null != (handle = decoded.poll())) {
+            deleteTexture(handle);
+        }
+        placeholder = 0;
+        placeholderContext = null;
+    }
+
+    GLEnv getEnv() {
+        return env;
+    }
+
+    /**
+     * 设置解码线程数量，在第一次加载之前设置
+     *
+     * @param threadCount 线程数量，默认：2
+     */
+    public synchronized void setThreadCount(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    /**
+     * 设置每帧上传预算，超出任意一个预算时停止上传，剩余部分在之后的帧继续；每帧至少上传一行
+     * 按实测吞吐量决定每次上传的行数，单帧上传耗时最多超出时间预算一行
+     *
+     * @param timeBudget 时间预算，单位：纳秒，默认：2ms
+     * @param byteBudget 字节预算，默认：4MB
+     */
+    public void setUploadBudget(long timeBudget, int byteBudget) {
+        this.timeBudget = timeBudget;
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * 设置是否在{@link GLResourceThread 资源线程}上传纹理，开启后上传不占用帧时间，也不受每帧预算限制
+     *
+     * @param enabled 是否开启，默认：false
+     */
+    public void setResourceThreadEnabled(boolean enabled) {
+        this.resourceThreadEnabled = enabled;
+    }
+
+    /**
+     * 设置占位纹理颜色，对之后创建的占位纹理生效
+     *
+     * @param color 颜色，ARGB，默认透明
+     */
+    public void setPlaceholderColor(int color) {
+        this.placeholderColor = color;
+        env.runGLAction(() -> {
+            if (placeholder != 0 && placeholderContext == env.getCurrentContext()) {
+                env.getStateCache().onTextureDeleted(placeholder);
+                env.getBackend().glDeleteTextures(1, new int[]{placeholder}, 0);
+            }
+            placeholder = 0;
+        });
+    }
+
+    public long getDecodedCount() {
+        return decodedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getUploadedCount() {
+        return uploadedCount;
+    }
+
+    public long getUploadedBytes() {
+        return uploadedBytes;
+    }
+
+    /**
+     * 获取平均解码耗时
+     *
+     * @return 平均解码耗时，单位：纳秒
+     */
+    public long getAverageDecodeTime() {
+        long count = decodedCount.get();
+        return count > 0 ? decodeTime.get() / count : 0;
+    }
+
+    /**
+     * 获取上传吞吐量
+     *
+     * @return 每秒上传字节数
+     */
+    public long getUploadThroughput() {
+        long time = uploadTime;
+        return time > 0 ? (long) (uploadedBytes * 1e9 / time) : 0;
+    }
+
+    /**
+     * 获取单帧最大上传耗时
+     *
+     * @return 单帧最大上传耗时，单位：纳秒
+     */
+    public long getWorstFrameUploadTime() {
+        return worstFrameUploadTime;
+    }
+
+    /**
+     * 获取最近有上传的帧的上传耗时滚动统计
+     *
+     * @return 上传耗时统计，单位：纳秒
+     */
+    public GLTimeHistogram getFrameUploadTimes() {
+        return frameUploadTimes;
+    }
+
+    @Override
+    public String toString() {
+        return "GLTextureLoader{" +
+                "decodedCount=" + decodedCount +
+                ", failedCount=" + failedCount +
+                ", uploadedCount=" + uploadedCount +
+                ", uploadedBytes=" + uploadedBytes +
+                ", uploadThroughput=" + getUploadThroughput() +
+                ", worstFrameUploadTime=" + worstFrameUploadTime +
+                '}';
+    }
+}
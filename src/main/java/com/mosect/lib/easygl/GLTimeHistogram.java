@@ -0,0 +1,90 @@
+package com.mosect.lib.easygl;
+
+import java.util.Arrays;
+
+/**
+ * 滚动耗时统计，保留最近若干个样本，可查询分位数
+ * 记录及查询均不分配内存，可在任意线程查询
+ */
+public class GLTimeHistogram {
+
+    private final long[] samples; // 样本环形缓冲区
+    private final long[] sorted; // 查询分位数时使用的排序缓冲区
+    private int count = 0; // 有效样本数量
+    private int index = 0; // 下一个样本写入位置
+
+    /**
+     * @param capacity 保留的样本数量
+     */
+    public GLTimeHistogram(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        samples = new long[capacity];
+        sorted = new long[capacity];
+    }
+
+    /**
+     * 记录样本
+     *
+     * @param value 样本值，通常为纳秒
+     */
+    public synchronized void record(long value) {
+        samples[index] = value;
+        index = (index + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    /**
+     * 获取分位数
+     *
+     * @param percentile 百分位，范围：[0, 100]
+     * @return 分位数，无样本时返回0
+     */
+    public synchronized long getPercentile(float percentile) {
+        if (count == 0) return 0;
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int rank = (int) Math.ceil(percentile / 100f * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    public long getP95() {
+        return getPercentile(95);
+    }
+
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    /**
+     * 获取有效样本数量
+     *
+     * @return 样本数量
+     */
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * 清空样本
+     */
+    public synchronized void reset() {
+        count = 0;
+        index = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "GLTimeHistogram{" +
+                "count=" + getCount() +
+                ", p50=" + getP50() +
+                ", p95=" + getP95() +
+                ", p99=" + getP99() +
+                '}';
+    }
+}
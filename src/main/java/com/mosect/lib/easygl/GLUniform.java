@@ -0,0 +1,153 @@
+package com.mosect.lib.easygl;
+
+/**
+ * shader uniform变量句柄，记录最后上传的值，值未改变时不再调用glUniform
+ * 通过{@link GLShader#getUniform(String) GLShader.getUniform}获取，程序重新创建后句柄仍然有效
+ * 注意：只能在绘制线程，且对应程序为当前程序时调用设置方法
+ */
+public final class GLUniform {
+
+    private static final int TYPE_NONE = 0;
+    private static final int TYPE_INT = 1;
+    private static final int TYPE_FLOAT = 2;
+    private static final int TYPE_MAT3 = 3;
+    private static final int TYPE_MAT4 = 4;
+
+    private final String name; // 变量名称
+    private GLBackend backend; // 后端
+    private int location = -1; // 变量location，小于0表示不可用
+    private int type = TYPE_NONE; // 最后上传值的类型，TYPE_NONE表示未上传
+    private int size = 0; // 最后上传值的分量数量
+    private int intValue; // 最后上传的整数值
+    private final float[] values = new float[16]; // 最后上传的浮点值
+
+    GLUniform(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 绑定到程序，清除已记录的值
+     *
+     * @param backend  后端
+     * @param location 变量location
+     */
+    void bind(GLBackend backend, int location) {
+        this.backend = backend;
+        this.location = location;
+        this.type = TYPE_NONE;
+    }
+
+    /**
+     * 清除已记录的值，程序被其他代码直接修改时调用
+     */
+    public void invalidate() {
+        type = TYPE_NONE;
+    }
+
+    public void setInt(int x) {
+        if (location < 0) return;
+        if (type == TYPE_INT && intValue == x) return;
+        type = TYPE_INT;
+        intValue = x;
+        backend.glUniform1i(location, x);
+    }
+
+    public void setFloat(float x) {
+        if (location < 0) return;
+        if (same(1, x, 0, 0, 0)) return;
+        backend.glUniform1f(location, x);
+    }
+
+    public void setVec2(float x, float y) {
+        if (location < 0) return;
+        if (same(2, x, y, 0, 0)) return;
+        backend.glUniform2f(location, x, y);
+    }
+
+    public void setVec3(float x, float y, float z) {
+        if (location < 0) return;
+        if (same(3, x, y, z, 0)) return;
+        backend.glUniform3f(location, x, y, z);
+    }
+
+    public void setVec4(float x, float y, float z, float w) {
+        if (location < 0) return;
+        if (same(4, x, y, z, w)) return;
+        backend.glUniform4f(location, x, y, z, w);
+    }
+
+    public void setMat3(float[] value, int offset) {
+        if (location < 0) return;
+        if (sameMatrix(TYPE_MAT3, 9, value, offset)) return;
+        backend.glUniformMatrix3fv(location, 1, false, value, offset);
+    }
+
+    public void setMat4(float[] value, int offset) {
+        if (location < 0) return;
+        if (sameMatrix(TYPE_MAT4, 16, value, offset)) return;
+        backend.glUniformMatrix4fv(location, 1, false, value, offset);
+    }
+
+    /**
+     * 比较并记录向量值
+     *
+     * @return true，与最后上传的值相同；false，不同，已记录新值
+     */
+    private boolean same(int size, float x, float y, float z, float w) {
+        if (type == TYPE_FLOAT && this.size == size
+                && values[0] == x && values[1] == y && values[2] == z && values[3] == w) {
+            return true;
+        }
+        type = TYPE_FLOAT;
+        this.size = size;
+        values[0] = x;
+        values[1] = y;
+        values[2] = z;
+        values[3] = w;
+        return false;
+    }
+
+    /**
+     * 比较并记录矩阵值
+     *
+     * @return true，与最后上传的值相同；false，不同，已记录新值
+     */
+    private boolean sameMatrix(int type, int size, float[] value, int offset) {
+        boolean same = this.type == type;
+        for (int i = 0; i < size; i++) {
+            if (values[i] != value[offset + i]) {
+                same = false;
+                values[i] = value[offset + i];
+            }
+        }
+        this.type = type;
+        this.size = size;
+        return same;
+    }
+
+    /**
+     * 获取变量名称
+     *
+     * @return 变量名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取变量location
+     *
+     * @return 变量location，小于0表示程序中不存在此变量或者程序不可用
+     */
+    public int getLocation() {
+        return location;
+    }
+
+    @Override
+    public String toString() {
+        return "GLUniform{" +
+                "name='" + name + '\'' +
+                ", location=" + location +
+                '}';
+    }
+}
@@ -0,0 +1,23 @@
+package com.mosect.lib.easygl;
+
+import java.util.Locale;
+
+/**
+ * 基准结果输出，所有基准通过此类输出，之后接入报告工具时只需修改这里
+ */
+final class BenchmarkReporter {
+
+    private BenchmarkReporter() {
+    }
+
+    /**
+     * 输出一行基准结果
+     *
+     * @param name   基准名称
+     * @param format 结果格式，按Locale.US格式化
+     * @param args   格式参数
+     */
+    static void report(String name, String format, Object... args) {
+        System.out.println(name + ": " + String.format(Locale.US, format, args));
+    }
+}
@@ -0,0 +1,59 @@
+package com.mosect.lib.easygl;
+
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 测试用的实体对象，每帧开始时记录上一轮循环的后端调用次数，即一整帧（包括切换上下文及交换缓冲区）的调用；
+ * 自身的绘制次数记录为"onGLDraw"
+ */
+class FrameRecorder extends GLObject<GLContent> {
+
+    private final GLRecordingBackend backend;
+    private final LinkedBlockingQueue<Map<String, Long>> frames = new LinkedBlockingQueue<>();
+    private boolean started = false;
+    private long drawCount = 0;
+
+    FrameRecorder(GLEnv env, GLRecordingBackend backend) {
+        super(env);
+        this.backend = backend;
+    }
+
+    @Override
+    protected void onFrameStart() {
+        super.onFrameStart();
+        if (started) {
+            Map<String, Long> frame = backend.getCallCounts();
+            frame.put("onGLDraw", drawCount);
+            frames.offer(frame);
+        }
+        started = true;
+        drawCount = 0;
+        backend.resetCounts();
+    }
+
+    @Override
+    protected void onGLDraw() {
+        super.onGLDraw();
+        drawCount++;
+    }
+
+    /**
+     * 丢弃之前的帧，等待之后第count帧的调用次数
+     *
+     * @param count 帧数，跳过前面的帧，避免包括创建资源的调用
+     * @return 调用次数
+     */
+    Map<String, Long> awaitFrame(int count) throws InterruptedException {
+        frames.clear();
+        Map<String, Long> frame = null;
+        for (int i = 0; i < count; i++) {
+            frame = frames.poll(5, TimeUnit.SECONDS);
+            if (null == frame) {
+                throw new AssertionError("Frame timeout");
+            }
+        }
+        return frame;
+    }
+}
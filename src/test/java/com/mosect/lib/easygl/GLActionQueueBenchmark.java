@@ -0,0 +1,114 @@
+package com.mosect.lib.easygl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 动作队列基准：多个生产者线程调用runGLAction，同时绘制线程每帧取出执行，统计提交耗时
+ */
+public class GLActionQueueBenchmark {
+
+    private static final int ACTIONS_PER_THREAD = 20000;
+
+    private GLEnv env;
+
+    @Before
+    public void setUp() {
+        env = new GLEnv(new GLRecordingBackend());
+        env.setFps(0);
+        env.start();
+        GLOutput<TestSurface> output = new GLOutput<>(env);
+        output.create();
+        output.setMain();
+        output.setContent(new TestSurface());
+    }
+
+    @After
+    public void tearDown() {
+        env.destroy();
+    }
+
+    private void run(int threadCount) throws Exception {
+        long[][] latencies = new long[threadCount][ACTIONS_PER_THREAD];
+        int[] lastSequences = new int[threadCount]; // 只在绘制线程访问
+        Arrays.fill(lastSequences, -1);
+        AtomicLong executed = new AtomicLong();
+        AtomicLong outOfOrder = new AtomicLong();
+        CountDownLatch startSignal = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threadCount);
+        Thread[] producers = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int producer = t;
+            producers[t] = new Thread(() -> {
+                try {
+                    startSignal.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long[] times = latencies[producer];
+                for (int i = 0; i < ACTIONS_PER_THREAD; i++) {
+                    int sequence = i;
+                    long start = System.nanoTime();
+                    env.runGLAction(() -> {
+                        // 同一生产者的动作按提交顺序执行
+                        if (lastSequences[producer] + 1 != sequence) {
+                            outOfOrder.incrementAndGet();
+                        }
+                        lastSequences[producer] = sequence;
+                        executed.incrementAndGet();
+                    });
+                    times[i] = System.nanoTime() - start;
+                }
+                done.countDown();
+            });
+            producers[t].start();
+        }
+        long start = System.nanoTime();
+        startSignal.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        long enqueueTime = System.nanoTime() - start;
+        long total = (long) threadCount * ACTIONS_PER_THREAD;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executed.get() < total && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        long drainTime = System.nanoTime() - start;
+
+        long[] all = new long[(int) total];
+        for (int t = 0; t < threadCount; t++) {
+            System.arraycopy(latencies[t], 0, all, t * ACTIONS_PER_THREAD, ACTIONS_PER_THREAD);
+        }
+        Arrays.sort(all);
+        BenchmarkReporter.report("GLActionQueue",
+                "producers=%d, actions=%d, enqueue p50=%.2fus, p99=%.2fus, max=%.2fus, " +
+                        "enqueueRate=%.0f/ms, drained=%.1fms",
+                threadCount, total, all[all.length / 2] / 1000.0, all[(int) (all.length * 0.99)] / 1000.0,
+                all[all.length - 1] / 1000.0, total * 1000000.0 / enqueueTime, drainTime / 1000000.0);
+        assertEquals(total, executed.get());
+        assertEquals(0, outOfOrder.get());
+    }
+
+    @Test
+    public void oneProducer() throws Exception {
+        run(1);
+    }
+
+    @Test
+    public void fourProducers() throws Exception {
+        run(4);
+    }
+
+    @Test
+    public void sixteenProducers() throws Exception {
+        run(16);
+    }
+}
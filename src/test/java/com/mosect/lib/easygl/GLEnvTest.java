@@ -0,0 +1,154 @@
+package com.mosect.lib.easygl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在纯JVM上使用记录后端运行帧循环，断言每帧的调用次数
+ */
+public class GLEnvTest {
+
+    private GLRecordingBackend backend;
+    private GLEnv env;
+
+    @Before
+    public void setUp() {
+        backend = new GLRecordingBackend();
+        env = new GLEnv(backend);
+        env.setFps(0);
+        env.start();
+    }
+
+    @After
+    public void tearDown() {
+        env.destroy();
+    }
+
+    private GLOutput<TestSurface> createOutput(boolean main) {
+        GLOutput<TestSurface> output = new GLOutput<>(env);
+        output.create();
+        if (main) {
+            output.setMain();
+        }
+        output.setContent(new TestSurface());
+        return output;
+    }
+
+    @Test
+    public void singleOutputFrameOnlySwaps() throws Exception {
+        createOutput(true);
+        FrameRecorder recorder = new FrameRecorder(env, backend);
+        recorder.create();
+        Map<String, Long> frame = recorder.awaitFrame(3);
+        // 上下文已是当前上下文，状态未改变，每帧只交换缓冲区
+        assertEquals(Long.valueOf(1), frame.get("eglSwapBuffers"));
+        assertEquals(Long.valueOf(1), frame.get("onGLDraw"));
+        assertEquals(2, frame.size());
+    }
+
+    @Test
+    public void eachOutputSwitchesAndSwapsOnce() throws Exception {
+        createOutput(true);
+        createOutput(false);
+        FrameRecorder recorder = new FrameRecorder(env, backend);
+        recorder.create();
+        Map<String, Long> frame = recorder.awaitFrame(3);
+        assertEquals(Long.valueOf(2), frame.get("eglSwapBuffers"));
+        assertEquals(Long.valueOf(2), frame.get("eglMakeCurrent"));
+        // 输出大小相同，状态缓存在输出及帧之间保持，不再设置视口
+        assertNull(frame.get("glViewport"));
+        // 每个输出绘制一次
+        assertEquals(Long.valueOf(2), frame.get("onGLDraw"));
+    }
+
+    @Test
+    public void differentSizeOutputsSetViewport() throws Exception {
+        createOutput(true);
+        GLOutput<TestSurface> output = new GLOutput<>(env);
+        output.create();
+        output.setContent(new TestSurface(32, 32));
+        FrameRecorder recorder = new FrameRecorder(env, backend);
+        recorder.create();
+        Map<String, Long> frame = recorder.awaitFrame(3);
+        assertEquals(Long.valueOf(2), frame.get("glViewport"));
+    }
+
+    @Test
+    public void foreignGLInvalidatesEachOutput() throws Exception {
+        env.setForeignGLEnabled(true);
+        createOutput(true);
+        createOutput(false);
+        FrameRecorder recorder = new FrameRecorder(env, backend);
+        recorder.create();
+        Map<String, Long> frame = recorder.awaitFrame(3);
+        // 每个输出绘制后缓存失效，切换输出时重新设置视口
+        assertEquals(Long.valueOf(2), frame.get("glViewport"));
+    }
+
+    @Test
+    public void destroyReleasesSurfaces() throws Exception {
+        createOutput(true);
+        createOutput(false);
+        FrameRecorder recorder = new FrameRecorder(env, backend);
+        recorder.create();
+        recorder.awaitFrame(1);
+        assertEquals(2, backend.getLiveSurfaceCount());
+        env.destroy();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (backend.getLiveSurfaceCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, backend.getLiveSurfaceCount());
+        assertFalse(env.runGLAction(() -> {
+        }));
+    }
+
+    @Test
+    public void requestShaderAttachedInSameAction() throws Exception {
+        createOutput(true);
+        TestShader shader = new TestShader(env);
+        AtomicReference<TestShader> requested = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        env.runGLAction(() -> {
+            // 场景快照在动作执行完后才发布，请求应读取当前成员
+            env.attach(shader);
+            requested.set(env.requestShader(TestShader.class));
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertSame(shader, requested.get());
+    }
+
+    private static final class TestShader extends GLShader<GLContent> {
+
+        TestShader(GLEnv env) {
+            super(env);
+        }
+
+        @Override
+        protected void onInitProgram() {
+        }
+
+        @Override
+        protected String onLoadVertSource() {
+            return "void main() {}";
+        }
+
+        @Override
+        protected String onLoadFragSource() {
+            return "void main() {}";
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.mosect.lib.easygl;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 向帧率调节器输入模拟帧耗时，断言降级、恢复、冷却及不振荡
+ */
+public class GLFrameGovernorTest {
+
+    private static final long MS = 1000000L;
+
+    /**
+     * 按当前分辨率计算模拟帧耗时：固定部分 + 与像素数量成正比的部分
+     */
+    private static long frameTime(GLFrameGovernor governor, long fixed, long pixels) {
+        float scale = governor.getResolutionScale();
+        return fixed + (long) (pixels * scale * scale);
+    }
+
+    private static void run(GLFrameGovernor governor, int frames, long fixed, long pixels) {
+        for (int i = 0; i < frames; i++) {
+            governor.update(frameTime(governor, fixed, pixels));
+        }
+    }
+
+    @Test
+    public void qualityLowersFpsThenRecovers() {
+        GLFrameGovernor governor = new GLFrameGovernor();
+        assertEquals(60, governor.getTargetFps());
+        // 25ms超出60帧预算，45帧预算（22.2ms）也不够，降到30帧
+        run(governor, 500, 25 * MS, 0);
+        assertEquals(30, governor.getTargetFps());
+        assertEquals(1f, governor.getResolutionScale(), 0);
+        // 负载下降后恢复到60帧
+        run(governor, 1000, 8 * MS, 0);
+        assertEquals(60, governor.getTargetFps());
+        assertEquals(1f, governor.getResolutionScale(), 0);
+    }
+
+    @Test
+    public void latencyLowersScaleFirst() {
+        GLFrameGovernor governor = new GLFrameGovernor();
+        governor.setPolicy(GLFrameGovernor.POLICY_LATENCY);
+        // 耗时与像素数量成正比，缩小分辨率即可满足60帧预算
+        run(governor, 500, 0, 25 * MS);
+        assertEquals(60, governor.getTargetFps());
+        assertEquals(0.7f, governor.getResolutionScale(), 0);
+        run(governor, 1000, 0, 8 * MS);
+        assertEquals(60, governor.getTargetFps());
+        assertEquals(1f, governor.getResolutionScale(), 0);
+    }
+
+    @Test
+    public void latencyLowersFpsAfterLowestScale() {
+        GLFrameGovernor governor = new GLFrameGovernor();
+        governor.setPolicy(GLFrameGovernor.POLICY_LATENCY);
+        // 固定耗时无法通过缩小分辨率降低
+        run(governor, 1000, 25 * MS, 0);
+        assertEquals(0.5f, governor.getResolutionScale(), 0);
+        assertEquals(30, governor.getTargetFps());
+    }
+
+    @Test
+    public void cooldownBlocksConsecutiveChanges() {
+        GLFrameGovernor governor = new GLFrameGovernor();
+        governor.setThresholds(0.95f, 5, 0.7f, 90);
+        governor.setCooldownFrames(30);
+        int lastChange = -1;
+        for (int i = 0; i < 300; i++) {
+            if (governor.update(100 * MS)) {
+                if (lastChange >= 0) {
+                    // 冷却期间不调整，之后还需连续超出5帧
+                    assertTrue("gap=" + (i - lastChange), i - lastChange >= 30 + 5);
+                }
+                lastChange = i;
+            }
+        }
+        // 帧率及分辨率都降到最低
+        assertEquals(15, governor.getTargetFps());
+        assertEquals(0.5f, governor.getResolutionScale(), 0);
+    }
+
+    @Test
+    public void steadyLoadDoesNotOscillate() {
+        GLFrameGovernor quality = new GLFrameGovernor();
+        GLFrameGovernor latency = new GLFrameGovernor();
+        latency.setPolicy(GLFrameGovernor.POLICY_LATENCY);
+        run(quality, 500, 25 * MS, 0);
+        run(latency, 500, 0, 25 * MS);
+        long qualityChanges = quality.getChangeCount();
+        long latencyChanges = latency.getChangeCount();
+        // 稳定负载下保持档位，升级前预测升级后的耗时，不会升级后再降级
+        run(quality, 5000, 25 * MS, 0);
+        run(latency, 5000, 0, 25 * MS);
+        assertEquals(qualityChanges, quality.getChangeCount());
+        assertEquals(latencyChanges, latency.getChangeCount());
+    }
+
+    @Test
+    public void inBudgetFramesKeepLevels() {
+        GLFrameGovernor governor = new GLFrameGovernor();
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(governor.update(12 * MS));
+        }
+        assertEquals(60, governor.getTargetFps());
+        assertEquals(0, governor.getChangeCount());
+    }
+
+    @Test
+    public void levelsAboveMaxFpsAreSkipped() {
+        GLFrameGovernor governor = new GLFrameGovernor();
+        governor.setMaxFps(30);
+        governor.update(5 * MS);
+        assertEquals(30, governor.getTargetFps());
+        // 负载很低时也不会超过环境最大帧率
+        run(governor, 1000, 1 * MS, 0);
+        assertEquals(30, governor.getTargetFps());
+    }
+}
@@ -0,0 +1,163 @@
+package com.mosect.lib.easygl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 使用模拟时钟驱动帧调度器
+ */
+public class GLFrameSchedulerTest {
+
+    private static final long INTERVAL_60 = 1000000000L / 60;
+
+    /**
+     * 模拟时钟，sleep直接推进时间，可设置每次多睡的时长模拟sleep精度，以及每次读取时间后推进的时长模拟自旋
+     */
+    private static final class FakeClock implements GLFrameScheduler.Clock {
+
+        long time = 1000000000L;
+        long oversleep = 0;
+        long tick = 0; // 每次读取时间后推进的时长
+        final List<Long> sleeps = new ArrayList<>(); // 每次sleep请求的时长
+        int reads = 0; // 读取时间的次数
+
+        @Override
+        public long nanoTime() {
+            reads++;
+            long now = time;
+            time += tick;
+            return now;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            sleeps.add(nanos);
+            time += nanos + oversleep;
+        }
+
+        void work(long nanos) {
+            time += nanos;
+        }
+    }
+
+    @Test
+    public void framesStayOnGrid() {
+        FakeClock clock = new FakeClock();
+        clock.oversleep = 1000000; // sleep每次多睡1ms
+        GLFrameScheduler scheduler = new GLFrameScheduler(clock);
+        scheduler.setFps(60);
+        long start = scheduler.awaitFrame();
+        for (int i = 1; i <= 600; i++) {
+            clock.work(5000000);
+            long time = scheduler.awaitFrame();
+            // 每帧都按绝对时间点对齐，sleep误差不会累计
+            long expected = start + i * INTERVAL_60;
+            assertTrue("frame " + i + " late " + (time - expected), time >= expected);
+            assertTrue("frame " + i + " late " + (time - expected), time - expected <= clock.oversleep);
+        }
+        assertEquals(0, scheduler.getSkippedFrames());
+    }
+
+    @Test
+    public void missedFramesAreSkipped() {
+        FakeClock clock = new FakeClock();
+        GLFrameScheduler scheduler = new GLFrameScheduler(clock);
+        scheduler.setFps(60);
+        long start = scheduler.awaitFrame();
+        // 卡顿50ms，错过约3帧
+        clock.work(50000000);
+        long late = scheduler.awaitFrame();
+        assertEquals(start + 50000000, late);
+        assertEquals(2, scheduler.getSkippedFrames());
+        // 下一帧回到原来的时间点，不连续补帧
+        long next = scheduler.awaitFrame();
+        assertEquals(start + 4 * INTERVAL_60, next);
+        assertTrue(next - late > 0 && next - late <= INTERVAL_60);
+        long after = scheduler.awaitFrame();
+        assertEquals(INTERVAL_60, after - next);
+        assertEquals(2, scheduler.getSkippedFrames());
+    }
+
+    @Test
+    public void measuredFpsFollowsTarget() {
+        FakeClock clock = new FakeClock();
+        GLFrameScheduler scheduler = new GLFrameScheduler(clock);
+        scheduler.setFps(60);
+        for (int i = 0; i < 130; i++) {
+            clock.work(3000000);
+            scheduler.awaitFrame();
+        }
+        assertEquals(60, scheduler.getMeasuredFps(), 0.5f);
+        scheduler.setFps(30);
+        for (int i = 0; i < 100; i++) {
+            clock.work(3000000);
+            scheduler.awaitFrame();
+        }
+        assertEquals(30, scheduler.getMeasuredFps(), 0.5f);
+    }
+
+    @Test
+    public void measuredFpsWithoutLimit() {
+        FakeClock clock = new FakeClock();
+        GLFrameScheduler scheduler = new GLFrameScheduler(clock);
+        scheduler.setFps(0);
+        for (int i = 0; i < 250; i++) {
+            clock.work(8000000);
+            scheduler.awaitFrame();
+        }
+        // 不限制帧率时由帧耗时决定
+        assertEquals(125, scheduler.getMeasuredFps(), 0.5f);
+        assertEquals(0, scheduler.getSkippedFrames());
+    }
+
+    @Test
+    public void measuredFpsCountsOnlyDrawnFrames() {
+        FakeClock clock = new FakeClock();
+        GLFrameScheduler scheduler = new GLFrameScheduler(clock);
+        scheduler.setFps(60);
+        // 环境只在实际绘制时统计，每两次唤醒绘制一帧
+        for (int i = 0; i < 250; i++) {
+            long time = scheduler.advanceFrame();
+            if (i % 2 == 0) {
+                scheduler.countFrame(time);
+            }
+        }
+        assertEquals(30, scheduler.getMeasuredFps(), 0.5f);
+    }
+
+    @Test
+    public void resetStartsNextFrameImmediately() {
+        FakeClock clock = new FakeClock();
+        GLFrameScheduler scheduler = new GLFrameScheduler(clock);
+        scheduler.setFps(60);
+        scheduler.awaitFrame();
+        // 挂起1秒后重置，不计为掉帧
+        clock.work(1000000000L);
+        scheduler.reset();
+        long now = clock.nanoTime();
+        assertEquals(now, scheduler.awaitFrame());
+        assertEquals(0, scheduler.getSkippedFrames());
+    }
+
+    @Test
+    public void spinsForTheLastStretch() {
+        FakeClock clock = new FakeClock();
+        clock.tick = 100000; // 每次读取时间推进0.1ms
+        GLFrameScheduler scheduler = new GLFrameScheduler(clock);
+        long spinThreshold = 2000000;
+        scheduler.setSpinThreshold(spinThreshold);
+        long deadline = clock.time + 10000000;
+        long now = scheduler.sleepUntil(deadline);
+        // 只sleep到剩余自旋阈值，剩余时间自旋等待
+        assertEquals(Collections.singletonList(10000000 - spinThreshold), clock.sleeps);
+        assertTrue("spin reads " + clock.reads, clock.reads >= spinThreshold / clock.tick);
+        assertTrue("early " + (deadline - now), now >= deadline);
+        assertTrue("late " + (now - deadline), now - deadline < clock.tick);
+    }
+}
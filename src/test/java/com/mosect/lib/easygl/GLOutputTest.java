@@ -0,0 +1,69 @@
+package com.mosect.lib.easygl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 局部更新帧的统计，只有后端实际传递修改区域时才计为局部帧
+ */
+public class GLOutputTest {
+
+    private GLRecordingBackend backend;
+    private GLEnv env;
+
+    private GLOutput<TestSurface> start(boolean damageSupported) {
+        backend = new GLRecordingBackend();
+        backend.setDamageSupported(damageSupported);
+        env = new GLEnv(backend);
+        env.setFps(0);
+        env.start();
+        GLOutput<TestSurface> output = new GLOutput<>(env);
+        output.create();
+        output.setMain();
+        output.setContent(new TestSurface());
+        output.setPartialUpdateEnabled(true);
+        new GLObject<GLContent>(env) {
+            @Override
+            protected void onFrameStart() {
+                super.onFrameStart();
+                // 每帧只修改一小块区域
+                invalidateRect(0, 0, 8, 8);
+            }
+        }.create();
+        return output;
+    }
+
+    @After
+    public void tearDown() {
+        env.destroy();
+    }
+
+    private static void awaitFrames(GLOutput<?> output, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (output.getPartialFrameCount() + output.getFullFrameCount() < count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void damageDeliveredCountsPartialFrames() throws Exception {
+        GLOutput<TestSurface> output = start(true);
+        awaitFrames(output, 10);
+        assertTrue(output.getPartialFrameCount() > 0);
+        assertTrue(backend.getCallCount("eglSwapBuffersWithDamage") > 0);
+    }
+
+    @Test
+    public void damageDroppedCountsFullFrames() throws Exception {
+        GLOutput<TestSurface> output = start(false);
+        awaitFrames(output, 10);
+        // 后端只交换整个缓冲区，合成器仍按整个输出处理
+        assertEquals(0, output.getPartialFrameCount());
+        assertTrue(output.getFullFrameCount() >= 10);
+        assertEquals(0, backend.getCallCount("eglSwapBuffersWithDamage"));
+    }
+}
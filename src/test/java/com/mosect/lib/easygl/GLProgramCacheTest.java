@@ -0,0 +1,52 @@
+package com.mosect.lib.easygl;
+
+import android.opengl.GLES20;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * 程序二进制缓存不受之前直接调用GL遗留的错误影响
+ */
+public class GLProgramCacheTest {
+
+    private static final String VERT = "void main() { gl_Position = vec4(0.0); }";
+    private static final String FRAG = "void main() { gl_FragColor = vec4(1.0); }";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private GLRecordingBackend backend;
+    private GLProgramCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new GLRecordingBackend();
+        cache = new GLProgramCache(folder.newFolder("programs"));
+    }
+
+    @Test
+    public void saveIgnoresStaleError() {
+        backend.raiseGLError(GLES20.GL_INVALID_OPERATION);
+        cache.saveProgram(backend, backend.glCreateProgram(), VERT, FRAG);
+        assertEquals(1, cache.getSaveCount());
+    }
+
+    @Test
+    public void loadIgnoresStaleError() {
+        cache.saveProgram(backend, backend.glCreateProgram(), VERT, FRAG);
+        backend.raiseGLError(GLES20.GL_INVALID_OPERATION);
+        backend.raiseGLError(GLES20.GL_INVALID_OPERATION);
+        assertNotEquals(0, cache.loadProgram(backend, VERT, FRAG));
+        // 缓存文件仍然有效
+        assertNotEquals(0, cache.loadProgram(backend, VERT, FRAG));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(0, cache.getInvalidCount());
+        assertEquals(0, backend.getCallCount("glDeleteProgram"));
+    }
+}
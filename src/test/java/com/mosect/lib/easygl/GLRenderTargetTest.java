@@ -0,0 +1,77 @@
+package com.mosect.lib.easygl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 离屏目标在其他离屏目标上嵌套创建及绑定时，恢复之前的帧缓冲区及视口
+ */
+public class GLRenderTargetTest {
+
+    private GLEnv env;
+
+    @Before
+    public void setUp() {
+        env = new GLEnv(new GLRecordingBackend());
+        env.setFps(0);
+        env.start();
+        GLOutput<TestSurface> output = new GLOutput<>(env);
+        output.create();
+        output.setMain();
+        output.setContent(new TestSurface());
+    }
+
+    @After
+    public void tearDown() {
+        env.destroy();
+    }
+
+    @Test
+    public void nestedTargetRestoresOuterTarget() throws Exception {
+        int[][] viewports = new int[3][4];
+        int[] framebuffers = new int[4];
+        CountDownLatch latch = new CountDownLatch(1);
+        new GLObject<GLContent>(env) {
+            @Override
+            protected void onGLDraw() {
+                super.onGLDraw();
+                if (latch.getCount() == 0) return;
+                GLStateCache stateCache = getEnv().getStateCache();
+                GLRenderTargetPool pool = getEnv().getRenderTargetPool();
+                // 模拟环境正在绘制到缩放目标
+                GLRenderTarget outer = pool.acquire(32, 32);
+                outer.bind();
+                framebuffers[0] = outer.getFramebufferId();
+                // 多通道效果在绘制过程中创建并使用自己的目标
+                GLRenderTarget inner = pool.acquire(16, 16);
+                framebuffers[1] = stateCache.getFramebuffer();
+                inner.bind();
+                stateCache.getViewport(viewports[0], 0);
+                inner.unbind();
+                framebuffers[2] = stateCache.getFramebuffer();
+                stateCache.getViewport(viewports[1], 0);
+                outer.unbind();
+                framebuffers[3] = stateCache.getFramebuffer();
+                stateCache.getViewport(viewports[2], 0);
+                inner.release();
+                outer.release();
+                latch.countDown();
+            }
+        }.create();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(framebuffers[0], framebuffers[1]);
+        assertArrayEquals(new int[]{0, 0, 16, 16}, viewports[0]);
+        assertEquals(framebuffers[0], framebuffers[2]);
+        assertArrayEquals(new int[]{0, 0, 32, 32}, viewports[1]);
+        assertEquals(0, framebuffers[3]);
+        assertArrayEquals(new int[]{0, 0, 64, 64}, viewports[2]);
+    }
+}
@@ -0,0 +1,89 @@
+package com.mosect.lib.easygl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 资源线程任务失败时，发布动作仍在绘制线程执行，纹理加载器标记失败并回收像素
+ */
+public class GLResourceThreadTest {
+
+    /**
+     * 在资源线程上传纹理时抛出异常的记录后端
+     */
+    private static final class FailingUploadBackend extends GLRecordingBackend {
+
+        @Override
+        public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                                 int format, int type, Buffer pixels) {
+            super.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+            if (null != pixels && "GL/ResourceThread".equals(Thread.currentThread().getName())) {
+                throw new IllegalStateException("Upload failed");
+            }
+        }
+    }
+
+    private GLEnv env;
+
+    @Before
+    public void setUp() {
+        env = new GLEnv(new FailingUploadBackend());
+        env.setFps(0);
+        env.start();
+        GLOutput<TestSurface> output = new GLOutput<>(env);
+        output.create();
+        output.setMain();
+        output.setContent(new TestSurface());
+    }
+
+    @After
+    public void tearDown() {
+        env.destroy();
+    }
+
+    @Test
+    public void failedTaskStillPublishes() throws Exception {
+        AtomicInteger result = new AtomicInteger(-1);
+        CountDownLatch latch = new CountDownLatch(1);
+        assertTrue(env.runResourceAction(() -> {
+            throw new IllegalStateException("Task failed");
+        }, success -> {
+            result.set(success ? 1 : 0);
+            latch.countDown();
+        }));
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, result.get());
+        assertEquals(1, env.getResourceThread().getFailedCount());
+    }
+
+    @Test
+    public void failedUploadReleasesPixels() throws Exception {
+        GLTextureLoader loader = env.getTextureLoader();
+        loader.setResourceThreadEnabled(true);
+        GLTextureHandle handle = loader.load((pool, size) -> {
+            size[0] = 16;
+            size[1] = 16;
+            return pool.acquire(16 * 16 * 4);
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handle.getState() == GLTextureHandle.STATE_DECODING
+                || handle.getState() == GLTextureHandle.STATE_UPLOADING) {
+            assertTrue("state=" + handle.getState(), System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        assertEquals(GLTextureHandle.STATE_FAILED, handle.getState());
+        assertEquals(1, loader.getFailedCount());
+        assertEquals(0, env.getBufferPool().getInUseBytes());
+        // 资源线程已生成的纹理同样删除
+        assertEquals(1, ((GLRecordingBackend) env.getBackend()).getCallCount("glDeleteTextures"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.mosect.lib.easygl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 程序链接后通过内省建立变量location表，之后查找不再调用驱动
+ */
+public class GLShaderTest {
+
+    private GLRecordingBackend backend;
+    private GLEnv env;
+
+    @Before
+    public void setUp() {
+        backend = new GLRecordingBackend();
+        env = new GLEnv(backend);
+        env.setFps(0);
+        env.start();
+        GLOutput<TestSurface> output = new GLOutput<>(env);
+        output.create();
+        output.setMain();
+        output.setContent(new TestSurface());
+    }
+
+    @After
+    public void tearDown() {
+        env.destroy();
+    }
+
+    @Test
+    public void locationsFromIntrospection() throws Exception {
+        int[] locations = new int[6];
+        long[] queries = new long[1];
+        CountDownLatch latch = new CountDownLatch(1);
+        TestShader shader = new TestShader(env);
+        env.runGLAction(() -> {
+            env.attach(shader);
+            long before = backend.getCallCount("glGetUniformLocation")
+                    + backend.getCallCount("glGetAttribLocation");
+            locations[0] = shader.getUniformLocation("u_Matrix");
+            locations[1] = shader.getUniformLocation("u_Colors");
+            locations[2] = shader.getUniformLocation("u_Colors[0]");
+            locations[3] = shader.getUniformLocation("u_Texture");
+            locations[4] = shader.getAttribLocation("a_Position");
+            locations[5] = shader.getAttribLocation("a_TexCoord");
+            queries[0] = backend.getCallCount("glGetUniformLocation")
+                    + backend.getCallCount("glGetAttribLocation") - before;
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        // 活跃变量：两个shader共有的uniform只记录一次，数组同时记录带下标及不带下标的名称
+        assertEquals(3, backend.getCallCount("glGetActiveUniform"));
+        assertEquals(2, backend.getCallCount("glGetActiveAttrib"));
+        assertEquals(locations[1], locations[2]);
+        assertNotEquals(locations[0], locations[1]);
+        assertNotEquals(locations[1], locations[3]);
+        assertNotEquals(locations[4], locations[5]);
+        for (int location : locations) {
+            assertTrue(location >= 0);
+        }
+        // 链接后查找只读取location表
+        assertEquals(0, queries[0]);
+    }
+
+    @Test
+    public void missingUniformIsIgnored() throws Exception {
+        int[] location = new int[1];
+        CountDownLatch latch = new CountDownLatch(1);
+        TestShader shader = new TestShader(env);
+        env.runGLAction(() -> {
+            env.attach(shader);
+            GLUniform uniform = shader.getUniform("u_Missing");
+            uniform.setFloat(1f);
+            location[0] = uniform.getLocation();
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(-1, location[0]);
+        assertEquals(0, backend.getCallCount("glUniform1f"));
+    }
+
+    private static final class TestShader extends GLShader<GLContent> {
+
+        TestShader(GLEnv env) {
+            super(env);
+        }
+
+        @Override
+        protected void onInitProgram() {
+        }
+
+        @Override
+        protected String onLoadVertSource() {
+            return "uniform mat4 u_Matrix;\n" +
+                    "uniform vec4 u_Colors[4];\n" +
+                    "attribute vec2 a_Position;\n" +
+                    "attribute vec2 a_TexCoord; // 纹理坐标\n" +
+                    "varying vec2 v_TexCoord;\n" +
+                    "void main() {\n" +
+                    "    v_TexCoord = a_TexCoord;\n" +
+                    "    gl_Position = u_Matrix * vec4(a_Position, 0.0, 1.0);\n" +
+                    "}";
+        }
+
+        @Override
+        protected String onLoadFragSource() {
+            return "precision mediump float;\n" +
+                    "uniform vec4 u_Colors[4];\n" +
+                    "uniform sampler2D u_Texture;\n" +
+                    "varying vec2 v_TexCoord;\n" +
+                    "void main() {\n" +
+                    "    gl_FragColor = texture2D(u_Texture, v_TexCoord) * u_Colors[0];\n" +
+                    "}";
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.mosect.lib.easygl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 精灵批量绘制基准：在记录后端上比较合并与逐个提交时每帧的绘制次数及调用开销
+ */
+public class GLSpriteBatchBenchmark {
+
+    private static final int MEASURE_FRAMES = 20;
+
+    private GLRecordingBackend backend;
+    private GLEnv env;
+    private FrameRecorder recorder;
+
+    @Before
+    public void setUp() throws Exception {
+        backend = new GLRecordingBackend();
+        env = new GLEnv(backend);
+        env.setFps(0);
+        env.start();
+        GLOutput<TestSurface> output = new GLOutput<>(env);
+        output.create();
+        output.setMain();
+        output.setContent(new TestSurface());
+        new GLSpriteShader(env).create();
+        recorder = new FrameRecorder(env, backend);
+        recorder.create();
+    }
+
+    @After
+    public void tearDown() {
+        env.destroy();
+    }
+
+    /**
+     * 绘制指定数量四边形的批量对象，unbatched为true时每个四边形单独提交
+     */
+    private static final class QuadBatch extends GLSpriteBatch<GLContent> {
+
+        private final int quads;
+        private final boolean unbatched;
+
+        QuadBatch(GLEnv env, int quads, boolean unbatched) {
+            super(env);
+            this.quads = quads;
+            this.unbatched = unbatched;
+        }
+
+        @Override
+        protected void onGLBatch() {
+            super.onGLBatch();
+            for (int i = 0; i < quads; i++) {
+                draw(1, i % 64, i / 64 % 64, 4, 4, 0xFF00FF00);
+                if (unbatched) {
+                    flush();
+                }
+            }
+        }
+    }
+
+    private Map<String, Long> measure(int quads, boolean unbatched) throws Exception {
+        QuadBatch batch = new QuadBatch(env, quads, unbatched);
+        batch.create();
+        recorder.awaitFrame(3);
+        long start = System.nanoTime();
+        Map<String, Long> frame = recorder.awaitFrame(MEASURE_FRAMES);
+        long frameTime = (System.nanoTime() - start) / MEASURE_FRAMES;
+        batch.destroy();
+        recorder.awaitFrame(2);
+        BenchmarkReporter.report("GLSpriteBatch",
+                "quads=%d, %s, drawCalls=%d, glCalls=%d, frameTime=%.3fms",
+                quads, unbatched ? "unbatched" : "batched", frame.get("glDrawElements"), total(frame),
+                frameTime / 1000000.0);
+        return frame;
+    }
+
+    private static long total(Map<String, Long> frame) {
+        long calls = 0;
+        for (Long count : frame.values()) {
+            calls += count;
+        }
+        return calls;
+    }
+
+    private void compare(int quads) throws Exception {
+        Map<String, Long> batched = measure(quads, false);
+        Map<String, Long> unbatched = measure(quads, true);
+        int capacity = 2048;
+        assertEquals(Long.valueOf((quads + capacity - 1) / capacity), batched.get("glDrawElements"));
+        assertEquals(Long.valueOf(quads), unbatched.get("glDrawElements"));
+        assertTrue(total(batched) * 100 < total(unbatched));
+    }
+
+    @Test
+    public void quads1k() throws Exception {
+        compare(1000);
+    }
+
+    @Test
+    public void quads10k() throws Exception {
+        compare(10000);
+    }
+}
@@ -0,0 +1,135 @@
+package com.mosect.lib.easygl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.Buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 纹理上传基准：在模拟上传耗时的记录后端上，按固定预算分帧上传已解码的图片
+ */
+public class GLTextureLoaderBenchmark {
+
+    private static final int WIDTH = 2048;
+    private static final int HEIGHT = 64;
+    private static final int IMAGE_COUNT = 6;
+    private static final long ROW_TIME = 1000000; // 模拟每行上传耗时：1ms
+    private static final long TIME_BUDGET = 4000000; // 每帧上传预算：4ms
+
+    /**
+     * 上传耗时与行数成正比的记录后端，统计每帧（两次交换缓冲区之间）上传的最大行数
+     */
+    private static final class SlowUploadBackend extends GLRecordingBackend {
+
+        private int frameRows = 0; // 本帧上传的行数，只在绘制线程访问
+        private volatile int maxFrameRows = 0; // 单帧最大上传行数
+
+        @Override
+        public boolean eglSwapBuffers(Object display, Object surface) {
+            frameRows = 0;
+            return super.eglSwapBuffers(display, surface);
+        }
+
+        @Override
+        public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border,
+                                 int format, int type, Buffer pixels) {
+            super.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+            if (null != pixels) {
+                upload(height);
+            }
+        }
+
+        @Override
+        public void glTexSubImage2D(int target, int level, int xoffset, int yoffset, int width, int height,
+                                    int format, int type, Buffer pixels) {
+            super.glTexSubImage2D(target, level, xoffset, yoffset, width, height, format, type, pixels);
+            upload(height);
+        }
+
+        private void upload(int rows) {
+            frameRows += rows;
+            maxFrameRows = Math.max(maxFrameRows, frameRows);
+            long end = System.nanoTime() + rows * ROW_TIME;
+            while (System.nanoTime() - end < 0) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private GLEnv env;
+
+    @Before
+    public void setUp() throws Exception {
+        // 先完整运行一次预热JIT，避免编译线程占用测量帧的时间
+        env = createEnv();
+        uploadImages(env.getTextureLoader());
+        env.destroy();
+        env = createEnv();
+    }
+
+    @After
+    public void tearDown() {
+        env.destroy();
+    }
+
+    private static GLEnv createEnv() {
+        GLEnv env = new GLEnv(new SlowUploadBackend());
+        env.setFps(0);
+        env.start();
+        GLOutput<TestSurface> output = new GLOutput<>(env);
+        output.create();
+        output.setMain();
+        output.setContent(new TestSurface());
+        // 字节预算足够大，只受时间预算限制
+        env.getTextureLoader().setUploadBudget(TIME_BUDGET, 64 * 1024 * 1024);
+        return env;
+    }
+
+    private static GLTextureHandle[] uploadImages(GLTextureLoader loader) throws InterruptedException {
+        GLTextureHandle[] handles = new GLTextureHandle[IMAGE_COUNT];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = loader.load((pool, size) -> {
+                size[0] = WIDTH;
+                size[1] = HEIGHT;
+                return pool.acquire(WIDTH * HEIGHT * 4);
+            });
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (loader.getUploadedCount() < IMAGE_COUNT && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return handles;
+    }
+
+    @Test
+    public void uploadWithinBudget() throws Exception {
+        GLTextureLoader loader = env.getTextureLoader();
+        SlowUploadBackend backend = (SlowUploadBackend) env.getBackend();
+        long start = System.nanoTime();
+        GLTextureHandle[] handles = uploadImages(loader);
+        long time = System.nanoTime() - start;
+        assertEquals(IMAGE_COUNT, loader.getUploadedCount());
+        for (GLTextureHandle handle : handles) {
+            assertTrue(handle.isReady());
+        }
+        GLTimeHistogram frameTimes = loader.getFrameUploadTimes();
+        BenchmarkReporter.report("GLTextureLoader",
+                "images=%d, %dx%d, uploadThroughput=%.1fMB/s, frames=%d, frameUploadTime p50=%.3fms, " +
+                        "p90=%.3fms, worst=%.3fms, maxFrameRows=%d, budget=%.3fms, total=%.1fms",
+                IMAGE_COUNT, WIDTH, HEIGHT, loader.getUploadThroughput() / 1048576.0, frameTimes.getCount(),
+                frameTimes.getP50() / 1000000.0, frameTimes.getPercentile(90) / 1000000.0,
+                loader.getWorstFrameUploadTime() / 1000000.0, backend.maxFrameRows,
+                TIME_BUDGET / 1000000.0, time / 1000000.0);
+        // 单帧最多超出预算一行：按模拟耗时严格判断
+        assertTrue("maxFrameRows=" + backend.maxFrameRows, backend.maxFrameRows <= TIME_BUDGET / ROW_TIME + 1);
+        // 按实际耗时判断分位数，偶尔被抢占的帧不影响结果，而预算超出翻倍的回归会使中位数超出
+        assertTrue("p50=" + frameTimes.getP50(), frameTimes.getP50() <= TIME_BUDGET + ROW_TIME / 2);
+        assertTrue("p90=" + frameTimes.getPercentile(90),
+                frameTimes.getPercentile(90) <= TIME_BUDGET + ROW_TIME);
+        assertEquals((long) WIDTH * HEIGHT * 4 * IMAGE_COUNT, loader.getUploadedBytes());
+    }
+}
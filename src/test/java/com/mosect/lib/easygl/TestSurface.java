@@ -0,0 +1,46 @@
+package com.mosect.lib.easygl;
+
+/**
+ * 测试用的PBuffer输出内容
+ */
+final class TestSurface implements GLSurface {
+
+    private final int width;
+    private final int height;
+
+    TestSurface() {
+        this(64, 64);
+    }
+
+    TestSurface(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public Object getWindowObject() {
+        return PBUFFER_OBJECT;
+    }
+
+    @Override
+    public int getWindowWidth() {
+        return width;
+    }
+
+    @Override
+    public int getWindowHeight() {
+        return height;
+    }
+
+    @Override
+    public void initContent(GLObject<?> object) {
+    }
+
+    @Override
+    public void drawContent() {
+    }
+
+    @Override
+    public void destroyContent() {
+    }
+}